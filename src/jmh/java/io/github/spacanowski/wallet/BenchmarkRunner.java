@@ -0,0 +1,35 @@
+package io.github.spacanowski.wallet;
+
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Runs the selected benchmarks once per thread count, doubling from 1 up to the available processors,
+// unless a thread count is given. Accepts the usual JMH command line, for example:
+// -p engine=locking,atomic WalletBenchmark.transfer
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        var parsed = new CommandLineOptions(args);
+        var processors = Runtime.getRuntime().availableProcessors();
+
+        if (parsed.getThreads().hasValue()) {
+            new Runner(parsed).run();
+            return;
+        }
+
+        for (int threads = 1; ; threads = Math.min(threads * 2, processors)) {
+            var options = new OptionsBuilder().parent(parsed)
+                                              .threads(threads)
+                                              .build();
+
+            new Runner(options).run();
+
+            if (threads == processors) {
+                break;
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package io.github.spacanowski.wallet.datastore;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+// How benchmark threads pick accounts among the ones created for a trial
+public enum AccessProfile {
+
+    // Every account equally likely
+    UNIFORM {
+        @Override
+        int next(SplittableRandom random, double[] zipf) {
+            return random.nextInt(zipf.length);
+        }
+    },
+    // Few hot accounts take most of the traffic
+    ZIPFIAN {
+        @Override
+        int next(SplittableRandom random, double[] zipf) {
+            var index = Arrays.binarySearch(zipf, random.nextDouble());
+
+            return Math.min(index < 0 ? -index - 1 : index, zipf.length - 1);
+        }
+    },
+    // All threads move resources back and forth between two accounts
+    PING_PONG {
+        @Override
+        int next(SplittableRandom random, double[] zipf) {
+            return random.nextInt(2);
+        }
+    };
+
+    // Index of the next account to touch
+    abstract int next(SplittableRandom random, double[] zipf);
+
+    // Cumulative Zipf distribution over the accounts
+    static double[] zipf(int accounts, double exponent) {
+        var result = new double[accounts];
+        var sum = 0.0;
+
+        for (int i = 0; i < accounts; i++) {
+            sum += 1 / Math.pow(i + 1, exponent);
+            result[i] = sum;
+        }
+
+        for (int i = 0; i < accounts; i++) {
+            result[i] /= sum;
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,142 @@
+package io.github.spacanowski.wallet.datastore;
+
+import static java.lang.String.format;
+
+import com.codahale.metrics.MetricRegistry;
+
+import io.dropwizard.jackson.Jackson;
+import io.dropwizard.lifecycle.Managed;
+import io.github.spacanowski.wallet.configuration.WalletEngineFactory;
+import io.github.spacanowski.wallet.model.data.Account;
+import io.github.spacanowski.wallet.model.data.BalanceSnapshot;
+
+import java.io.IOException;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Throughput of wallet engines. Thread count is set by the runner, see BenchmarkRunner.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WalletBenchmark {
+
+    // Large enough that no transfer in a run fails for lack of resources
+    private static final long INITIAL_BALANCE = 1_000_000_000_000L;
+
+    // Type of a configured wallet engine
+    @Param({ "locking", "atomic", "sharded", "compact" })
+    private String engine;
+
+    @Param({ "UNIFORM", "ZIPFIAN", "PING_PONG" })
+    private AccessProfile profile;
+
+    @Param("10000")
+    private int accounts;
+
+    @Param("1.1")
+    private double exponent;
+
+    // Flat combining of changes to one account, applies to the locking engine only
+    @Param("false")
+    private boolean combining;
+
+    // Measures the cost of engine metrics when enabled
+    @Param("false")
+    private boolean metrics;
+
+    private AuditLog audit;
+    private Wallet wallet;
+    private String[] ids;
+    private double[] zipf;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        // Engines are looked up the same way as in application configuration
+        var factory = Jackson.newObjectMapper()
+                             .readValue(format("{\"type\": \"%s\"%s}", engine, combining ? ", \"combining\": true" : ""),
+                                        WalletEngineFactory.class);
+
+        audit = new AuditLog(Wallet.DEFAULT_SCALE);
+        wallet = factory.build(Wallet.DEFAULT_SCALE,
+                               audit,
+                               metrics ? new WalletMetrics(new MetricRegistry()) : WalletMetrics.disabled());
+        ids = new String[accounts];
+        zipf = AccessProfile.zipf(accounts, exponent);
+
+        for (int i = 0; i < accounts; i++) {
+            ids[i] = wallet.create(INITIAL_BALANCE).getId();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        if (wallet instanceof Managed) {
+            ((Managed) wallet).stop();
+        }
+
+        audit.stop();
+    }
+
+    @Benchmark
+    public Account get(Picker picker) {
+        return wallet.get(ids[picker.next()]);
+    }
+
+    @Benchmark
+    public BalanceSnapshot balance(Picker picker) {
+        return wallet.balance(ids[picker.next()]);
+    }
+
+    @Benchmark
+    public Account create() {
+        return wallet.create(INITIAL_BALANCE);
+    }
+
+    @Benchmark
+    public void transfer(Picker picker) {
+        var from = picker.next();
+        var to = picker.next();
+
+        while (to == from) {
+            to = picker.next();
+        }
+
+        wallet.transfer(ids[from], ids[to], 1);
+    }
+
+    @State(Scope.Thread)
+    public static class Picker {
+
+        private final SplittableRandom random = new SplittableRandom();
+
+        private AccessProfile profile;
+        private double[] zipf;
+
+        @Setup(Level.Trial)
+        public void setUp(WalletBenchmark benchmark) {
+            profile = benchmark.profile;
+            zipf = benchmark.zipf;
+        }
+
+        int next() {
+            return profile.next(random, zipf);
+        }
+    }
+}
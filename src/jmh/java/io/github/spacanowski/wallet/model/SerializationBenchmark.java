@@ -0,0 +1,59 @@
+package io.github.spacanowski.wallet.model;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.dropwizard.jackson.Jackson;
+import io.github.spacanowski.wallet.model.data.Account;
+import io.github.spacanowski.wallet.model.mapper.AccountMapper;
+import io.github.spacanowski.wallet.model.output.AccountOutput;
+import io.github.spacanowski.wallet.model.output.TransferOutput;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Cost of turning wallet data into responses
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SerializationBenchmark {
+
+    // Same mapper setup as the application uses
+    private final ObjectMapper mapper = Jackson.newObjectMapper();
+
+    private Account account;
+    private TransferOutput transfer;
+
+    @Setup
+    public void setUp() {
+        account = new Account();
+        account.setId(UUID.randomUUID().toString());
+        account.setBalance(123_456_789L);
+
+        transfer = new TransferOutput(AccountMapper.toOutput(account, 2), AccountMapper.toOutput(account, 2));
+    }
+
+    @Benchmark
+    public AccountOutput toOutput() {
+        return AccountMapper.toOutput(account, 2);
+    }
+
+    @Benchmark
+    public byte[] serializeTransferOutput() throws JsonProcessingException {
+        return mapper.writeValueAsBytes(transfer);
+    }
+}
@@ -1,16 +1,35 @@
 package io.github.spacanowski.wallet;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
 import io.dropwizard.Application;
+import io.dropwizard.lifecycle.Managed;
 import io.dropwizard.setup.Environment;
+import io.github.spacanowski.wallet.configuration.PersistenceConfiguration;
 import io.github.spacanowski.wallet.configuration.SimpleWalletConfiguration;
+import io.github.spacanowski.wallet.datastore.AuditLog;
+import io.github.spacanowski.wallet.datastore.CompactWallet;
+import io.github.spacanowski.wallet.datastore.DurableWallet;
 import io.github.spacanowski.wallet.datastore.Wallet;
+import io.github.spacanowski.wallet.datastore.WalletMetrics;
 import io.github.spacanowski.wallet.health.WalletHealthCheck;
+import io.github.spacanowski.wallet.health.WriteAheadLogHealthCheck;
 import io.github.spacanowski.wallet.service.AccountService;
+import io.github.spacanowski.wallet.service.IdempotencyCache;
+import io.github.spacanowski.wallet.service.TransferExecutor;
+import io.github.spacanowski.wallet.service.TransferScheduler;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Singleton;
 
 import org.glassfish.hk2.utilities.binding.AbstractBinder;
 
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
 public class SimpleWalletApplication extends Application<SimpleWalletConfiguration> {
 
     public static void main(String[] args) throws Exception {
@@ -28,12 +47,81 @@ public class SimpleWalletApplication extends Application<SimpleWalletConfigurati
 
         environment.healthChecks().register("health-check", new WalletHealthCheck());
 
+        var scale = configuration.getBalanceScale();
+        var audit = configuration.getAudit().build(scale);
+        var metrics = new WalletMetrics(environment.metrics());
+        var engine = configuration.getWalletEngine().build(scale, audit, metrics);
+        var wallet = configuration.getPersistence().isEnabled()
+                ? recover(configuration.getPersistence(), engine, environment)
+                : engine;
+
+        // Managed objects stop in reverse order, so operations of the last requests still reach the log
+        environment.lifecycle().manage(audit);
+        environment.metrics().register(MetricRegistry.name(AuditLog.class, "pending"),
+                                       (Gauge<Long>) audit::getPending);
+        environment.metrics().register(MetricRegistry.name(AuditLog.class, "drain-lag-ms"),
+                                       (Gauge<Long>) audit::getDrainLagMillis);
+        environment.metrics().register(MetricRegistry.name(AuditLog.class, "indexed-accounts"),
+                                       (Gauge<Long>) audit::getIndexedAccounts);
+
+        if (engine instanceof CompactWallet) {
+            var compact = (CompactWallet) engine;
+
+            environment.metrics().register(MetricRegistry.name(CompactWallet.class, "accounts"),
+                                           (Gauge<Long>) compact::getAccountCount);
+            environment.metrics().register(MetricRegistry.name(CompactWallet.class, "table-bytes"),
+                                           (Gauge<Long>) compact::getTableBytes);
+        }
+
+        if (wallet instanceof Managed) {
+            environment.lifecycle().manage((Managed) wallet);
+        }
+
+        var idempotency = configuration.getIdempotency().build();
+        var transferExecutor = configuration.getTransferExecution().build();
+
+        // Stopped before the wallet, so queued transfers still reach it
+        environment.lifecycle().manage(transferExecutor);
+        environment.metrics().register(MetricRegistry.name(TransferExecutor.class, "queue-depth"),
+                                       (Gauge<Long>) transferExecutor::getQueueDepth);
+
+        // Also stopped before the wallet, the holds it releases are kept in the wallet
+        environment.lifecycle().manage(configuration.getHolds().build(wallet));
+
+        var transferScheduler = configuration.getTransferScheduling().build(wallet);
+
+        // Stopped before the wallet as well, so a batch of due transfers still reaches it
+        environment.lifecycle().manage(transferScheduler);
+        environment.metrics().register(MetricRegistry.name(TransferScheduler.class, "pending"),
+                                       (Gauge<Long>) transferScheduler::getPendingCount);
+
+        environment.metrics().register(MetricRegistry.name(IdempotencyCache.class, "size"),
+                                       (Gauge<Long>) idempotency::size);
+
         environment.jersey().register(new AbstractBinder() {
             @Override
             protected void configure() {
                 bind(AccountService.class).to(AccountService.class).in(Singleton.class);
-                bind(Wallet.class).to(Wallet.class).in(Singleton.class);
+                bind(wallet).to(Wallet.class);
+                bind(idempotency).to(IdempotencyCache.class);
+                bind(transferExecutor).to(TransferExecutor.class);
+                bind(transferScheduler).to(TransferScheduler.class);
             }
         });
     }
+
+    private Wallet recover(PersistenceConfiguration persistence, Wallet engine, Environment environment)
+            throws IOException {
+        var start = System.nanoTime();
+        var wallet = persistence.build(engine);
+        var duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        environment.metrics().register(MetricRegistry.name(DurableWallet.class, "recovery-time-ms"),
+                                       (Gauge<Long>) () -> duration);
+        environment.healthChecks().register("write-ahead-log", new WriteAheadLogHealthCheck(wallet));
+
+        log.info("Recovered wallet in {} ms", duration);
+
+        return wallet;
+    }
 }
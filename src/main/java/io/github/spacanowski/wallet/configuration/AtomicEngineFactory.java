@@ -0,0 +1,18 @@
+package io.github.spacanowski.wallet.configuration;
+
+import com.fasterxml.jackson.annotation.JsonTypeName;
+
+import io.github.spacanowski.wallet.datastore.AtomicWallet;
+import io.github.spacanowski.wallet.datastore.AuditLog;
+import io.github.spacanowski.wallet.datastore.Wallet;
+import io.github.spacanowski.wallet.datastore.WalletMetrics;
+
+// Balances in atomic cells updated with compare-and-set
+@JsonTypeName("atomic")
+public class AtomicEngineFactory implements WalletEngineFactory {
+
+    @Override
+    public Wallet build(int scale, AuditLog audit, WalletMetrics metrics) {
+        return new AtomicWallet(scale, audit, metrics);
+    }
+}
@@ -0,0 +1,39 @@
+package io.github.spacanowski.wallet.configuration;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import io.dropwizard.util.Duration;
+import io.github.spacanowski.wallet.datastore.AuditLog;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class AuditConfiguration {
+
+    // Number of records kept, each takes 120 bytes off heap
+    @Min(1)
+    @Max(20_000_000)
+    @JsonProperty
+    private int capacity = AuditLog.DEFAULT_CAPACITY;
+
+    @NotNull
+    @JsonProperty
+    private AuditLog.OverflowPolicy overflowPolicy = AuditLog.OverflowPolicy.DROP_OLDEST;
+
+    // How often operations captured by request threads are moved into the log
+    @NotNull
+    @JsonProperty
+    private Duration drainInterval = Duration.milliseconds(1);
+
+    public AuditLog build(int scale) {
+        return new AuditLog(capacity, overflowPolicy, drainInterval.toNanoseconds(), TimeUnit.NANOSECONDS, scale);
+    }
+}
@@ -0,0 +1,43 @@
+package io.github.spacanowski.wallet.configuration;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonTypeName;
+
+import io.github.spacanowski.wallet.datastore.AuditLog;
+import io.github.spacanowski.wallet.datastore.CompactIds;
+import io.github.spacanowski.wallet.datastore.CompactWallet;
+import io.github.spacanowski.wallet.datastore.Wallet;
+import io.github.spacanowski.wallet.datastore.WalletMetrics;
+
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+
+import lombok.Getter;
+import lombok.Setter;
+
+// Short base-62 ids backed by 64-bit keys in primitive tables, for tenants with many accounts
+@JsonTypeName("compact")
+@Getter
+@Setter
+public class CompactEngineFactory implements WalletEngineFactory {
+
+    // Part of every generated id, must differ between instances sharing accounts
+    @Min(0)
+    @Max(CompactIds.MAX_NODE)
+    @JsonProperty
+    private int node;
+
+    // Rounded up to a power of two
+    @Min(1)
+    @JsonProperty
+    private int stripes = CompactWallet.DEFAULT_STRIPES;
+
+    // Keeps account slots in direct memory, heap size then stays flat whatever the number of accounts
+    @JsonProperty
+    private boolean offHeap;
+
+    @Override
+    public Wallet build(int scale, AuditLog audit, WalletMetrics metrics) {
+        return new CompactWallet(scale, audit, node, stripes, offHeap, metrics);
+    }
+}
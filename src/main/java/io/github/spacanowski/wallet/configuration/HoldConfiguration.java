@@ -0,0 +1,28 @@
+package io.github.spacanowski.wallet.configuration;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import io.dropwizard.util.Duration;
+import io.github.spacanowski.wallet.datastore.Wallet;
+import io.github.spacanowski.wallet.service.HoldExpiry;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.validation.constraints.NotNull;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class HoldConfiguration {
+
+    // How late past their expiry holds may still be in place
+    @NotNull
+    @JsonProperty
+    private Duration expiryInterval = Duration.milliseconds(100);
+
+    public HoldExpiry build(Wallet wallet) {
+        return new HoldExpiry(wallet, expiryInterval.toNanoseconds(), TimeUnit.NANOSECONDS);
+    }
+}
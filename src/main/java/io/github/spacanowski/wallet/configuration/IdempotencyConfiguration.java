@@ -0,0 +1,33 @@
+package io.github.spacanowski.wallet.configuration;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import io.dropwizard.util.Duration;
+import io.github.spacanowski.wallet.service.IdempotencyCache;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class IdempotencyConfiguration {
+
+    // Number of idempotency keys remembered, least valuable keys are evicted first
+    @Min(1)
+    @JsonProperty
+    private long maximumSize = IdempotencyCache.DEFAULT_MAXIMUM_SIZE;
+
+    // How long after the first request a retry still gets the stored result
+    @NotNull
+    @JsonProperty
+    private Duration expiry = Duration.hours(IdempotencyCache.DEFAULT_EXPIRY_HOURS);
+
+    public IdempotencyCache build() {
+        return new IdempotencyCache(maximumSize, expiry.toNanoseconds(), TimeUnit.NANOSECONDS);
+    }
+}
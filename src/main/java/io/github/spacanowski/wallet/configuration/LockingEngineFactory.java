@@ -0,0 +1,30 @@
+package io.github.spacanowski.wallet.configuration;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonTypeName;
+
+import io.github.spacanowski.wallet.datastore.AuditLog;
+import io.github.spacanowski.wallet.datastore.LockingWallet;
+import io.github.spacanowski.wallet.datastore.Wallet;
+import io.github.spacanowski.wallet.datastore.WalletMetrics;
+
+import lombok.Getter;
+import lombok.Setter;
+
+// Per account read/write locks
+@JsonTypeName("locking")
+@Getter
+@Setter
+public class LockingEngineFactory implements WalletEngineFactory {
+
+    // Concurrent changes of one account are applied in batches by a single thread, for hot accounts.
+    // A transfer is then a debit and a credit applied one after the other, reads in between see the sum
+    // in neither account.
+    @JsonProperty
+    private boolean combining;
+
+    @Override
+    public Wallet build(int scale, AuditLog audit, WalletMetrics metrics) {
+        return new LockingWallet(scale, audit, metrics, combining);
+    }
+}
@@ -0,0 +1,63 @@
+package io.github.spacanowski.wallet.configuration;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import io.dropwizard.util.DataSize;
+import io.dropwizard.util.Duration;
+import io.dropwizard.validation.MinDataSize;
+import io.github.spacanowski.wallet.datastore.DurableWallet;
+import io.github.spacanowski.wallet.datastore.Wallet;
+import io.github.spacanowski.wallet.datastore.WriteAheadLog;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.NotNull;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class PersistenceConfiguration {
+
+    // When disabled all state lives in memory only
+    @JsonProperty
+    private boolean enabled = false;
+
+    @NotEmpty
+    @JsonProperty
+    private String directory = "data";
+
+    @NotNull
+    @JsonProperty
+    private WriteAheadLog.SyncPolicy syncPolicy = WriteAheadLog.SyncPolicy.GROUPED;
+
+    // Group commit window for GROUPED, time between forces for PERIODIC
+    @NotNull
+    @JsonProperty
+    private Duration syncInterval = Duration.milliseconds(2);
+
+    // Log segments are rolled over at this size, whole segments are dropped once a snapshot covers them
+    @NotNull
+    @MinDataSize(1)
+    @JsonProperty
+    private DataSize segmentSize = DataSize.megabytes(64);
+
+    // Time between background snapshots, zero disables them so recovery replays the whole log
+    @NotNull
+    @JsonProperty
+    private Duration snapshotInterval = Duration.minutes(5);
+
+    public DurableWallet build(Wallet wallet) throws IOException {
+        return DurableWallet.recover(wallet,
+                                     Paths.get(directory),
+                                     syncPolicy,
+                                     syncInterval.toNanoseconds(),
+                                     segmentSize.toBytes(),
+                                     snapshotInterval.toNanoseconds(),
+                                     TimeUnit.NANOSECONDS);
+    }
+}
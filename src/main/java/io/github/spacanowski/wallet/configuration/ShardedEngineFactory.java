@@ -0,0 +1,35 @@
+package io.github.spacanowski.wallet.configuration;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonTypeName;
+
+import io.github.spacanowski.wallet.datastore.AuditLog;
+import io.github.spacanowski.wallet.datastore.ShardedWallet;
+import io.github.spacanowski.wallet.datastore.Wallet;
+import io.github.spacanowski.wallet.datastore.WalletMetrics;
+
+import javax.validation.constraints.Min;
+
+import lombok.Getter;
+import lombok.Setter;
+
+// Accounts partitioned across single threaded shards
+@JsonTypeName("sharded")
+@Getter
+@Setter
+public class ShardedEngineFactory implements WalletEngineFactory {
+
+    @Min(1)
+    @JsonProperty
+    private int shards = Runtime.getRuntime().availableProcessors();
+
+    // Commands waiting for a shard, callers block once it is full
+    @Min(1)
+    @JsonProperty
+    private int queueCapacity = ShardedWallet.DEFAULT_QUEUE_CAPACITY;
+
+    @Override
+    public Wallet build(int scale, AuditLog audit, WalletMetrics metrics) {
+        return new ShardedWallet(scale, audit, shards, queueCapacity, metrics);
+    }
+}
@@ -1,7 +1,60 @@
 package io.github.spacanowski.wallet.configuration;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
+
 import io.dropwizard.Configuration;
+import io.github.spacanowski.wallet.datastore.Wallet;
+
+import javax.validation.Valid;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+import lombok.Getter;
+import lombok.Setter;
 
+@Getter
+@Setter
 public class SimpleWalletConfiguration extends Configuration {
 
+    // Number of decimal places kept for balances, amounts are stored as long minor units
+    @Min(0)
+    @Max(18)
+    @JsonProperty
+    private int balanceScale = Wallet.DEFAULT_SCALE;
+
+    @Valid
+    @NotNull
+    @JsonProperty
+    private WalletEngineFactory walletEngine = new LockingEngineFactory();
+
+    @Valid
+    @NotNull
+    @JsonProperty
+    private AuditConfiguration audit = new AuditConfiguration();
+
+    @Valid
+    @NotNull
+    @JsonProperty
+    private PersistenceConfiguration persistence = new PersistenceConfiguration();
+
+    @Valid
+    @NotNull
+    @JsonProperty
+    private IdempotencyConfiguration idempotency = new IdempotencyConfiguration();
+
+    @Valid
+    @NotNull
+    @JsonProperty
+    private TransferExecutionConfiguration transferExecution = new TransferExecutionConfiguration();
+
+    @Valid
+    @NotNull
+    @JsonProperty
+    private HoldConfiguration holds = new HoldConfiguration();
+
+    @Valid
+    @NotNull
+    @JsonProperty
+    private TransferSchedulingConfiguration transferScheduling = new TransferSchedulingConfiguration();
 }
@@ -0,0 +1,51 @@
+package io.github.spacanowski.wallet.configuration;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import io.dropwizard.util.Duration;
+import io.github.spacanowski.wallet.service.TransferExecutor;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class TransferExecutionConfiguration {
+
+    // When disabled transfers run on server threads
+    @JsonProperty
+    private boolean async = false;
+
+    @Min(1)
+    @JsonProperty
+    private int partitions = Runtime.getRuntime().availableProcessors();
+
+    @Min(1)
+    @JsonProperty
+    private int threadsPerPartition = 1;
+
+    // Transfers waiting in one partition, further ones are rejected with 503 until it drains
+    @Min(1)
+    @JsonProperty
+    private int queueCapacity = TransferExecutor.DEFAULT_QUEUE_CAPACITY;
+
+    // Requests still waiting for their transfer after this get 503
+    @NotNull
+    @JsonProperty
+    private Duration timeout = Duration.seconds(30);
+
+    public TransferExecutor build() {
+        return async
+                ? new TransferExecutor(partitions,
+                                       threadsPerPartition,
+                                       queueCapacity,
+                                       timeout.toNanoseconds(),
+                                       TimeUnit.NANOSECONDS)
+                : new TransferExecutor();
+    }
+}
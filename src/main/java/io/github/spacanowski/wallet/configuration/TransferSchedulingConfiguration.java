@@ -0,0 +1,54 @@
+package io.github.spacanowski.wallet.configuration;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import io.dropwizard.util.Duration;
+import io.github.spacanowski.wallet.datastore.Wallet;
+import io.github.spacanowski.wallet.service.TransferScheduler;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class TransferSchedulingConfiguration {
+
+    // How late past their execution time scheduled transfers may start
+    @NotNull
+    @JsonProperty
+    private Duration tick = Duration.milliseconds(TransferScheduler.DEFAULT_TICK_MILLIS);
+
+    // Partitions of due transfers run at the same time, each on its own thread
+    @Min(1)
+    @JsonProperty
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    // Transfers applied by the wallet under one round of locks
+    @Min(1)
+    @JsonProperty
+    private int batchSize = TransferScheduler.DEFAULT_BATCH_SIZE;
+
+    // Outcomes of transfers already run that can still be asked for
+    @Min(1)
+    @JsonProperty
+    private long maximumOutcomes = TransferScheduler.DEFAULT_MAXIMUM_OUTCOMES;
+
+    @NotNull
+    @JsonProperty
+    private Duration outcomeExpiry = Duration.hours(TransferScheduler.DEFAULT_OUTCOME_EXPIRY_HOURS);
+
+    public TransferScheduler build(Wallet wallet) {
+        return new TransferScheduler(wallet,
+                                     Math.max(1, tick.toMilliseconds()),
+                                     parallelism,
+                                     batchSize,
+                                     maximumOutcomes,
+                                     outcomeExpiry.toNanoseconds(),
+                                     TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,16 @@
+package io.github.spacanowski.wallet.configuration;
+
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+
+import io.dropwizard.jackson.Discoverable;
+import io.github.spacanowski.wallet.datastore.AuditLog;
+import io.github.spacanowski.wallet.datastore.Wallet;
+import io.github.spacanowski.wallet.datastore.WalletMetrics;
+
+// Storage engine selected by the type property of walletEngine in configuration. Engines are found
+// through META-INF/services, so one can be added from another jar without touching the application.
+@JsonTypeInfo(use = JsonTypeInfo.Id.NAME, property = "type")
+public interface WalletEngineFactory extends Discoverable {
+
+    Wallet build(int scale, AuditLog audit, WalletMetrics metrics);
+}
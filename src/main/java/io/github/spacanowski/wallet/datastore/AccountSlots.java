@@ -0,0 +1,21 @@
+package io.github.spacanowski.wallet.datastore;
+
+// Fixed width storage for the slots of a balance table, each slot holds an id, a balance and a
+// version bumped on every balance change. An id of 0 marks a free slot.
+interface AccountSlots {
+
+    int capacity();
+
+    long id(int slot);
+
+    long balance(int slot);
+
+    long version(int slot);
+
+    void set(int slot, long id, long balance, long version);
+
+    void update(int slot, long balance, long version);
+
+    // Bytes held by the slots, whether on or off the heap
+    long bytes();
+}
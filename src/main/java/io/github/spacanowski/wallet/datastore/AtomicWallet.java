@@ -0,0 +1,189 @@
+package io.github.spacanowski.wallet.datastore;
+
+import io.github.spacanowski.wallet.exception.AccountNotFoundException;
+import io.github.spacanowski.wallet.exception.BalanceOverflowException;
+import io.github.spacanowski.wallet.exception.InsufficientResourcesException;
+import io.github.spacanowski.wallet.model.data.Account;
+import io.github.spacanowski.wallet.model.data.AuditPage;
+import io.github.spacanowski.wallet.model.data.AuditQuery;
+import io.github.spacanowski.wallet.model.data.BalanceSnapshot;
+import io.github.spacanowski.wallet.model.data.TransferResult;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+// Lock-free wallet, debit is a compare-and-set retry loop and credit never waits for other writers.
+// Debit and credit are separate atomic steps, so a read between them sees the sum in neither account.
+@Slf4j
+public class AtomicWallet implements Wallet {
+
+    @Getter
+    private final int scale;
+
+    private final ConcurrentHashMap<String, AtomicLong> balances = new ConcurrentHashMap<>();
+    private final AuditLog audit;
+    private final WalletMetrics metrics;
+
+    public AtomicWallet() {
+        this(DEFAULT_SCALE, new AuditLog(DEFAULT_SCALE));
+    }
+
+    public AtomicWallet(int scale, AuditLog audit) {
+        this(scale, audit, WalletMetrics.disabled());
+    }
+
+    public AtomicWallet(int scale, AuditLog audit, WalletMetrics metrics) {
+        this.scale = scale;
+        this.audit = audit;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Account get(String id) {
+        var balance = balances.get(id);
+
+        if (balance == null) {
+            return null;
+        }
+
+        var result = new Account();
+
+        result.setId(id);
+        result.setBalance(balance.get());
+
+        return result;
+    }
+
+    // Balances are plain atomic values, a counter of changes would cost every writer a second update
+    @Override
+    public BalanceSnapshot balance(String id) {
+        var balance = balances.get(id);
+
+        return balance == null ? null : new BalanceSnapshot(id, balance.get(), 0);
+    }
+
+    @Override
+    public Account create(long initialBalance) {
+        var id = UUID.randomUUID().toString();
+
+        while (balances.putIfAbsent(id, new AtomicLong(initialBalance)) != null) {
+            log.info("Id collision during account creation. Retrying.");
+            id = UUID.randomUUID().toString();
+        }
+
+        audit.create(id, initialBalance);
+
+        var result = new Account();
+
+        result.setId(id);
+        result.setBalance(initialBalance);
+
+        return result;
+    }
+
+    @Override
+    public TransferResult transfer(String fromId, String toId, long sum) {
+        var from = balances.get(fromId);
+
+        if (from == null) {
+            throw new AccountNotFoundException(fromId);
+        }
+
+        var to = balances.get(toId);
+
+        if (to == null) {
+            throw new AccountNotFoundException(toId);
+        }
+
+        var fromBalance = debit(fromId, from, sum);
+        long toBalance;
+
+        try {
+            toBalance = credit(toId, to, sum);
+        } catch (BalanceOverflowException e) {
+            log.debug("Failed transfer on account {}: {}", toId, e.getMessage());
+            // Rollback debit of resources
+            credit(fromId, from, sum);
+            throw e;
+        }
+
+        audit.transfer(fromId, toId, sum);
+        metrics.transferred(fromId, toId);
+
+        // Each balance is the one left by this transfer, other transfers may have changed them since
+        return new TransferResult(account(fromId, fromBalance), account(toId, toBalance));
+    }
+
+    @Override
+    public void delete(String id) {
+        audit.delete(id);
+
+        balances.remove(id);
+    }
+
+    @Override
+    public void restore(String id, long balance) {
+        balances.put(id, new AtomicLong(balance));
+    }
+
+    @Override
+    public List<String> getOperations() {
+        return audit.getOperations();
+    }
+
+    @Override
+    public AuditPage getOperations(AuditQuery query) {
+        return audit.read(query);
+    }
+
+    private Account account(String id, long balance) {
+        var result = new Account();
+
+        result.setId(id);
+        result.setBalance(balance);
+
+        return result;
+    }
+
+    // Returns the balance after the debit
+    private long debit(String id, AtomicLong balance, long sum) {
+        long current;
+        int retries = -1;
+
+        do {
+            retries++;
+            current = balance.get();
+
+            if (current < sum) {
+                metrics.retried(retries);
+                throw new InsufficientResourcesException(id);
+            }
+        } while (!balance.compareAndSet(current, current - sum));
+
+        metrics.retried(retries);
+
+        return current - sum;
+    }
+
+    // Returns the balance after the credit
+    private long credit(String id, AtomicLong balance, long sum) {
+        long current;
+        long next;
+        int retries = -1;
+
+        do {
+            retries++;
+            current = balance.get();
+            next = Balances.add(id, current, sum);
+        } while (!balance.compareAndSet(current, next));
+
+        metrics.retried(retries);
+
+        return next;
+    }
+}
@@ -0,0 +1,93 @@
+package io.github.spacanowski.wallet.datastore;
+
+import io.github.spacanowski.wallet.model.data.Operation;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.Getter;
+
+// Audit events captured by a single thread and not yet drained into the audit log. Only the owning
+// thread offers events and only the drainer polls them, so neither side takes a lock.
+class AuditBuffer {
+
+    static final int CAPACITY = 1024;
+
+    private static final int MASK = CAPACITY - 1;
+
+    @Getter
+    private final Thread owner;
+
+    private final Operation.Type[] types = new Operation.Type[CAPACITY];
+    private final String[] ids = new String[CAPACITY];
+    private final String[] otherIds = new String[CAPACITY];
+    private final long[] amounts = new long[CAPACITY];
+    private final long[] sequences = new long[CAPACITY];
+    private final long[] timestamps = new long[CAPACITY];
+
+    // Next event to drain and next free entry
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    AuditBuffer(Thread owner) {
+        this.owner = owner;
+    }
+
+    // Returns false when the buffer is full
+    boolean offer(long sequence, long timestamp, Operation.Type type, String id, String otherId, long amount) {
+        var position = tail.get();
+
+        if (position - head.get() == CAPACITY) {
+            return false;
+        }
+
+        var index = (int) (position & MASK);
+
+        types[index] = type;
+        ids[index] = id;
+        otherIds[index] = otherId;
+        amounts[index] = amount;
+        sequences[index] = sequence;
+        timestamps[index] = timestamp;
+
+        tail.lazySet(position + 1);
+
+        return true;
+    }
+
+    void drainTo(AuditSink sink) {
+        var position = head.get();
+        var end = tail.get();
+
+        for (; position < end; position++) {
+            var index = (int) (position & MASK);
+
+            sink.append(sequences[index], timestamps[index], types[index], ids[index], otherIds[index], amounts[index]);
+
+            ids[index] = null;
+            otherIds[index] = null;
+        }
+
+        head.lazySet(end);
+    }
+
+    int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+    // Capture time of the oldest event waiting to be drained, Long.MAX_VALUE when there is none
+    long oldestTimestamp() {
+        var position = head.get();
+
+        if (position == tail.get()) {
+            return Long.MAX_VALUE;
+        }
+
+        return timestamps[(int) (position & MASK)];
+    }
+
+    @FunctionalInterface
+    interface AuditSink {
+
+        void append(long sequence, long timestamp, Operation.Type type, String id, String otherId, long amount);
+    }
+}
@@ -0,0 +1,543 @@
+package io.github.spacanowski.wallet.datastore;
+
+import io.dropwizard.lifecycle.Managed;
+import io.github.spacanowski.wallet.model.data.AuditPage;
+import io.github.spacanowski.wallet.model.data.AuditQuery;
+import io.github.spacanowski.wallet.model.data.CreateOpertaion;
+import io.github.spacanowski.wallet.model.data.DeleteOperation;
+import io.github.spacanowski.wallet.model.data.Operation;
+import io.github.spacanowski.wallet.model.data.TransferOperation;
+
+import java.lang.invoke.VarHandle;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+// Fixed capacity ring of fixed size binary records kept off heap. Records are only turned into
+// operations and audit strings when read.
+//
+// Sequences of the records of every account are indexed in ascending order, so a page of an account
+// starts at its cursor instead of scanning the whole ring or every later record of the account.
+//
+// Operations only take an event sequence and go to a buffer of the calling thread, a background
+// drainer moves them into the ring. Reads drain first, so they see every operation captured before.
+// Drained records are ordered per thread, the event sequence orders them across threads.
+@Slf4j
+public class AuditLog implements Managed {
+
+    public static final int DEFAULT_CAPACITY = 100_000;
+    public static final long DEFAULT_DRAIN_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    // Longer ids (never generated by the wallet) are truncated in the audit
+    private static final int ID_BYTES = 36;
+
+    // type, id length, other id length, padding, timestamp, amount, event sequence, id, other id
+    private static final int TYPE_OFFSET = 0;
+    private static final int ID_LENGTH_OFFSET = 1;
+    private static final int OTHER_ID_LENGTH_OFFSET = 2;
+    private static final int TIMESTAMP_OFFSET = 8;
+    private static final int AMOUNT_OFFSET = 16;
+    private static final int EVENT_OFFSET = 24;
+    private static final int ID_OFFSET = 32;
+    private static final int OTHER_ID_OFFSET = ID_OFFSET + ID_BYTES;
+    private static final int RECORD_SIZE = OTHER_ID_OFFSET + ID_BYTES;
+
+    // Marks a slot while its record is being written
+    private static final long WRITING = Long.MIN_VALUE;
+
+    private static final Operation.Type[] TYPES = Operation.Type.values();
+
+    @Getter
+    private final int capacity;
+
+    private final OverflowPolicy overflowPolicy;
+    private final int scale;
+    private final ByteBuffer records;
+
+    // Sequence of the record held by each slot
+    private final AtomicLongArray published;
+    private final AtomicLong next = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
+
+    // Records of every account still in the ring. Pruned on every lap of the ring, so it holds at most
+    // the records of two laps however many accounts the wallet has.
+    private final Map<String, AccountRecords> index = new ConcurrentHashMap<>();
+
+    // Event capture, buffers of dead threads are dropped once drained
+    private final AtomicLong events = new AtomicLong();
+    private final ThreadLocal<AuditBuffer> captured = ThreadLocal.withInitial(this::register);
+    private final List<AuditBuffer> buffers = new CopyOnWriteArrayList<>();
+    private final Object drainLock = new Object();
+    private final Thread drainer;
+    private volatile boolean running = true;
+
+    public AuditLog(int scale) {
+        this(DEFAULT_CAPACITY, OverflowPolicy.DROP_OLDEST, scale);
+    }
+
+    public AuditLog(int capacity, OverflowPolicy overflowPolicy, int scale) {
+        this(capacity, overflowPolicy, DEFAULT_DRAIN_INTERVAL_NANOS, TimeUnit.NANOSECONDS, scale);
+    }
+
+    public AuditLog(int capacity, OverflowPolicy overflowPolicy, long drainInterval, TimeUnit unit, int scale) {
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+        this.scale = scale;
+        this.records = ByteBuffer.allocateDirect(capacity * RECORD_SIZE);
+        this.published = new AtomicLongArray(capacity);
+
+        for (int slot = 0; slot < capacity; slot++) {
+            published.set(slot, slot - (long) capacity);
+        }
+
+        drainer = new Thread(new Drainer(new WeakReference<>(this), unit.toNanos(drainInterval)),
+                             "wallet-audit-drainer");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    public void create(String id, long initialBalance) {
+        capture(Operation.Type.CREATE, id, null, initialBalance);
+    }
+
+    public void transfer(String from, String to, long sum) {
+        capture(Operation.Type.TRANSFER, from, to, sum);
+    }
+
+    public void delete(String id) {
+        capture(Operation.Type.DELETE, id, null, 0);
+    }
+
+    // Operations captured but not drained into the log yet
+    public long getPending() {
+        var result = 0L;
+
+        for (var pending : buffers) {
+            result += pending.size();
+        }
+
+        return result;
+    }
+
+    // Age of the oldest operation waiting to be drained
+    public long getDrainLagMillis() {
+        var oldest = Long.MAX_VALUE;
+
+        for (var pending : buffers) {
+            oldest = Math.min(oldest, pending.oldestTimestamp());
+        }
+
+        return oldest == Long.MAX_VALUE ? 0 : Math.max(0, System.currentTimeMillis() - oldest);
+    }
+
+    // Moves every captured operation into the log
+    public void drain() {
+        synchronized (drainLock) {
+            for (var pending : buffers) {
+                pending.drainTo(this::append);
+
+                if (!pending.getOwner().isAlive() && pending.size() == 0) {
+                    buffers.remove(pending);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void start() {
+        // Drainer is started on construction
+    }
+
+    @Override
+    public void stop() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(drainer);
+        drainer.join();
+
+        drain();
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    // Accounts indexed for lookups, at most those of the last two laps of records
+    public long getIndexedAccounts() {
+        return index.size();
+    }
+
+    public List<String> getOperations() {
+        return read().stream()
+                     .map(Operation::getAudit)
+                     .collect(Collectors.toList());
+    }
+
+    // Every operation in the log ordered by event sequence
+    public List<Operation> read() {
+        drain();
+
+        var end = end();
+        var start = start(end);
+
+        var result = new ArrayList<Operation>((int) (end - start));
+        var buffer = new byte[ID_BYTES];
+
+        for (var sequence = start; sequence < end; sequence++) {
+            var operation = read(sequence, buffer, null, Long.MIN_VALUE, Long.MAX_VALUE);
+
+            if (operation != null) {
+                result.add(operation);
+            }
+        }
+
+        result.sort(Comparator.comparingLong(Operation::getSequence));
+
+        return result;
+    }
+
+    // Records from the query cursor on, and below its upper sequence, that match its filters, up to its limit
+    public AuditPage read(AuditQuery query) {
+        drain();
+
+        var last = end();
+        var end = Math.min(last, query.getUntil());
+        var start = Math.max(query.getCursor(), start(last));
+        var from = query.getFrom() == null ? Long.MIN_VALUE : query.getFrom().toEpochMilli();
+        var to = query.getTo() == null ? Long.MAX_VALUE : query.getTo().toEpochMilli();
+
+        var result = new ArrayList<Operation>((int) Math.max(0, Math.min(end - start, query.getLimit())));
+        var buffer = new byte[ID_BYTES];
+        var nextCursor = end;
+
+        if (query.getAccount() == null) {
+            for (var sequence = start; sequence < end; sequence++) {
+                if (result.size() == query.getLimit()) {
+                    nextCursor = sequence;
+                    break;
+                }
+
+                var operation = read(sequence, buffer, query.getType(), from, to);
+
+                if (operation != null) {
+                    result.add(operation);
+                }
+            }
+        } else {
+            var records = index.get(query.getAccount());
+            var position = start;
+
+            // Sequences are taken from the index as many as the page still misses, filters may skip some.
+            // One more is taken to tell where the next page starts.
+            while (records != null) {
+                var wanted = query.getLimit() - result.size();
+                var sequences = records.range(position, end, wanted + 1);
+
+                for (int i = 0; i < Math.min(wanted, sequences.length); i++) {
+                    var operation = read(sequences[i], buffer, query.getType(), from, to);
+
+                    if (operation != null) {
+                        result.add(operation);
+                    }
+                }
+
+                if (sequences.length <= wanted) {
+                    break;
+                }
+
+                position = sequences[wanted];
+
+                if (result.size() == query.getLimit()) {
+                    nextCursor = position;
+                    break;
+                }
+            }
+        }
+
+        // Drained records are ordered per thread only, within a page they are put in event order
+        result.sort(Comparator.comparingLong(Operation::getSequence));
+
+        return new AuditPage(result, nextCursor, last);
+    }
+
+    private void capture(Operation.Type type, String id, String otherId, long amount) {
+        var event = events.getAndIncrement();
+        var timestamp = System.currentTimeMillis();
+
+        var buffer = captured.get();
+
+        // A thread producing faster than the drainer keeps up with writes to the log itself, after its own
+        // buffered operations so they do not land in the log behind the later one
+        if (!buffer.offer(event, timestamp, type, id, otherId, amount)) {
+            synchronized (drainLock) {
+                buffer.drainTo(this::append);
+            }
+
+            append(event, timestamp, type, id, otherId, amount);
+        }
+    }
+
+    private AuditBuffer register() {
+        var result = new AuditBuffer(Thread.currentThread());
+
+        buffers.add(result);
+
+        return result;
+    }
+
+    private void append(long event, long timestamp, Operation.Type type, String id, String otherId, long amount) {
+        var sequence = next.getAndIncrement();
+
+        if (sequence >= capacity && overflowPolicy == OverflowPolicy.DROP_NEWEST) {
+            dropped.increment();
+            return;
+        }
+
+        if (sequence >= capacity) {
+            dropped.increment();
+        }
+
+        if (sequence >= capacity && sequence % capacity == 0) {
+            prune(sequence - capacity);
+        }
+
+        var slot = (int) (sequence % capacity);
+        var offset = slot * RECORD_SIZE;
+
+        // Indexed before the record is published, readers of an indexed record wait for it
+        index(id, sequence);
+
+        if (otherId != null && !otherId.equals(id)) {
+            index(otherId, sequence);
+        }
+
+        // A writer a full lap ahead waits for the previous record in the slot to be completed
+        while (published.get(slot) != sequence - capacity) {
+            Thread.onSpinWait();
+        }
+
+        published.set(slot, WRITING);
+
+        // A store of the marker orders only the writes before it, without the fence payload writes could
+        // become visible first and a reader would see the old sequence around a torn record
+        VarHandle.storeStoreFence();
+
+        records.put(offset + TYPE_OFFSET, (byte) type.ordinal());
+        records.putLong(offset + TIMESTAMP_OFFSET, timestamp);
+        records.putLong(offset + AMOUNT_OFFSET, amount);
+        records.putLong(offset + EVENT_OFFSET, event);
+        records.put(offset + ID_LENGTH_OFFSET, writeId(offset + ID_OFFSET, id));
+        records.put(offset + OTHER_ID_LENGTH_OFFSET, writeId(offset + OTHER_ID_OFFSET, otherId));
+
+        published.set(slot, sequence);
+    }
+
+    private void index(String id, long sequence) {
+        // Added inside compute, so pruning can not drop the account between lookup and add
+        index.compute(id, (key, records) -> {
+            var result = records == null ? new AccountRecords() : records;
+
+            result.add(sequence);
+
+            return result;
+        });
+    }
+
+    // Drops records older than the start of the ring, and accounts left without any
+    private void prune(long start) {
+        for (var id : index.keySet()) {
+            index.computeIfPresent(id, (key, records) -> records.prune(start) == 0 ? null : records);
+        }
+    }
+
+    private long end() {
+        var end = next.get();
+
+        return overflowPolicy == OverflowPolicy.DROP_NEWEST ? Math.min(end, capacity) : end;
+    }
+
+    private long start(long end) {
+        return overflowPolicy == OverflowPolicy.DROP_NEWEST ? 0 : Math.max(0, end - capacity);
+    }
+
+    private byte writeId(int offset, String id) {
+        if (id == null) {
+            return 0;
+        }
+
+        var length = Math.min(id.length(), ID_BYTES);
+
+        for (int i = 0; i < length; i++) {
+            var character = id.charAt(i);
+
+            records.put(offset + i, character < 128 ? (byte) character : (byte) '?');
+        }
+
+        return (byte) length;
+    }
+
+    // Record with the sequence unless it was overwritten or does not match the type and time range.
+    // A record still being written is waited for, its writer took the sequence before the read started.
+    private Operation read(long sequence, byte[] buffer, Operation.Type filter, long from, long to) {
+        var slot = (int) (sequence % capacity);
+        var offset = slot * RECORD_SIZE;
+        long current;
+
+        while ((current = published.get(slot)) == WRITING || current < sequence) {
+            Thread.onSpinWait();
+        }
+
+        if (current != sequence) {
+            return null;
+        }
+
+        var type = TYPES[records.get(offset + TYPE_OFFSET)];
+        var timestamp = records.getLong(offset + TIMESTAMP_OFFSET);
+
+        if ((filter != null && type != filter) || timestamp < from || timestamp >= to) {
+            return null;
+        }
+
+        var amount = records.getLong(offset + AMOUNT_OFFSET);
+        var event = records.getLong(offset + EVENT_OFFSET);
+        var id = readId(offset + ID_OFFSET, records.get(offset + ID_LENGTH_OFFSET), buffer);
+        var otherId = readId(offset + OTHER_ID_OFFSET, records.get(offset + OTHER_ID_LENGTH_OFFSET), buffer);
+
+        // Discard the record if a writer took the slot over while it was copied
+        VarHandle.acquireFence();
+
+        if (published.get(slot) != sequence) {
+            return null;
+        }
+
+        switch (type) {
+            case CREATE:
+                return new CreateOpertaion(event, id, amount, scale);
+            case TRANSFER:
+                return new TransferOperation(event, id, otherId, amount, scale);
+            default:
+                return new DeleteOperation(event, id);
+        }
+    }
+
+    private String readId(int offset, byte length, byte[] buffer) {
+        for (int i = 0; i < length; i++) {
+            buffer[i] = records.get(offset + i);
+        }
+
+        return new String(buffer, 0, length, StandardCharsets.US_ASCII);
+    }
+
+    // Sequences of the records of one account, ascending. Concurrent writers may add them slightly out
+    // of order, they are inserted in place.
+    private static class AccountRecords {
+
+        private long[] sequences = new long[4];
+        private int first;
+        private int size;
+
+        synchronized void add(long sequence) {
+            if (first + size == sequences.length) {
+                // Reuses the room of pruned records before growing
+                var grown = size * 2 > sequences.length ? new long[sequences.length * 2] : sequences;
+
+                System.arraycopy(sequences, first, grown, 0, size);
+                sequences = grown;
+                first = 0;
+            }
+
+            var position = first + size;
+
+            while (position > first && sequences[position - 1] > sequence) {
+                sequences[position] = sequences[position - 1];
+                position--;
+            }
+
+            sequences[position] = sequence;
+            size++;
+        }
+
+        // Returns how many are left
+        synchronized int prune(long start) {
+            while (size > 0 && sequences[first] < start) {
+                first++;
+                size--;
+            }
+
+            return size;
+        }
+
+        // At most limit sequences in [start, end)
+        synchronized long[] range(long start, long end, int limit) {
+            var from = Arrays.binarySearch(sequences, first, first + size, start);
+
+            if (from < 0) {
+                from = -from - 1;
+            }
+
+            var to = from;
+
+            while (to < first + size && to - from < limit && sequences[to] < end) {
+                to++;
+            }
+
+            return Arrays.copyOfRange(sequences, from, to);
+        }
+    }
+
+    public enum OverflowPolicy {
+
+        // Oldest records are overwritten by new ones
+        DROP_OLDEST,
+        // First records are kept and new ones are discarded once the log is full
+        DROP_NEWEST
+    }
+
+    // Holds the log weakly, so a log nobody uses any more is collected with its off heap records
+    @RequiredArgsConstructor
+    private static class Drainer implements Runnable {
+
+        private final WeakReference<AuditLog> audit;
+        private final long intervalNanos;
+
+        @Override
+        public void run() {
+            do {
+                LockSupport.parkNanos(intervalNanos);
+            } while (drain(audit));
+        }
+
+        // Kept apart so no reference to the log stays on the stack while parked
+        private static boolean drain(WeakReference<AuditLog> reference) {
+            var audit = reference.get();
+
+            if (audit == null || !audit.running) {
+                return false;
+            }
+
+            try {
+                audit.drain();
+            } catch (RuntimeException e) {
+                log.error("Failed to drain audit operations", e);
+            }
+
+            return true;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package io.github.spacanowski.wallet.datastore;
+
+import io.github.spacanowski.wallet.exception.BalanceOverflowException;
+import io.github.spacanowski.wallet.model.data.Account;
+
+final class Balances {
+
+    private Balances() {
+    }
+
+    // Balance after crediting a positive sum, overflowing balances are rejected instead of wrapping
+    static long add(String id, long balance, long sum) {
+        if (balance > Long.MAX_VALUE - sum) {
+            throw new BalanceOverflowException(id);
+        }
+
+        return balance + sum;
+    }
+
+    // Balance transfers may spend, the rest is reserved by holds
+    static long available(Account account) {
+        return account.getBalance() - account.getHeld();
+    }
+
+    // Balance including credits not folded yet, exact only with the account lock held
+    static long total(Account account) {
+        var credits = account.getCredits();
+
+        return credits == null ? account.getBalance() : account.getBalance() + credits.sum();
+    }
+
+    // Moves credits of a striped account into its balance, called with the account write lock held.
+    // Credits were checked against overflow of the total when they were made. Returns whether the
+    // balance changed, its snapshot then has to be published again.
+    static boolean fold(Account account) {
+        var credits = account.getCredits();
+
+        if (credits == null) {
+            return false;
+        }
+
+        var pending = credits.sumThenReset();
+
+        account.setBalance(account.getBalance() + pending);
+
+        return pending != 0;
+    }
+}
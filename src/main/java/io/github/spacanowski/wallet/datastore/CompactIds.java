@@ -0,0 +1,112 @@
+package io.github.spacanowski.wallet.datastore;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Time ordered 64-bit account ids built from milliseconds since EPOCH_MILLIS, a node number and a
+// per-millisecond sequence, shown outside of the wallet as at most 11 base-62 characters.
+public class CompactIds {
+
+    public static final int NODE_BITS = 10;
+    public static final int MAX_NODE = (1 << NODE_BITS) - 1;
+
+    // 2020-01-01T00:00:00Z, leaves 41 bits of milliseconds for the next 69 years
+    static final long EPOCH_MILLIS = 1_577_836_800_000L;
+
+    private static final int SEQUENCE_BITS = 12;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private static final int RADIX = 62;
+    private static final int MAX_LENGTH = 11;
+    private static final char[] DIGITS = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz".toCharArray();
+
+    private final long node;
+
+    // Last id handed out, ids only ever grow even if the clock moves back
+    private final AtomicLong last = new AtomicLong();
+
+    public CompactIds(int node) {
+        if (node < 0 || node > MAX_NODE) {
+            throw new IllegalArgumentException("Node must be between 0 and " + MAX_NODE);
+        }
+
+        this.node = node;
+    }
+
+    public long next() {
+        while (true) {
+            var previous = last.get();
+            var millis = Math.max(System.currentTimeMillis() - EPOCH_MILLIS, previous >>> (NODE_BITS + SEQUENCE_BITS));
+            var candidate = (millis << (NODE_BITS + SEQUENCE_BITS)) | (node << SEQUENCE_BITS);
+
+            if (candidate <= previous) {
+                // Same millisecond, or the clock moved back, continue the sequence of the last id
+                // which carries into the millisecond bits once it is exhausted
+                candidate = (previous & SEQUENCE_MASK) == SEQUENCE_MASK
+                            ? ((millis + 1) << (NODE_BITS + SEQUENCE_BITS)) | (node << SEQUENCE_BITS)
+                            : previous + 1;
+            }
+
+            if (last.compareAndSet(previous, candidate)) {
+                return candidate;
+            }
+        }
+    }
+
+    public static String encode(long id) {
+        if (id < 0) {
+            throw new IllegalArgumentException("Id must not be negative");
+        }
+
+        var buffer = new char[MAX_LENGTH];
+        var position = MAX_LENGTH;
+
+        do {
+            buffer[--position] = DIGITS[(int) (id % RADIX)];
+            id /= RADIX;
+        } while (id != 0);
+
+        return new String(buffer, position, MAX_LENGTH - position);
+    }
+
+    // Returns -1 for text that is not an encoded id, every id generated by this class is positive.
+    // Leading zeros are rejected so every id has exactly one text form.
+    public static long decode(String text) {
+        if (text == null || text.isEmpty() || text.length() > MAX_LENGTH) {
+            return -1;
+        }
+
+        if (text.length() > 1 && text.charAt(0) == '0') {
+            return -1;
+        }
+
+        long id = 0;
+
+        for (int i = 0; i < text.length(); i++) {
+            var digit = digit(text.charAt(i));
+
+            if (digit < 0 || id > (Long.MAX_VALUE - digit) / RADIX) {
+                return -1;
+            }
+
+            id = id * RADIX + digit;
+        }
+
+        return id;
+    }
+
+    private static int digit(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+
+        if (c >= 'A' && c <= 'Z') {
+            return c - 'A' + 10;
+        }
+
+        if (c >= 'a' && c <= 'z') {
+            return c - 'a' + 36;
+        }
+
+        return -1;
+    }
+}
@@ -0,0 +1,330 @@
+package io.github.spacanowski.wallet.datastore;
+
+import io.github.spacanowski.wallet.exception.AccountNotFoundException;
+import io.github.spacanowski.wallet.exception.InsufficientResourcesException;
+import io.github.spacanowski.wallet.model.data.Account;
+import io.github.spacanowski.wallet.model.data.AuditPage;
+import io.github.spacanowski.wallet.model.data.AuditQuery;
+import io.github.spacanowski.wallet.model.data.BalanceSnapshot;
+import io.github.spacanowski.wallet.model.data.TransferResult;
+
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.IntFunction;
+import java.util.function.ToLongFunction;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+// Wallet keyed by 64-bit ids held in primitive tables, ids are turned into their base-62 text only
+// at the wallet boundary. Accounts are spread over lock striped tables, a transfer locks at most two.
+// Tables can keep their slots off the heap, so heap size does not depend on the number of accounts.
+// Balance reads are optimistic, they retry under the read lock only if a writer got in the way.
+@Slf4j
+public class CompactWallet implements Wallet {
+
+    public static final int DEFAULT_STRIPES = 256;
+
+    @Getter
+    private final int scale;
+
+    private final CompactIds ids;
+    private final Stripe[] stripes;
+    private final int stripeMask;
+    private final AuditLog audit;
+    private final WalletMetrics metrics;
+
+    public CompactWallet() {
+        this(DEFAULT_SCALE, new AuditLog(DEFAULT_SCALE), 0, DEFAULT_STRIPES, false);
+    }
+
+    public CompactWallet(int scale, AuditLog audit, int node, int stripes, boolean offHeap) {
+        this(scale, audit, node, stripes, offHeap, WalletMetrics.disabled());
+    }
+
+    public CompactWallet(int scale, AuditLog audit, int node, int stripes, boolean offHeap, WalletMetrics metrics) {
+        this.scale = scale;
+        this.audit = audit;
+        this.metrics = metrics;
+        this.ids = new CompactIds(node);
+
+        // Rounded up to a power of two so a stripe is picked with a mask
+        var count = stripes <= 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+
+        this.stripes = new Stripe[count];
+        this.stripeMask = count - 1;
+
+        IntFunction<AccountSlots> allocator = offHeap ? OffHeapAccountSlots::new : HeapAccountSlots::new;
+
+        for (int i = 0; i < count; i++) {
+            this.stripes[i] = new Stripe(i, new LongBalanceTable(allocator));
+        }
+    }
+
+    @Override
+    public Account get(String id) {
+        var key = CompactIds.decode(id);
+
+        if (key <= 0) {
+            return null;
+        }
+
+        var stripe = stripe(key);
+        var stamp = stripe.lock.readLock();
+
+        try {
+            var slot = stripe.table.find(key);
+
+            if (slot == LongBalanceTable.NOT_FOUND) {
+                return null;
+            }
+
+            return account(id, stripe.table.balance(slot));
+        } finally {
+            stripe.lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public BalanceSnapshot balance(String id) {
+        var key = CompactIds.decode(id);
+
+        if (key <= 0) {
+            return null;
+        }
+
+        var stripe = stripe(key);
+        var stamp = stripe.lock.tryOptimisticRead();
+
+        if (stamp != 0) {
+            try {
+                var snapshot = read(stripe, id, key);
+
+                if (stripe.lock.validate(stamp)) {
+                    return snapshot;
+                }
+            } catch (RuntimeException e) {
+                // Table was resized meanwhile, its slots could not be read consistently
+            }
+        }
+
+        stamp = stripe.lock.readLock();
+
+        try {
+            return read(stripe, id, key);
+        } finally {
+            stripe.lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public Account create(long initialBalance) {
+        while (true) {
+            var key = ids.next();
+            var id = CompactIds.encode(key);
+            var stripe = stripe(key);
+            var stamp = stripe.lock.writeLock();
+
+            try {
+                // Only possible for an id restored from a node with a clock ahead of this one
+                if (!stripe.table.insert(key, initialBalance)) {
+                    log.info("Id collision during account creation. Retrying.");
+                    continue;
+                }
+
+                audit.create(id, initialBalance);
+            } finally {
+                stripe.lock.unlockWrite(stamp);
+            }
+
+            return account(id, initialBalance);
+        }
+    }
+
+    @Override
+    public TransferResult transfer(String fromId, String toId, long sum) {
+        var from = CompactIds.decode(fromId);
+
+        if (from <= 0) {
+            throw new AccountNotFoundException(fromId);
+        }
+
+        var to = CompactIds.decode(toId);
+
+        if (to <= 0) {
+            throw new AccountNotFoundException(toId);
+        }
+
+        var fromStripe = stripe(from);
+        var toStripe = stripe(to);
+
+        // Always lock in stripe order so transfers in opposite directions cannot deadlock
+        var first = fromStripe.index <= toStripe.index ? fromStripe : toStripe;
+        var second = first == fromStripe ? toStripe : fromStripe;
+
+        var event = TransferEvent.start();
+        var start = metrics.start();
+
+        var firstStamp = first.lock.writeLock();
+        var secondStamp = second != first ? second.lock.writeLock() : 0;
+
+        var acquired = metrics.lockAcquired(start);
+
+        event.locked();
+
+        TransferResult result;
+
+        try {
+            var fromSlot = fromStripe.table.find(from);
+
+            if (fromSlot == LongBalanceTable.NOT_FOUND) {
+                throw new AccountNotFoundException(fromId);
+            }
+
+            var toSlot = toStripe.table.find(to);
+
+            if (toSlot == LongBalanceTable.NOT_FOUND) {
+                throw new AccountNotFoundException(toId);
+            }
+
+            var fromBalance = fromStripe.table.balance(fromSlot);
+
+            if (fromBalance < sum) {
+                throw new InsufficientResourcesException(fromId);
+            }
+
+            // Computed before any change so an overflow leaves both accounts untouched
+            var toBalance = Balances.add(toId, toStripe.table.balance(toSlot), sum);
+
+            fromStripe.table.balance(fromSlot, fromBalance - sum);
+            toStripe.table.balance(toSlot, toBalance);
+
+            audit.transfer(fromId, toId, sum);
+
+            result = new TransferResult(account(fromId, fromBalance - sum), account(toId, toBalance));
+        } catch (RuntimeException e) {
+            event.failed(fromId, toId, sum, e);
+            throw e;
+        } finally {
+            if (second != first) {
+                second.lock.unlockWrite(secondStamp);
+            }
+
+            first.lock.unlockWrite(firstStamp);
+            metrics.lockReleased(acquired);
+        }
+
+        event.completed(fromId, toId, sum);
+        metrics.transferred(fromId, toId);
+
+        return result;
+    }
+
+    @Override
+    public void delete(String id) {
+        var key = CompactIds.decode(id);
+
+        audit.delete(id);
+
+        if (key <= 0) {
+            return;
+        }
+
+        var stripe = stripe(key);
+        var stamp = stripe.lock.writeLock();
+
+        try {
+            stripe.table.remove(key);
+        } finally {
+            stripe.lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void restore(String id, long balance) {
+        var key = CompactIds.decode(id);
+
+        if (key <= 0) {
+            throw new IllegalArgumentException("Not a compact account id " + id);
+        }
+
+        var stripe = stripe(key);
+        var stamp = stripe.lock.writeLock();
+
+        try {
+            stripe.table.put(key, balance);
+        } finally {
+            stripe.lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public List<String> getOperations() {
+        return audit.getOperations();
+    }
+
+    @Override
+    public AuditPage getOperations(AuditQuery query) {
+        return audit.read(query);
+    }
+
+    public long getAccountCount() {
+        return sum(LongBalanceTable::size);
+    }
+
+    // Memory taken by account tables, off the heap when configured so
+    public long getTableBytes() {
+        return sum(LongBalanceTable::bytes);
+    }
+
+    private long sum(ToLongFunction<LongBalanceTable> measure) {
+        long total = 0;
+
+        for (var stripe : stripes) {
+            var stamp = stripe.lock.readLock();
+
+            try {
+                total += measure.applyAsLong(stripe.table);
+            } finally {
+                stripe.lock.unlockRead(stamp);
+            }
+        }
+
+        return total;
+    }
+
+    // Either under the read lock or validated afterwards, a reader racing a writer may see a torn table
+    private BalanceSnapshot read(Stripe stripe, String id, long key) {
+        var slot = stripe.table.find(key);
+
+        if (slot == LongBalanceTable.NOT_FOUND) {
+            return null;
+        }
+
+        return new BalanceSnapshot(id, stripe.table.balance(slot), stripe.table.version(slot));
+    }
+
+    private Stripe stripe(long key) {
+        // Different mix than the one picking slots, so accounts of one stripe still spread over its table
+        return stripes[(int) ((key * 0xC2B2AE3D27D4EB4FL) >>> 32) & stripeMask];
+    }
+
+    private Account account(String id, long balance) {
+        var result = new Account();
+
+        result.setId(id);
+        result.setBalance(balance);
+
+        return result;
+    }
+
+    @RequiredArgsConstructor
+    private static final class Stripe {
+
+        private final int index;
+        // Not reentrant, no path takes the lock of a stripe twice
+        private final StampedLock lock = new StampedLock();
+        private final LongBalanceTable table;
+    }
+}
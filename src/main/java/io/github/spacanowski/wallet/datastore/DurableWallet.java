@@ -0,0 +1,416 @@
+package io.github.spacanowski.wallet.datastore;
+
+import io.dropwizard.lifecycle.Managed;
+import io.github.spacanowski.wallet.exception.WalletUnavailableException;
+import io.github.spacanowski.wallet.model.data.Account;
+import io.github.spacanowski.wallet.model.data.AuditPage;
+import io.github.spacanowski.wallet.model.data.AuditQuery;
+import io.github.spacanowski.wallet.model.data.BalanceSnapshot;
+import io.github.spacanowski.wallet.model.data.Hold;
+import io.github.spacanowski.wallet.model.data.TransferOrder;
+import io.github.spacanowski.wallet.model.data.TransferOutcome;
+import io.github.spacanowski.wallet.model.data.TransferResult;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+import lombok.extern.slf4j.Slf4j;
+
+// Journals every successful change of the wrapped wallet in a write-ahead log before acknowledging it.
+// Logged operations already passed their checks, so replay only needs to apply balance changes to
+// accounts that exist at that point of the log. That holds only if a change never precedes in the log
+// one it depends on, so the accounts of a change stay locked here until it is applied and appended.
+// Any later change of those accounts gets a higher LSN, and a log cut short by a crash never holds
+// a debit without the credit it spent. Readers may see a change before it is appended, as they may
+// before it is durable.
+//
+// Snapshots are taken in the background by merging closed log segments into the previous snapshot,
+// recovery then loads the latest snapshot and replays only the log written after it.
+//
+// A failed write to the log stops the wallet taking changes, every change is rejected before it touches
+// memory until a restart recovers from what reached the log.
+//
+// Holds are rejected, they are not journaled and a reservation gone after a restart reserves nothing.
+@Slf4j
+public class DurableWallet implements Wallet, Managed {
+
+    private static final String HOLDS_NOT_DURABLE = "Holds are not supported with persistence enabled";
+
+    // Account locks, a change takes those of its accounts in stripe order
+    private static final int LOCK_STRIPES = 1024;
+
+    // Orders of a batch applied and appended under one set of locks
+    private static final int BATCH_CHUNK_SIZE = 256;
+
+    private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+
+    private final Wallet wallet;
+    private final WriteAheadLog journal;
+    private final Path directory;
+    private final long snapshotIntervalNanos;
+
+    private ScheduledExecutorService snapshots;
+    private long snapshotLsn;
+
+    private DurableWallet(Wallet wallet,
+                          WriteAheadLog journal,
+                          Path directory,
+                          long snapshotLsn,
+                          long snapshotIntervalNanos) {
+        this.wallet = wallet;
+        this.journal = journal;
+        this.directory = directory;
+        this.snapshotLsn = snapshotLsn;
+        this.snapshotIntervalNanos = snapshotIntervalNanos;
+
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    // Restores the wallet from the snapshot and log in the directory and journals its further changes
+    // there. Snapshots are taken every snapshot interval once started, a non positive one disables them.
+    public static DurableWallet recover(Wallet wallet,
+                                        Path directory,
+                                        WriteAheadLog.SyncPolicy syncPolicy,
+                                        long syncInterval,
+                                        long segmentSize,
+                                        long snapshotInterval,
+                                        TimeUnit unit) throws IOException {
+        var snapshotLsn = Snapshot.latest(directory);
+        var changes = new Snapshot.Changes();
+
+        var journal = WriteAheadLog.open(directory,
+                                         snapshotLsn,
+                                         segmentSize,
+                                         syncPolicy,
+                                         syncInterval,
+                                         unit,
+                                         changes::apply);
+
+        try {
+            var count = new long[1];
+
+            Snapshot.read(directory, snapshotLsn, changes, (id, balance) -> {
+                wallet.restore(id, balance);
+                count[0]++;
+            });
+
+            log.info("Recovered {} accounts from snapshot at LSN {} and {} changed accounts in write-ahead log",
+                     count[0], snapshotLsn, changes.size());
+        } catch (IOException | RuntimeException e) {
+            journal.close();
+            throw e;
+        }
+
+        return new DurableWallet(wallet, journal, directory, snapshotLsn, unit.toNanos(snapshotInterval));
+    }
+
+    // Writes a snapshot covering the log up to now and drops log segments it makes redundant
+    public synchronized void snapshot() throws IOException {
+        var lsn = journal.rotate();
+
+        if (lsn <= snapshotLsn) {
+            return;
+        }
+
+        var changes = new Snapshot.Changes();
+
+        WriteAheadLog.replay(directory, snapshotLsn, lsn, changes::apply);
+        Snapshot.write(directory, snapshotLsn, lsn, changes);
+
+        // Older files are only dropped once the new snapshot is in place
+        Snapshot.deleteBefore(directory, lsn);
+        journal.deleteSegmentsUpTo(lsn);
+
+        snapshotLsn = lsn;
+    }
+
+    // Failure that stopped the wallet taking changes, null while the log works
+    public IOException getFailure() {
+        return journal.getFailure();
+    }
+
+    @Override
+    public int getScale() {
+        return wallet.getScale();
+    }
+
+    @Override
+    public Account get(String id) {
+        return wallet.get(id);
+    }
+
+    @Override
+    public BalanceSnapshot balance(String id) {
+        return wallet.balance(id);
+    }
+
+    @Override
+    public Account create(long initialBalance) {
+        checkAvailable();
+
+        var result = wallet.create(initialBalance);
+        var stripes = stripes(result.getId());
+        long lsn;
+
+        // The id is handed out only once this returns, after its record, so no change of the account
+        // can be logged before it. Its lock still orders the record before changes of a guessed id.
+        lock(stripes);
+
+        try {
+            lsn = journal.create(result.getId(), initialBalance);
+        } finally {
+            unlock(stripes);
+        }
+
+        journal.sync(lsn);
+
+        return result;
+    }
+
+    @Override
+    public TransferResult transfer(String fromId, String toId, long sum) {
+        checkAvailable();
+
+        var stripes = stripes(fromId, toId);
+        TransferResult result;
+        long lsn;
+
+        lock(stripes);
+
+        try {
+            result = wallet.transfer(fromId, toId, sum);
+            lsn = journal.transfer(fromId, toId, sum);
+        } finally {
+            unlock(stripes);
+        }
+
+        journal.sync(lsn);
+
+        return result;
+    }
+
+    @Override
+    public List<TransferOutcome> transfer(List<TransferOrder> orders) {
+        checkAvailable();
+
+        var outcomes = new ArrayList<TransferOutcome>(orders.size());
+        var lsn = 0L;
+
+        for (int start = 0; start < orders.size(); start += BATCH_CHUNK_SIZE) {
+            var chunk = orders.subList(start, Math.min(start + BATCH_CHUNK_SIZE, orders.size()));
+            var stripes = stripes(chunk);
+
+            lock(stripes);
+
+            try {
+                var applied = wallet.transfer(chunk);
+
+                for (int i = 0; i < chunk.size(); i++) {
+                    if (applied.get(i).getStatus() == TransferOutcome.Status.COMPLETED) {
+                        var order = chunk.get(i);
+
+                        lsn = journal.transfer(order.getFrom(), order.getTo(), order.getSum());
+                    }
+                }
+
+                outcomes.addAll(applied);
+            } finally {
+                unlock(stripes);
+            }
+        }
+
+        journal.sync(lsn);
+
+        return outcomes;
+    }
+
+    @Override
+    public List<Account> transact(List<TransferOrder> legs) {
+        checkAvailable();
+
+        var stripes = stripes(legs);
+        List<Account> result;
+        long lsn;
+
+        lock(stripes);
+
+        try {
+            result = wallet.transact(legs);
+
+            // Recovery replays the legs in order, or none of them if the log ends inside the transaction
+            lsn = journal.transaction(legs);
+        } finally {
+            unlock(stripes);
+        }
+
+        journal.sync(lsn);
+
+        return result;
+    }
+
+    @Override
+    public Hold hold(String fromId, String toId, long sum, long expiresAt) {
+        throw new IllegalArgumentException(HOLDS_NOT_DURABLE);
+    }
+
+    @Override
+    public TransferResult capture(String holdId, long sum) {
+        throw new IllegalArgumentException(HOLDS_NOT_DURABLE);
+    }
+
+    @Override
+    public Account release(String holdId) {
+        throw new IllegalArgumentException(HOLDS_NOT_DURABLE);
+    }
+
+    @Override
+    public void delete(String id) {
+        checkAvailable();
+
+        var stripes = stripes(id);
+        long lsn;
+
+        lock(stripes);
+
+        try {
+            wallet.delete(id);
+            lsn = journal.delete(id);
+        } finally {
+            unlock(stripes);
+        }
+
+        journal.sync(lsn);
+    }
+
+    // Striping changes no balance, it is not journaled and has to be repeated after a restart
+    @Override
+    public boolean stripe(String id) {
+        checkAvailable();
+
+        return wallet.stripe(id);
+    }
+
+    @Override
+    public void restore(String id, long balance) {
+        checkAvailable();
+
+        var stripes = stripes(id);
+        long lsn;
+
+        lock(stripes);
+
+        try {
+            wallet.restore(id, balance);
+            lsn = journal.create(id, balance);
+        } finally {
+            unlock(stripes);
+        }
+
+        journal.sync(lsn);
+    }
+
+    @Override
+    public List<String> getOperations() {
+        return wallet.getOperations();
+    }
+
+    @Override
+    public AuditPage getOperations(AuditQuery query) {
+        return wallet.getOperations(query);
+    }
+
+    @Override
+    public void start() throws Exception {
+        if (wallet instanceof Managed) {
+            ((Managed) wallet).start();
+        }
+
+        if (snapshotIntervalNanos > 0) {
+            snapshots = Executors.newSingleThreadScheduledExecutor(task -> {
+                var thread = new Thread(task, "wallet-snapshot");
+                thread.setDaemon(true);
+                return thread;
+            });
+            snapshots.scheduleWithFixedDelay(this::snapshotSafely,
+                                             snapshotIntervalNanos,
+                                             snapshotIntervalNanos,
+                                             TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public void stop() throws Exception {
+        if (snapshots != null) {
+            // A running snapshot is not interrupted, that would close the log channel under it
+            snapshots.shutdown();
+            snapshots.awaitTermination(1, TimeUnit.MINUTES);
+        }
+
+        journal.close();
+
+        if (wallet instanceof Managed) {
+            ((Managed) wallet).stop();
+        }
+    }
+
+    private void checkAvailable() {
+        var failure = journal.getFailure();
+
+        if (failure != null) {
+            throw new WalletUnavailableException(false, failure);
+        }
+    }
+
+    // Distinct stripes of the accounts in ascending order, the order they are locked in
+    private static int[] stripes(String... ids) {
+        return Arrays.stream(ids)
+                     .mapToInt(DurableWallet::lockStripe)
+                     .sorted()
+                     .distinct()
+                     .toArray();
+    }
+
+    private static int[] stripes(List<TransferOrder> orders) {
+        return orders.stream()
+                     .flatMap(order -> Stream.of(order.getFrom(), order.getTo()))
+                     .mapToInt(DurableWallet::lockStripe)
+                     .sorted()
+                     .distinct()
+                     .toArray();
+    }
+
+    private static int lockStripe(String id) {
+        return Math.floorMod(id.hashCode(), LOCK_STRIPES);
+    }
+
+    private void lock(int[] stripes) {
+        for (var stripe : stripes) {
+            locks[stripe].lock();
+        }
+    }
+
+    private void unlock(int[] stripes) {
+        for (int i = stripes.length - 1; i >= 0; i--) {
+            locks[stripes[i]].unlock();
+        }
+    }
+
+    private void snapshotSafely() {
+        try {
+            snapshot();
+        } catch (IOException | RuntimeException e) {
+            // The log still holds everything, the next attempt starts from the same snapshot
+            log.error("Failed to write wallet snapshot", e);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package io.github.spacanowski.wallet.datastore;
+
+import io.github.spacanowski.wallet.exception.InsufficientResourcesException;
+import io.github.spacanowski.wallet.model.data.Account;
+
+import java.util.ArrayList;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+// Flat combining over the write lock of one account. Writers publish their change and whichever of them
+// gets the lock applies every published change in one lock hold, the others wait for their result instead
+// of handing the lock over one by one. A hot account then pays for one lock transfer per batch.
+class FlatCombiner {
+
+    // Bounds the time a single thread spends combining for others before it hands combining over
+    private static final int MAX_COMBINED = 1024;
+
+    // Waiters also retry on their own, a lock released by a reader or a batch does not wake them
+    private static final long RETRY_NANOS = 50_000;
+
+    private final Account account;
+    private final Consumer<Account> changed;
+    private final WalletMetrics metrics;
+    private final Queue<Request> requests = new ConcurrentLinkedQueue<>();
+
+    FlatCombiner(Account account, Consumer<Account> changed, WalletMetrics metrics) {
+        this.account = account;
+        this.changed = changed;
+        this.metrics = metrics;
+    }
+
+    Account getAccount() {
+        return account;
+    }
+
+    // Returns the balance after the debit
+    long debit(long sum) {
+        return apply(new Request(-sum));
+    }
+
+    // Returns the balance after the credit
+    long credit(long sum) {
+        return apply(new Request(sum));
+    }
+
+    private long apply(Request request) {
+        var lock = account.writeLock();
+        var start = metrics.start();
+
+        requests.add(request);
+
+        while (!request.done) {
+            if (lock.tryLock()) {
+                var acquired = metrics.lockAcquired(start);
+
+                try {
+                    combine();
+                } finally {
+                    lock.unlock();
+                    metrics.lockReleased(acquired);
+                }
+
+                // Changes published while this thread held the lock are applied by one of their own threads
+                var next = requests.peek();
+
+                if (next != null && next.waiter != Thread.currentThread()) {
+                    LockSupport.unpark(next.waiter);
+                }
+            } else {
+                LockSupport.parkNanos(this, RETRY_NANOS);
+            }
+        }
+
+        if (request.error != null) {
+            throw request.error;
+        }
+
+        return request.balance;
+    }
+
+    private void combine() {
+        var combined = new ArrayList<Request>();
+
+        if (Balances.fold(account)) {
+            changed.accept(account);
+        }
+
+        var balance = account.getBalance();
+
+        for (int i = 0; i < MAX_COMBINED; i++) {
+            var request = requests.poll();
+
+            if (request == null) {
+                break;
+            }
+
+            try {
+                balance = change(balance, request.sum);
+                request.balance = balance;
+            } catch (RuntimeException e) {
+                request.error = e;
+            }
+
+            combined.add(request);
+        }
+
+        if (balance != account.getBalance()) {
+            account.setBalance(balance);
+            changed.accept(account);
+        }
+
+        // Completed only once the account shows every change, so a waiter reads its own write
+        for (var request : combined) {
+            request.done = true;
+
+            if (request.waiter != Thread.currentThread()) {
+                LockSupport.unpark(request.waiter);
+            }
+        }
+    }
+
+    private long change(long balance, long sum) {
+        if (sum >= 0) {
+            return Balances.add(account.getId(), balance, sum);
+        }
+
+        // Held part of the balance does not change while the lock is held
+        if (balance - account.getHeld() < -sum) {
+            throw new InsufficientResourcesException(account.getId());
+        }
+
+        return balance + sum;
+    }
+
+    private static final class Request {
+
+        private final long sum;
+        private final Thread waiter = Thread.currentThread();
+
+        // Written by the combiner before done, read by the waiter after it
+        private long balance;
+        private RuntimeException error;
+        private volatile boolean done;
+
+        private Request(long sum) {
+            this.sum = sum;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package io.github.spacanowski.wallet.datastore;
+
+// Slots interleaved in a single long array, so a lookup touches one cache line
+class HeapAccountSlots implements AccountSlots {
+
+    private static final int STRIDE = 3;
+
+    private final long[] slots;
+
+    HeapAccountSlots(int capacity) {
+        this.slots = new long[capacity * STRIDE];
+    }
+
+    @Override
+    public int capacity() {
+        return slots.length / STRIDE;
+    }
+
+    @Override
+    public long id(int slot) {
+        return slots[slot * STRIDE];
+    }
+
+    @Override
+    public long balance(int slot) {
+        return slots[slot * STRIDE + 1];
+    }
+
+    @Override
+    public long version(int slot) {
+        return slots[slot * STRIDE + 2];
+    }
+
+    @Override
+    public void set(int slot, long id, long balance, long version) {
+        var offset = slot * STRIDE;
+
+        slots[offset] = id;
+        slots[offset + 1] = balance;
+        slots[offset + 2] = version;
+    }
+
+    @Override
+    public void update(int slot, long balance, long version) {
+        var offset = slot * STRIDE;
+
+        slots[offset + 1] = balance;
+        slots[offset + 2] = version;
+    }
+
+    @Override
+    public long bytes() {
+        return (long) slots.length * Long.BYTES;
+    }
+}
@@ -0,0 +1,160 @@
+package io.github.spacanowski.wallet.datastore;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+// Space-Saving sketch of the most often touched accounts in a fixed number of counters. An account
+// seen for the first time takes over the smallest counter, whose count becomes its possible error.
+// Offers are spread over sketches striped by thread, so transfers on different threads do not share
+// a monitor, and the sketches are merged when read.
+public class HotAccounts {
+
+    private final int capacity;
+    private final Sketch[] sketches;
+
+    public HotAccounts(int capacity) {
+        this(capacity, Runtime.getRuntime().availableProcessors());
+    }
+
+    public HotAccounts(int capacity, int stripes) {
+        this.capacity = capacity;
+        this.sketches = new Sketch[stripes];
+
+        for (int i = 0; i < stripes; i++) {
+            sketches[i] = new Sketch(capacity);
+        }
+    }
+
+    public void offer(String id, long weight) {
+        sketches[Math.floorMod(Thread.currentThread().getId(), sketches.length)].offer(id, weight);
+    }
+
+    // Heaviest first, every account touched more often than the smallest count is in the list
+    public List<HotAccount> top() {
+        var snapshots = new ArrayList<Map<String, HotAccount>>(sketches.length);
+        var floors = new long[sketches.length];
+
+        for (int i = 0; i < sketches.length; i++) {
+            synchronized (sketches[i]) {
+                snapshots.add(sketches[i].snapshot());
+                floors[i] = sketches[i].floor();
+            }
+        }
+
+        var merged = new HashMap<String, HotAccount>();
+
+        for (var snapshot : snapshots) {
+            for (var id : snapshot.keySet()) {
+                merged.computeIfAbsent(id, key -> merge(key, snapshots, floors));
+            }
+        }
+
+        var result = new ArrayList<HotAccount>(merged.values());
+
+        result.sort(Comparator.comparingLong(HotAccount::getCount).reversed());
+
+        return result.size() > capacity ? new ArrayList<>(result.subList(0, capacity)) : result;
+    }
+
+    // An account missing from a full sketch may have been evicted from it with at most its smallest
+    // count, adding that keeps the merged count an upper bound of the real one
+    private static HotAccount merge(String id, List<Map<String, HotAccount>> snapshots, long[] floors) {
+        long count = 0;
+        long error = 0;
+
+        for (int i = 0; i < floors.length; i++) {
+            var account = snapshots.get(i).get(id);
+
+            if (account == null) {
+                count += floors[i];
+                error += floors[i];
+            } else {
+                count += account.count;
+                error += account.error;
+            }
+        }
+
+        return new HotAccount(id, count, error);
+    }
+
+    @RequiredArgsConstructor
+    @Getter
+    public static class HotAccount {
+
+        private final String id;
+
+        // Estimated number of touches, never lower than the real one and at most error higher
+        private final long count;
+        private final long error;
+    }
+
+    private static class Sketch {
+
+        private final int capacity;
+        private final Map<String, Counter> counters;
+
+        Sketch(int capacity) {
+            this.capacity = capacity;
+            this.counters = new HashMap<>(capacity * 2);
+        }
+
+        synchronized void offer(String id, long weight) {
+            var counter = counters.get(id);
+
+            if (counter != null) {
+                counter.count += weight;
+                return;
+            }
+
+            if (counters.size() < capacity) {
+                counters.put(id, new Counter(weight, 0));
+                return;
+            }
+
+            var smallest = smallest();
+
+            counters.remove(smallest.getKey());
+
+            var evicted = smallest.getValue();
+
+            counters.put(id, new Counter(evicted.count + weight, evicted.count));
+        }
+
+        Map<String, HotAccount> snapshot() {
+            var result = new HashMap<String, HotAccount>(counters.size() * 2);
+
+            counters.forEach((id, counter) -> result.put(id, new HotAccount(id, counter.count, counter.error)));
+
+            return result;
+        }
+
+        // Smallest count an account could have had when evicted, nothing is evicted before the sketch is full
+        long floor() {
+            return counters.size() < capacity ? 0 : smallest().getValue().count;
+        }
+
+        private Map.Entry<String, Counter> smallest() {
+            return counters.entrySet()
+                           .stream()
+                           .min(Comparator.comparingLong(entry -> entry.getValue().count))
+                           .get();
+        }
+    }
+
+    private static class Counter {
+
+        private long count;
+        private final long error;
+
+        Counter(long count, long error) {
+            this.count = count;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,853 @@
+package io.github.spacanowski.wallet.datastore;
+
+import io.github.spacanowski.wallet.exception.AccountNotFoundException;
+import io.github.spacanowski.wallet.exception.BalanceOverflowException;
+import io.github.spacanowski.wallet.exception.HoldNotFoundException;
+import io.github.spacanowski.wallet.exception.InsufficientResourcesException;
+import io.github.spacanowski.wallet.exception.TransactionConflictException;
+import io.github.spacanowski.wallet.model.data.Account;
+import io.github.spacanowski.wallet.model.data.AuditPage;
+import io.github.spacanowski.wallet.model.data.AuditQuery;
+import io.github.spacanowski.wallet.model.data.BalanceSnapshot;
+import io.github.spacanowski.wallet.model.data.Hold;
+import io.github.spacanowski.wallet.model.data.TransferOrder;
+import io.github.spacanowski.wallet.model.data.TransferOutcome;
+import io.github.spacanowski.wallet.model.data.TransferResult;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+// Per account read/write locks. In combining mode transfers are a debit followed by a credit (and a refund
+// of the debit if the credit fails), each applied through the flat combiner of its account. Unlike a
+// transfer under both locks, a read between the two may see the sum in neither account.
+// Striped accounts take credits without their lock, a debit or a read folds them into the balance.
+// Holds reserve part of a balance, they expire through one timing wheel rather than a timer task each.
+@Slf4j
+public class LockingWallet implements Wallet {
+
+    // Attempts of a transaction before it gives up on accounts that keep changing
+    public static final int MAX_TRANSACTION_ATTEMPTS = 16;
+
+    // Holds expire at most one tick late
+    public static final long HOLD_TICK_MILLIS = 10;
+
+    // Orders of a batch applied under one set of locks, bounds how long a batch holds up other transfers
+    public static final int BATCH_CHUNK_SIZE = 256;
+
+    // Number of decimal places represented by balances held in minor units
+    @Getter
+    private final int scale;
+
+    private ConcurrentHashMap<String, Account> accounts = new ConcurrentHashMap<>();
+    // Only filled in combining mode
+    private final ConcurrentHashMap<String, FlatCombiner> combiners = new ConcurrentHashMap<>();
+    // Outstanding holds, whoever removes a hold from here captures, releases or expires it
+    private final ConcurrentHashMap<String, TimingWheel.Timeout<Hold>> holds = new ConcurrentHashMap<>();
+    private final TimingWheel<Hold> expiries = new TimingWheel<>(HOLD_TICK_MILLIS, System.currentTimeMillis());
+    private final AuditLog audit;
+    private final WalletMetrics metrics;
+    private final boolean combining;
+
+    public LockingWallet() {
+        this(DEFAULT_SCALE, new AuditLog(DEFAULT_SCALE));
+    }
+
+    public LockingWallet(int scale, AuditLog audit) {
+        this(scale, audit, WalletMetrics.disabled());
+    }
+
+    public LockingWallet(int scale, AuditLog audit, WalletMetrics metrics) {
+        this(scale, audit, metrics, false);
+    }
+
+    public LockingWallet(int scale, AuditLog audit, WalletMetrics metrics, boolean combining) {
+        this.scale = scale;
+        this.audit = audit;
+        this.metrics = metrics;
+        this.combining = combining;
+    }
+
+    @Override
+    public Account get(String id) {
+        var account = accounts.get(id);
+
+        if (account == null) {
+            return null;
+        }
+
+        var readLock = account.readLock();
+        readLock.lock();
+
+        try {
+            return copy(account);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public BalanceSnapshot balance(String id) {
+        var account = accounts.get(id);
+
+        if (account == null) {
+            return null;
+        }
+
+        // Credits of a striped account are not published, they are summed under the read lock instead
+        if (account.getCredits() == null) {
+            return account.getSnapshot();
+        }
+
+        var readLock = account.readLock();
+        readLock.lock();
+
+        try {
+            var snapshot = account.getSnapshot();
+
+            return new BalanceSnapshot(id, Balances.total(account), snapshot.getVersion(), snapshot.getHeld());
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public Account create(long initianlBalance) {
+        var id = UUID.randomUUID().toString();
+        var account = new Account();
+
+        account.setId(id);
+        account.setBalance(initianlBalance);
+        account.setSnapshot(new BalanceSnapshot(id, initianlBalance, 0));
+
+        var old = accounts.putIfAbsent(id, account);
+
+        if (old != null) {
+            log.info("Id collision during account creation. Retrying.");
+            account = create(initianlBalance);
+        } else if (combining) {
+            combiners.put(id, combiner(account));
+        }
+
+        audit.create(id, initianlBalance);
+
+        var resault = new Account();
+
+        resault.setId(account.getId());
+        resault.setBalance(account.getBalance());
+
+        return resault;
+    }
+
+    @Override
+    public TransferResult transfer(String fromId, String toId, long sum) {
+        if (combining) {
+            return combineTransfer(fromId, toId, sum);
+        }
+
+        var from = accounts.get(fromId);
+
+        if (from == null) {
+            throw new AccountNotFoundException(fromId);
+        }
+
+        var to = accounts.get(toId);
+
+        if (to == null) {
+            throw new AccountNotFoundException(toId);
+        }
+
+        var result = executeWithLocks(from, to, sum, 0);
+
+        metrics.transferred(fromId, toId);
+
+        return result;
+    }
+
+    @Override
+    public List<TransferOutcome> transfer(List<TransferOrder> orders) {
+        if (combining) {
+            return Wallet.super.transfer(orders);
+        }
+
+        var outcomes = new ArrayList<TransferOutcome>(orders.size());
+
+        // Locks are released between chunks, so a single transfer touching an account of a large batch
+        // waits for one chunk rather than the whole batch
+        for (int start = 0; start < orders.size(); start += BATCH_CHUNK_SIZE) {
+            transferChunk(orders.subList(start, Math.min(start + BATCH_CHUNK_SIZE, orders.size())), outcomes);
+        }
+
+        for (int i = 0; i < orders.size(); i++) {
+            if (outcomes.get(i).getStatus() == TransferOutcome.Status.COMPLETED) {
+                metrics.transferred(orders.get(i).getFrom(), orders.get(i).getTo());
+            }
+        }
+
+        return outcomes;
+    }
+
+    // Every account touched by the chunk is locked once, in id order, and written once at the end
+    private void transferChunk(List<TransferOrder> orders, List<TransferOutcome> outcomes) {
+        var involved = new TreeMap<String, Account>();
+
+        for (var order : orders) {
+            addIfExists(involved, order.getFrom());
+            addIfExists(involved, order.getTo());
+        }
+
+        var batch = new ArrayList<>(involved.values());
+        var positions = new HashMap<String, Integer>(batch.size() * 2);
+
+        for (int i = 0; i < batch.size(); i++) {
+            positions.put(batch.get(i).getId(), i);
+        }
+
+        log.debug("Locking {} accounts for chunk of {} transfers", batch.size(), orders.size());
+
+        var start = metrics.start();
+
+        batch.forEach(account -> account.writeLock().lock());
+
+        var acquired = metrics.lockAcquired(start);
+
+        try {
+            var balances = new long[batch.size()];
+            var held = new long[batch.size()];
+
+            for (int i = 0; i < balances.length; i++) {
+                if (Balances.fold(batch.get(i))) {
+                    publish(batch.get(i));
+                }
+
+                balances[i] = batch.get(i).getBalance();
+                held[i] = batch.get(i).getHeld();
+            }
+
+            for (var order : orders) {
+                outcomes.add(executeTransfer(order, positions, balances, held));
+            }
+
+            for (int i = 0; i < balances.length; i++) {
+                var account = batch.get(i);
+
+                if (account.getBalance() != balances[i]) {
+                    account.setBalance(balances[i]);
+                    publish(account);
+                }
+            }
+        } finally {
+            batch.forEach(account -> account.writeLock().unlock());
+            metrics.lockReleased(acquired);
+
+            log.debug("Unlocked {} accounts after chunk of batch transfer", batch.size());
+        }
+    }
+
+    // Optimistic: balances are planned from published snapshots without locks, the write locks are only
+    // tried, never waited for, while versions are validated and the plan is installed. Any lock taken or
+    // version changed meanwhile starts a new attempt, so transactions never hold up plain transfers.
+    @Override
+    public List<Account> transact(List<TransferOrder> legs) {
+        var involved = new LinkedHashMap<String, Account>();
+
+        for (var leg : legs) {
+            involved.put(leg.getFrom(), existing(leg.getFrom()));
+            involved.put(leg.getTo(), existing(leg.getTo()));
+        }
+
+        // Id order, like every other path taking several account locks
+        var batch = new ArrayList<>(new TreeMap<>(involved).values());
+        var positions = new HashMap<String, Integer>(batch.size() * 2);
+
+        for (int i = 0; i < batch.size(); i++) {
+            positions.put(batch.get(i).getId(), i);
+        }
+
+        for (int attempt = 0; attempt < MAX_TRANSACTION_ATTEMPTS; attempt++) {
+            var snapshots = new BalanceSnapshot[batch.size()];
+            var balances = new long[batch.size()];
+            var held = new long[batch.size()];
+
+            for (int i = 0; i < balances.length; i++) {
+                var account = batch.get(i);
+                var credits = account.getCredits();
+
+                snapshots[i] = account.getSnapshot();
+                balances[i] = snapshots[i].getBalance() + (credits == null ? 0 : credits.sum());
+                held[i] = snapshots[i].getHeld();
+            }
+
+            var deltas = balances.clone();
+
+            try {
+                for (var leg : legs) {
+                    plan(leg, positions, balances, held);
+                }
+            } catch (InsufficientResourcesException | BalanceOverflowException e) {
+                // Planned from a consistent view only if no account changed since
+                if (unchanged(batch, snapshots)) {
+                    metrics.retried(attempt);
+                    throw e;
+                }
+
+                continue;
+            }
+
+            for (int i = 0; i < deltas.length; i++) {
+                deltas[i] = balances[i] - deltas[i];
+            }
+
+            var committed = commit(batch, snapshots, deltas, legs);
+
+            if (committed != null) {
+                metrics.retried(attempt);
+
+                for (var leg : legs) {
+                    metrics.transferred(leg.getFrom(), leg.getTo());
+                }
+
+                return involved.keySet()
+                               .stream()
+                               .map(id -> committed[positions.get(id)])
+                               .collect(Collectors.toList());
+            }
+
+            Thread.onSpinWait();
+        }
+
+        metrics.retried(MAX_TRANSACTION_ATTEMPTS);
+
+        throw new TransactionConflictException(MAX_TRANSACTION_ATTEMPTS);
+    }
+
+    // Consistent view of several accounts, taken with all of their read locks held
+    public List<Account> get(List<String> ids) {
+        var locked = ids.stream()
+                        .distinct()
+                        .sorted()
+                        .map(accounts::get)
+                        .filter(Objects::nonNull)
+                        .collect(Collectors.toList());
+
+        locked.forEach(account -> account.readLock().lock());
+
+        try {
+            return locked.stream()
+                         .map(this::copy)
+                         .collect(Collectors.toList());
+        } finally {
+            locked.forEach(account -> account.readLock().unlock());
+        }
+    }
+
+    @Override
+    public void delete(String id) {
+        audit.delete(id);
+
+        accounts.remove(id);
+        combiners.remove(id);
+    }
+
+    @Override
+    public boolean stripe(String id) {
+        var account = accounts.get(id);
+
+        if (account == null) {
+            return false;
+        }
+
+        var writeLock = account.writeLock();
+        writeLock.lock();
+
+        try {
+            if (account.getCredits() == null) {
+                account.setCredits(new LongAdder());
+            }
+        } finally {
+            writeLock.unlock();
+        }
+
+        return true;
+    }
+
+    @Override
+    public Hold hold(String fromId, String toId, long sum, long expiresAt) {
+        var from = existing(fromId);
+
+        existing(toId);
+
+        var hold = new Hold(UUID.randomUUID().toString(), fromId, toId, sum, expiresAt);
+        var writeLock = from.writeLock();
+        writeLock.lock();
+
+        try {
+            if (Balances.fold(from)) {
+                publish(from);
+            }
+
+            if (Balances.available(from) < sum) {
+                throw new InsufficientResourcesException(fromId);
+            }
+
+            from.setHeld(from.getHeld() + sum);
+            publish(from);
+
+            register(hold);
+        } finally {
+            writeLock.unlock();
+        }
+
+        return hold;
+    }
+
+    @Override
+    public TransferResult capture(String holdId, long sum) {
+        var timeout = holds.get(holdId);
+
+        if (timeout == null) {
+            throw new HoldNotFoundException(holdId);
+        }
+
+        var hold = timeout.getValue();
+
+        if (sum > hold.getSum()) {
+            throw new IllegalArgumentException("Cannot capture more than the held sum");
+        }
+
+        // Lost to a concurrent capture, release or expiry
+        if (!holds.remove(holdId, timeout)) {
+            throw new HoldNotFoundException(holdId);
+        }
+
+        expiries.cancel(timeout);
+
+        var from = accounts.get(hold.getFrom());
+
+        if (from == null) {
+            throw new AccountNotFoundException(hold.getFrom());
+        }
+
+        var to = accounts.get(hold.getTo());
+
+        if (to == null) {
+            unhold(from, hold.getSum());
+            throw new AccountNotFoundException(hold.getTo());
+        }
+
+        TransferResult result;
+
+        try {
+            result = executeWithLocks(from, to, sum, hold.getSum());
+        } catch (BalanceOverflowException e) {
+            // Nothing was transferred, the hold stays in place until it expires
+            register(hold);
+            throw e;
+        }
+
+        metrics.transferred(hold.getFrom(), hold.getTo());
+
+        return result;
+    }
+
+    @Override
+    public Account release(String holdId) {
+        var timeout = holds.remove(holdId);
+
+        if (timeout == null) {
+            throw new HoldNotFoundException(holdId);
+        }
+
+        expiries.cancel(timeout);
+
+        var hold = timeout.getValue();
+
+        return unhold(existing(hold.getFrom()), hold.getSum());
+    }
+
+    @Override
+    public int expireHolds(long now) {
+        var expired = 0;
+
+        for (var hold : expiries.advance(now)) {
+            // Captured or released since it was taken off the wheel
+            if (holds.remove(hold.getId()) == null) {
+                continue;
+            }
+
+            var from = accounts.get(hold.getFrom());
+
+            if (from != null) {
+                unhold(from, hold.getSum());
+            }
+
+            expired++;
+        }
+
+        return expired;
+    }
+
+    @Override
+    public void restore(String id, long balance) {
+        var account = new Account();
+
+        account.setId(id);
+        account.setBalance(balance);
+        account.setSnapshot(new BalanceSnapshot(id, balance, 0));
+
+        accounts.put(id, account);
+
+        if (combining) {
+            combiners.put(id, combiner(account));
+        }
+    }
+
+    @Override
+    public List<String> getOperations() {
+        return audit.getOperations();
+    }
+
+    @Override
+    public AuditPage getOperations(AuditQuery query) {
+        return audit.read(query);
+    }
+
+    private Account copy(Account account) {
+        var resault = new Account();
+
+        resault.setId(account.getId());
+        resault.setBalance(Balances.total(account));
+        resault.setHeld(account.getHeld());
+
+        return resault;
+    }
+
+    private FlatCombiner combiner(Account account) {
+        return new FlatCombiner(account, this::publish, metrics);
+    }
+
+    private TransferResult combineTransfer(String fromId, String toId, long sum) {
+        var from = combiners.get(fromId);
+
+        if (from == null) {
+            throw new AccountNotFoundException(fromId);
+        }
+
+        var to = combiners.get(toId);
+
+        if (to == null) {
+            throw new AccountNotFoundException(toId);
+        }
+
+        var fromBalance = from.debit(sum);
+        long toBalance;
+
+        try {
+            toBalance = to.getAccount().getCredits() != null ? creditStriped(to.getAccount(), sum) : to.credit(sum);
+        } catch (BalanceOverflowException e) {
+            refund(from, toId, sum, e);
+            throw e;
+        }
+
+        audit.transfer(fromId, toId, sum);
+        metrics.transferred(fromId, toId);
+
+        // Each balance is the one left by this transfer, other transfers may have changed them since
+        return new TransferResult(account(fromId, fromBalance), account(toId, toBalance));
+    }
+
+    // Rollback debit of resources. The sender may have been credited meanwhile, a refund overflowing it
+    // leaves the sum debited and credited nowhere, it is counted as lost and reported with the failure.
+    private void refund(FlatCombiner from, String toId, long sum, RuntimeException failure) {
+        try {
+            from.credit(sum);
+        } catch (RuntimeException e) {
+            metrics.lost(sum);
+            failure.addSuppressed(e);
+            log.error("Lost {} debited from account {} for account {}, refund failed",
+                      sum, from.getAccount().getId(), toId, e);
+        }
+    }
+
+    // Credit that takes no lock of the receiver. The overflow check races with other credits and the
+    // balance returned may miss credits being folded by a debit at the same time.
+    private long creditStriped(Account to, long sum) {
+        Balances.add(to.getId(), Balances.total(to), sum);
+
+        to.getCredits().add(sum);
+
+        return Balances.total(to);
+    }
+
+    private Account account(String id, long balance) {
+        var result = new Account();
+
+        result.setId(id);
+        result.setBalance(balance);
+
+        return result;
+    }
+
+    // Called with the write lock held, after the balance or the held part of it changed
+    private void publish(Account account) {
+        account.setSnapshot(account.getSnapshot().next(account.getBalance(), account.getHeld()));
+    }
+
+    // Under the monitor of the wheel, so no advance takes the hold off the wheel before it can be found here
+    private void register(Hold hold) {
+        synchronized (expiries) {
+            holds.put(hold.getId(), expiries.schedule(hold, hold.getExpiresAt()));
+        }
+    }
+
+    private Account unhold(Account account, long sum) {
+        var writeLock = account.writeLock();
+        writeLock.lock();
+
+        try {
+            account.setHeld(account.getHeld() - sum);
+            publish(account);
+
+            return copy(account);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private Account existing(String id) {
+        var account = accounts.get(id);
+
+        if (account == null) {
+            throw new AccountNotFoundException(id);
+        }
+
+        return account;
+    }
+
+    private void plan(TransferOrder leg, Map<String, Integer> positions, long[] balances, long[] held) {
+        int from = positions.get(leg.getFrom());
+        int to = positions.get(leg.getTo());
+
+        if (balances[from] - held[from] < leg.getSum()) {
+            throw new InsufficientResourcesException(leg.getFrom());
+        }
+
+        balances[to] = Balances.add(leg.getTo(), balances[to], leg.getSum());
+        balances[from] -= leg.getSum();
+    }
+
+    private boolean unchanged(List<Account> batch, BalanceSnapshot[] snapshots) {
+        for (int i = 0; i < snapshots.length; i++) {
+            if (batch.get(i).getSnapshot().getVersion() != snapshots[i].getVersion()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    // Returns balances left by the transaction, or null and leaves every account untouched when the plan
+    // can not be installed as it is
+    private Account[] commit(List<Account> batch, BalanceSnapshot[] snapshots, long[] deltas, List<TransferOrder> legs) {
+        var start = metrics.start();
+        var locked = 0;
+
+        while (locked < batch.size() && batch.get(locked).writeLock().tryLock()) {
+            locked++;
+        }
+
+        var acquired = metrics.lockAcquired(start);
+
+        try {
+            if (locked < batch.size() || !unchanged(batch, snapshots)) {
+                return null;
+            }
+
+            var next = new long[deltas.length];
+
+            for (int i = 0; i < deltas.length; i++) {
+                var account = batch.get(i);
+
+                // Deltas rather than planned balances, credits of a striped account may have come in since
+                if (Balances.fold(account)) {
+                    publish(account);
+                }
+
+                next[i] = deltas[i] > 0
+                          ? Balances.add(account.getId(), account.getBalance(), deltas[i])
+                          : account.getBalance() + deltas[i];
+
+                // Credits of a striped account were summed without its lock, the plan may have counted too much
+                if (next[i] < account.getHeld()) {
+                    return null;
+                }
+            }
+
+            for (int i = 0; i < next.length; i++) {
+                var account = batch.get(i);
+
+                if (account.getBalance() != next[i]) {
+                    account.setBalance(next[i]);
+                    publish(account);
+                }
+            }
+
+            for (var leg : legs) {
+                audit.transfer(leg.getFrom(), leg.getTo(), leg.getSum());
+            }
+
+            return batch.stream()
+                        .map(this::copy)
+                        .toArray(Account[]::new);
+        } finally {
+            for (int i = 0; i < locked; i++) {
+                batch.get(i).writeLock().unlock();
+            }
+
+            metrics.lockReleased(acquired);
+        }
+    }
+
+    private void addIfExists(Map<String, Account> involved, String id) {
+        var account = accounts.get(id);
+
+        if (account != null) {
+            involved.put(id, account);
+        }
+    }
+
+    // Applies a single order of a batch to the netted balances of locked accounts
+    private TransferOutcome executeTransfer(TransferOrder order,
+                                            Map<String, Integer> positions,
+                                            long[] balances,
+                                            long[] held) {
+        var from = positions.get(order.getFrom());
+
+        if (from == null) {
+            return TransferOutcome.failed(new AccountNotFoundException(order.getFrom()));
+        }
+
+        var to = positions.get(order.getTo());
+
+        if (to == null) {
+            return TransferOutcome.failed(new AccountNotFoundException(order.getTo()));
+        }
+
+        if (balances[from] - held[from] < order.getSum()) {
+            return TransferOutcome.failed(new InsufficientResourcesException(order.getFrom()));
+        }
+
+        try {
+            Balances.add(order.getTo(), balances[to], order.getSum());
+        } catch (BalanceOverflowException e) {
+            return TransferOutcome.failed(e);
+        }
+
+        balances[from] -= order.getSum();
+        balances[to] += order.getSum();
+
+        audit.transfer(order.getFrom(), order.getTo(), order.getSum());
+
+        return TransferOutcome.COMPLETED;
+    }
+
+    // Released is the part of a captured hold given back to the sender along with the transfer
+    private TransferResult executeTransfer(Account from, Account to, long sum, long released, boolean striped) {
+        if (Balances.fold(from)) {
+            publish(from);
+        }
+
+        if (Balances.available(from) + released < sum) {
+            throw new InsufficientResourcesException(from.getId());
+        }
+
+        if (striped) {
+            // Only the sender is locked
+            var toBalance = creditStriped(to, sum);
+
+            from.setHeld(from.getHeld() - released);
+            from.setBalance(from.getBalance() - sum);
+            publish(from);
+
+            audit.transfer(from.getId(), to.getId(), sum);
+
+            return new TransferResult(copy(from), account(to.getId(), toBalance));
+        }
+
+        if (Balances.fold(to)) {
+            publish(to);
+        }
+
+        // Computed before any change so an overflow leaves both accounts untouched
+        var toBalance = Balances.add(to.getId(), to.getBalance(), sum);
+
+        from.setHeld(from.getHeld() - released);
+        from.setBalance(from.getBalance() - sum);
+        to.setBalance(toBalance);
+
+        publish(from);
+        publish(to);
+
+        // Captured under the locks so event sequences follow the order of changes to each account
+        audit.transfer(from.getId(), to.getId(), sum);
+
+        return new TransferResult(copy(from), copy(to));
+    }
+
+    private TransferResult executeWithLocks(Account from, Account to, long sum, long released) {
+        // A striped receiver is not locked at all, striping is never undone so it can be checked up front
+        var striped = to.getCredits() != null;
+
+        // Always lock in id order so transfers in opposite directions cannot deadlock
+        var first = striped || from.getId().compareTo(to.getId()) <= 0 ? from : to;
+        var second = first == from ? to : from;
+
+        var firstLock = first.writeLock();
+        var secondLock = striped ? null : second.writeLock();
+
+        // Nothing is logged while the locks are held, diagnostics go to a flight recorder event
+        var event = TransferEvent.start();
+        var start = metrics.start();
+
+        firstLock.lock();
+
+        if (secondLock != null) {
+            secondLock.lock();
+        }
+
+        var acquired = metrics.lockAcquired(start);
+
+        event.locked();
+
+        TransferResult result;
+
+        try {
+            result = executeTransfer(from, to, sum, released, striped);
+        } catch (RuntimeException e) {
+            event.failed(from.getId(), to.getId(), sum, e);
+            throw e;
+        } finally {
+            if (secondLock != null) {
+                secondLock.unlock();
+            }
+
+            firstLock.unlock();
+            metrics.lockReleased(acquired);
+        }
+
+        event.completed(from.getId(), to.getId(), sum);
+
+        return result;
+    }
+}
@@ -0,0 +1,180 @@
+package io.github.spacanowski.wallet.datastore;
+
+import java.util.function.IntFunction;
+
+// Open addressing map from positive account ids to balances, kept in fixed width slots on or off the
+// heap instead of an entry, a key string and an account object per account. Not thread safe.
+class LongBalanceTable {
+
+    static final int NOT_FOUND = -1;
+
+    private static final long EMPTY = 0;
+    private static final int MIN_CAPACITY = 16;
+
+    // Resized once more than 5/8 of the slots are taken
+    private static final int LOAD_NUMERATOR = 5;
+    private static final int LOAD_DENOMINATOR = 8;
+
+    private final IntFunction<AccountSlots> allocator;
+
+    private AccountSlots slots;
+    private int mask;
+    private int size;
+    private int threshold;
+
+    LongBalanceTable() {
+        this(HeapAccountSlots::new);
+    }
+
+    LongBalanceTable(IntFunction<AccountSlots> allocator) {
+        this.allocator = allocator;
+
+        allocate(MIN_CAPACITY);
+    }
+
+    int size() {
+        return size;
+    }
+
+    long bytes() {
+        return slots.bytes();
+    }
+
+    // Slot holding the account, valid until the next insert or remove
+    int find(long id) {
+        for (int slot = slot(id);; slot = (slot + 1) & mask) {
+            var key = slots.id(slot);
+
+            if (key == id) {
+                return slot;
+            }
+
+            if (key == EMPTY) {
+                return NOT_FOUND;
+            }
+        }
+    }
+
+    long balance(int slot) {
+        return slots.balance(slot);
+    }
+
+    long version(int slot) {
+        return slots.version(slot);
+    }
+
+    void balance(int slot, long balance) {
+        slots.update(slot, balance, slots.version(slot) + 1);
+    }
+
+    // Returns false when the account already exists
+    boolean insert(long id, long balance) {
+        if (id <= EMPTY) {
+            throw new IllegalArgumentException("Id must be positive");
+        }
+
+        int slot = slot(id);
+
+        for (;; slot = (slot + 1) & mask) {
+            var key = slots.id(slot);
+
+            if (key == id) {
+                return false;
+            }
+
+            if (key == EMPTY) {
+                break;
+            }
+        }
+
+        slots.set(slot, id, balance, 0);
+
+        if (++size > threshold) {
+            allocate(slots.capacity() * 2);
+        }
+
+        return true;
+    }
+
+    void put(long id, long balance) {
+        var slot = find(id);
+
+        if (slot == NOT_FOUND) {
+            insert(id, balance);
+        } else {
+            balance(slot, balance);
+        }
+    }
+
+    boolean remove(long id) {
+        var slot = find(id);
+
+        if (slot == NOT_FOUND) {
+            return false;
+        }
+
+        // Shift following entries of the probe run back, so lookups never need tombstones
+        var gap = slot;
+
+        for (int next = (gap + 1) & mask;; next = (next + 1) & mask) {
+            var key = slots.id(next);
+
+            if (key == EMPTY) {
+                break;
+            }
+
+            var home = slot(key);
+
+            // Entry can fill the gap only if its home slot is not cyclically between gap and next
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                slots.set(gap, key, slots.balance(next), slots.version(next));
+                gap = next;
+            }
+        }
+
+        slots.set(gap, EMPTY, 0, 0);
+        size--;
+
+        return true;
+    }
+
+    private int slot(long id) {
+        // Sequential ids differ only in low bits, spread them over the whole table
+        var hash = id * 0x9E3779B97F4A7C15L;
+
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private void allocate(int capacity) {
+        var old = slots;
+
+        slots = allocator.apply(capacity);
+        mask = capacity - 1;
+        threshold = capacity / LOAD_DENOMINATOR * LOAD_NUMERATOR;
+        size = 0;
+
+        if (old == null) {
+            return;
+        }
+
+        for (int i = 0; i < old.capacity(); i++) {
+            var id = old.id(i);
+
+            if (id != EMPTY) {
+                slots.set(insertionSlot(id), id, old.balance(i), old.version(i));
+                size++;
+            }
+        }
+    }
+
+    // First free slot of the probe run, only used while rehashing into a table without duplicates
+    private int insertionSlot(long id) {
+        int slot = slot(id);
+
+        while (slots.id(slot) != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+}
@@ -0,0 +1,70 @@
+package io.github.spacanowski.wallet.datastore;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// Slots in a direct buffer, the heap only holds the buffer object whatever the number of accounts.
+// A replaced buffer is released once it is collected, like the audit log records.
+class OffHeapAccountSlots implements AccountSlots {
+
+    private static final int ID_OFFSET = 0;
+    private static final int BALANCE_OFFSET = 8;
+    private static final int VERSION_OFFSET = 16;
+    private static final int SLOT_SIZE = 24;
+
+    // Largest capacity addressable by a single buffer
+    static final int MAX_CAPACITY = Integer.highestOneBit(Integer.MAX_VALUE / SLOT_SIZE);
+
+    private final ByteBuffer slots;
+
+    OffHeapAccountSlots(int capacity) {
+        if (capacity > MAX_CAPACITY) {
+            throw new IllegalStateException("Account table can not grow beyond " + MAX_CAPACITY + " slots");
+        }
+
+        this.slots = ByteBuffer.allocateDirect(capacity * SLOT_SIZE)
+                               .order(ByteOrder.nativeOrder());
+    }
+
+    @Override
+    public int capacity() {
+        return slots.capacity() / SLOT_SIZE;
+    }
+
+    @Override
+    public long id(int slot) {
+        return slots.getLong(slot * SLOT_SIZE + ID_OFFSET);
+    }
+
+    @Override
+    public long balance(int slot) {
+        return slots.getLong(slot * SLOT_SIZE + BALANCE_OFFSET);
+    }
+
+    @Override
+    public long version(int slot) {
+        return slots.getLong(slot * SLOT_SIZE + VERSION_OFFSET);
+    }
+
+    @Override
+    public void set(int slot, long id, long balance, long version) {
+        var offset = slot * SLOT_SIZE;
+
+        slots.putLong(offset + ID_OFFSET, id);
+        slots.putLong(offset + BALANCE_OFFSET, balance);
+        slots.putLong(offset + VERSION_OFFSET, version);
+    }
+
+    @Override
+    public void update(int slot, long balance, long version) {
+        var offset = slot * SLOT_SIZE;
+
+        slots.putLong(offset + BALANCE_OFFSET, balance);
+        slots.putLong(offset + VERSION_OFFSET, version);
+    }
+
+    @Override
+    public long bytes() {
+        return slots.capacity();
+    }
+}
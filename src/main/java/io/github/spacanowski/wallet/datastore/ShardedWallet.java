@@ -0,0 +1,488 @@
+package io.github.spacanowski.wallet.datastore;
+
+import io.dropwizard.lifecycle.Managed;
+import io.github.spacanowski.wallet.exception.AccountNotFoundException;
+import io.github.spacanowski.wallet.exception.InsufficientResourcesException;
+import io.github.spacanowski.wallet.exception.WalletUnavailableException;
+import io.github.spacanowski.wallet.model.data.Account;
+import io.github.spacanowski.wallet.model.data.AuditPage;
+import io.github.spacanowski.wallet.model.data.AuditQuery;
+import io.github.spacanowski.wallet.model.data.BalanceSnapshot;
+import io.github.spacanowski.wallet.model.data.TransferResult;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+// Accounts are partitioned by id across single threaded shards. Only the owning shard thread touches
+// its balances, other threads talk to it through a bounded queue, so no locks are taken on accounts.
+// Transfers inside one shard are a single message, transfers across shards are a debit followed by
+// a credit (and a refund of the debit if the credit fails). Shards publish a snapshot of every changed
+// account, so balance reads do not queue behind writes. Once stopped, commands queued behind the stop
+// and any sent later fail with WalletUnavailableException instead of waiting for a shard that is gone.
+@Slf4j
+public class ShardedWallet implements Wallet, Managed {
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    private static final int INITIAL_SHARD_CAPACITY = 1024;
+    private static final int BATCH_SIZE = 256;
+
+    @Getter
+    private final int scale;
+
+    private final Shard[] shards;
+    private final AuditLog audit;
+    private final WalletMetrics metrics;
+
+    public ShardedWallet() {
+        this(DEFAULT_SCALE,
+             new AuditLog(DEFAULT_SCALE),
+             Runtime.getRuntime().availableProcessors(),
+             DEFAULT_QUEUE_CAPACITY);
+    }
+
+    public ShardedWallet(int scale, AuditLog audit, int shardCount, int queueCapacity) {
+        this(scale, audit, shardCount, queueCapacity, WalletMetrics.disabled());
+    }
+
+    public ShardedWallet(int scale, AuditLog audit, int shardCount, int queueCapacity, WalletMetrics metrics) {
+        this.scale = scale;
+        this.audit = audit;
+        this.metrics = metrics;
+        this.shards = new Shard[shardCount];
+
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(queueCapacity, metrics);
+
+            var thread = new Thread(shards[i], "wallet-shard-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    @Override
+    public Account get(String id) {
+        var balance = await(shard(id).submit(Command.Type.GET, id, 0));
+
+        if (balance == null) {
+            return null;
+        }
+
+        return account(id, balance);
+    }
+
+    @Override
+    public BalanceSnapshot balance(String id) {
+        return shard(id).published.get(id);
+    }
+
+    @Override
+    public Account create(long initialBalance) {
+        var id = UUID.randomUUID().toString();
+
+        while (await(shard(id).submit(Command.Type.CREATE, id, initialBalance)) == null) {
+            log.info("Id collision during account creation. Retrying.");
+            id = UUID.randomUUID().toString();
+        }
+
+        audit.create(id, initialBalance);
+
+        return account(id, initialBalance);
+    }
+
+    @Override
+    public TransferResult transfer(String fromId, String toId, long sum) {
+        var fromShard = shard(fromId);
+        var toShard = shard(toId);
+
+        if (fromShard == toShard) {
+            var command = fromShard.send(Command.Type.TRANSFER, fromId, toId, sum);
+            var fromBalance = await(command.result);
+
+            audit.transfer(fromId, toId, sum);
+            metrics.transferred(fromId, toId);
+
+            // Written by the shard thread before it completed the result
+            return new TransferResult(account(fromId, fromBalance), account(toId, command.otherBalance));
+        }
+
+        // Fail fast on a missing target so the common error does not need a refund
+        if (await(toShard.submit(Command.Type.GET, toId, 0)) == null) {
+            throw new AccountNotFoundException(toId);
+        }
+
+        var fromBalance = await(fromShard.submit(Command.Type.DEBIT, fromId, sum));
+        long toBalance;
+
+        try {
+            toBalance = await(toShard.submit(Command.Type.CREDIT, toId, sum));
+        } catch (RuntimeException e) {
+            log.debug("Failed transfer on account {}: {}", toId, e.getMessage());
+            refund(fromShard, fromId, toId, sum, e);
+            throw e;
+        }
+
+        audit.transfer(fromId, toId, sum);
+        metrics.transferred(fromId, toId);
+
+        return new TransferResult(account(fromId, fromBalance), account(toId, toBalance));
+    }
+
+    @Override
+    public void delete(String id) {
+        audit.delete(id);
+
+        await(shard(id).submit(Command.Type.DELETE, id, 0));
+    }
+
+    @Override
+    public void restore(String id, long balance) {
+        await(shard(id).submit(Command.Type.CREATE, id, balance));
+    }
+
+    @Override
+    public List<String> getOperations() {
+        return audit.getOperations();
+    }
+
+    @Override
+    public AuditPage getOperations(AuditQuery query) {
+        return audit.read(query);
+    }
+
+    @Override
+    public void start() {
+        // Shard threads are started on construction
+    }
+
+    @Override
+    public void stop() throws InterruptedException {
+        for (var shard : shards) {
+            if (!shard.stopped) {
+                shard.stopped = true;
+                shard.inbox.put(Command.STOP);
+            }
+        }
+    }
+
+    // Rollback debit of resources. A refund failing as well leaves the sum debited and credited nowhere,
+    // it is counted as lost and reported with the failure of the transfer.
+    private void refund(Shard fromShard, String fromId, String toId, long sum, RuntimeException failure) {
+        try {
+            await(fromShard.submit(Command.Type.CREDIT, fromId, sum));
+        } catch (RuntimeException e) {
+            metrics.lost(sum);
+            failure.addSuppressed(e);
+            log.error("Lost {} debited from account {} for account {}, refund failed", sum, fromId, toId, e);
+        }
+    }
+
+    private Shard shard(String id) {
+        return shards[Math.floorMod(id.hashCode(), shards.length)];
+    }
+
+    private Account account(String id, long balance) {
+        var result = new Account();
+
+        result.setId(id);
+        result.setBalance(balance);
+
+        return result;
+    }
+
+    private static <T> T await(CompletableFuture<T> result) {
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+
+            throw e;
+        }
+    }
+
+    @RequiredArgsConstructor
+    private static class Command {
+
+        private static final Command STOP = new Command(Type.STOP, null, null, 0, 0);
+
+        private final Type type;
+        private final String id;
+        private final String otherId;
+        private final long sum;
+        private final long submitted;
+        private final CompletableFuture<Long> result = new CompletableFuture<>();
+
+        // Balance of the other account of a transfer inside one shard
+        private long otherBalance;
+
+        private enum Type {
+
+            GET,
+            CREATE,
+            DEBIT,
+            CREDIT,
+            TRANSFER,
+            DELETE,
+            STOP
+        }
+    }
+
+    private static class Shard implements Runnable {
+
+        private final BlockingQueue<Command> inbox;
+        private final WalletMetrics metrics;
+
+        // Set before the stop command is queued, so a command sent after it is failed by its sender
+        private volatile boolean stopped;
+
+        // Written by the shard thread only, read by any thread
+        private final Map<String, BalanceSnapshot> published = new ConcurrentHashMap<>();
+
+        // Owned by the shard thread only
+        private final Map<String, Integer> slots = new HashMap<>();
+        private String[] ids = new String[INITIAL_SHARD_CAPACITY];
+        private long[] balances = new long[INITIAL_SHARD_CAPACITY];
+        private BalanceSnapshot[] snapshots = new BalanceSnapshot[INITIAL_SHARD_CAPACITY];
+        private int size;
+
+        Shard(int queueCapacity, WalletMetrics metrics) {
+            this.inbox = new ArrayBlockingQueue<>(queueCapacity);
+            this.metrics = metrics;
+        }
+
+        CompletableFuture<Long> submit(Command.Type type, String id, long sum) {
+            return submit(type, id, null, sum);
+        }
+
+        CompletableFuture<Long> submit(Command.Type type, String id, String otherId, long sum) {
+            return send(type, id, otherId, sum).result;
+        }
+
+        Command send(Command.Type type, String id, String otherId, long sum) {
+            var command = new Command(type, id, otherId, sum, metrics.start());
+
+            if (stopped) {
+                command.result.completeExceptionally(unavailable());
+
+                return command;
+            }
+
+            try {
+                // Blocks the caller while the shard is saturated
+                inbox.put(command);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                command.result.completeExceptionally(
+                        new WalletUnavailableException("Interrupted while waiting for wallet shard", e));
+
+                return command;
+            }
+
+            // Queued after the shard may already have drained its inbox for the last time
+            if (stopped) {
+                failPending();
+            }
+
+            return command;
+        }
+
+        @Override
+        public void run() {
+            var batch = new ArrayList<Command>(BATCH_SIZE);
+
+            try {
+                while (true) {
+                    batch.add(inbox.take());
+                    inbox.drainTo(batch, BATCH_SIZE - 1);
+
+                    for (int i = 0; i < batch.size(); i++) {
+                        var command = batch.get(i);
+
+                        if (command == Command.STOP) {
+                            fail(batch.subList(i + 1, batch.size()));
+
+                            return;
+                        }
+
+                        execute(command);
+                    }
+
+                    batch.clear();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                stopped = true;
+                fail(batch);
+            } finally {
+                failPending();
+            }
+        }
+
+        private void failPending() {
+            Command command;
+
+            while ((command = inbox.poll()) != null) {
+                fail(command);
+            }
+        }
+
+        private void fail(List<Command> commands) {
+            for (var command : commands) {
+                fail(command);
+            }
+        }
+
+        private void fail(Command command) {
+            if (command != Command.STOP) {
+                command.result.completeExceptionally(unavailable());
+            }
+        }
+
+        private static WalletUnavailableException unavailable() {
+            return new WalletUnavailableException("Wallet is stopped and takes no further changes", null);
+        }
+
+        private void execute(Command command) {
+            metrics.dequeued(command.submitted);
+
+            try {
+                command.result.complete(apply(command));
+            } catch (RuntimeException e) {
+                command.result.completeExceptionally(e);
+            }
+        }
+
+        private Long apply(Command command) {
+            switch (command.type) {
+                case GET: {
+                    var slot = slots.get(command.id);
+
+                    return slot == null ? null : balances[slot];
+                }
+                case CREATE:
+                    return insert(command.id, command.sum) ? command.sum : null;
+                case DEBIT: {
+                    int slot = slot(command.id);
+
+                    debit(slot, command.id, command.sum);
+                    publish(slot);
+
+                    return balances[slot];
+                }
+                case CREDIT: {
+                    int slot = slot(command.id);
+
+                    balances[slot] = Balances.add(command.id, balances[slot], command.sum);
+                    publish(slot);
+
+                    return balances[slot];
+                }
+                case TRANSFER: {
+                    int from = slot(command.id);
+                    int to = slot(command.otherId);
+
+                    // Checked before any change so an overflow leaves both accounts untouched
+                    Balances.add(command.otherId, balances[to], command.sum);
+
+                    debit(from, command.id, command.sum);
+                    balances[to] += command.sum;
+
+                    publish(from);
+                    publish(to);
+
+                    command.otherBalance = balances[to];
+
+                    return balances[from];
+                }
+                case DELETE:
+                    remove(command.id);
+
+                    return null;
+                default:
+                    throw new IllegalStateException("Unsupported command " + command.type);
+            }
+        }
+
+        private int slot(String id) {
+            var slot = slots.get(id);
+
+            if (slot == null) {
+                throw new AccountNotFoundException(id);
+            }
+
+            return slot;
+        }
+
+        private void publish(int slot) {
+            snapshots[slot] = snapshots[slot].next(balances[slot], 0);
+            published.put(ids[slot], snapshots[slot]);
+        }
+
+        private void debit(int slot, String id, long sum) {
+            if (balances[slot] < sum) {
+                throw new InsufficientResourcesException(id);
+            }
+
+            balances[slot] -= sum;
+        }
+
+        private boolean insert(String id, long balance) {
+            if (slots.containsKey(id)) {
+                return false;
+            }
+
+            if (size == balances.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                balances = Arrays.copyOf(balances, size * 2);
+                snapshots = Arrays.copyOf(snapshots, size * 2);
+            }
+
+            ids[size] = id;
+            balances[size] = balance;
+            snapshots[size] = new BalanceSnapshot(id, balance, 0);
+            slots.put(id, size);
+            published.put(id, snapshots[size]);
+            size++;
+
+            return true;
+        }
+
+        private void remove(String id) {
+            var slot = slots.remove(id);
+
+            if (slot == null) {
+                return;
+            }
+
+            published.remove(id);
+
+            // Keep arrays dense by moving the last account into the freed slot
+            size--;
+
+            if (slot != size) {
+                ids[slot] = ids[size];
+                balances[slot] = balances[size];
+                snapshots[slot] = snapshots[size];
+                slots.put(ids[slot], slot);
+            }
+
+            ids[size] = null;
+            snapshots[size] = null;
+        }
+    }
+}
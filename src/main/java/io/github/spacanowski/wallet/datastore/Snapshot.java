@@ -0,0 +1,280 @@
+package io.github.spacanowski.wallet.datastore;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+
+import lombok.extern.slf4j.Slf4j;
+
+// Compact binary image of all balances as of a write-ahead log LSN. A new snapshot is the previous one
+// with the log records since merged in, so it is built from files alone and never pauses the wallet.
+//
+// File layout: magic, LSN, account count, records (id length, id, balance), CRC32 of the records.
+@Slf4j
+final class Snapshot {
+
+    static final String PREFIX = "snapshot-";
+    static final String SUFFIX = ".snap";
+
+    private static final int MAGIC = 0x574c5453;
+    private static final int HEADER_SIZE = Integer.BYTES + 2 * Long.BYTES;
+
+    // Snapshot is mapped in windows so files above 2GB can be read too, ids are far shorter than a window
+    private static final long WINDOW_SIZE = 64L * 1024 * 1024;
+    private static final int WRITE_BUFFER_SIZE = 1024 * 1024;
+
+    private Snapshot() {
+    }
+
+    // LSN of the newest snapshot in the directory, 0 if there is none
+    static long latest(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return 0;
+        }
+
+        try (var files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString())
+                        .filter(name -> name.startsWith(PREFIX) && name.endsWith(SUFFIX))
+                        .mapToLong(name -> Long.parseLong(name.substring(PREFIX.length(),
+                                                                         name.length() - SUFFIX.length())))
+                        .max()
+                        .orElse(0);
+        }
+    }
+
+    // Passes every balance of the snapshot at the LSN, with the changes applied, to the sink
+    static void read(Path directory, long lsn, Changes changes, BiConsumer<String, Long> sink) throws IOException {
+        var pending = new HashMap<>(changes.accounts);
+
+        if (lsn > 0) {
+            readFile(file(directory, lsn), lsn, (id, balance) -> {
+                var change = pending.remove(id);
+
+                if (change == null) {
+                    sink.accept(id, balance);
+                } else if (!change.deleted) {
+                    sink.accept(id, change.created ? change.balance : balance + change.balance);
+                }
+            });
+        }
+
+        // Accounts created after the snapshot, deltas for accounts it does not hold are dropped
+        pending.forEach((id, change) -> {
+            if (change.created && !change.deleted) {
+                sink.accept(id, change.balance);
+            }
+        });
+    }
+
+    // Writes the snapshot at the LSN from the one at the previous LSN and the changes in between
+    static void write(Path directory, long previousLsn, long lsn, Changes changes) throws IOException {
+        var target = file(directory, lsn);
+        var temporary = directory.resolve(target.getFileName() + ".tmp");
+
+        try (var channel = FileChannel.open(temporary,
+                                            StandardOpenOption.CREATE,
+                                            StandardOpenOption.TRUNCATE_EXISTING,
+                                            StandardOpenOption.WRITE)) {
+            var buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+            var checksum = new CRC32();
+            var count = new long[1];
+
+            // Count is patched once known
+            channel.position(HEADER_SIZE);
+
+            read(directory, previousLsn, changes, (id, balance) -> {
+                var bytes = id.getBytes(StandardCharsets.UTF_8);
+
+                if (buffer.remaining() < Short.BYTES + bytes.length + Long.BYTES) {
+                    try {
+                        drain(channel, buffer, checksum);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+
+                buffer.putShort((short) bytes.length).put(bytes).putLong(balance);
+                count[0]++;
+            });
+
+            drain(channel, buffer, checksum);
+
+            var header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putLong(lsn).putLong(count[0]).flip();
+            channel.write(header, 0);
+
+            var trailer = ByteBuffer.allocate(Integer.BYTES).putInt((int) checksum.getValue()).flip();
+            channel.write(trailer, channel.size());
+            channel.force(true);
+
+            log.info("Wrote snapshot of {} accounts at LSN {}", count[0], lsn);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+
+        Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Deletes snapshots older than the one at the LSN
+    static void deleteBefore(Path directory, long lsn) throws IOException {
+        try (var files = Files.list(directory)) {
+            for (var file : (Iterable<Path>) files::iterator) {
+                var name = file.getFileName().toString();
+
+                if (name.startsWith(PREFIX)
+                        && name.endsWith(SUFFIX)
+                        && Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())) < lsn) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    private static Path file(Path directory, long lsn) {
+        return directory.resolve(String.format("%s%020d%s", PREFIX, lsn, SUFFIX));
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer, CRC32 checksum) throws IOException {
+        buffer.flip();
+        checksum.update(buffer.duplicate());
+
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+
+        buffer.clear();
+    }
+
+    // Records are streamed from the mapped file, nothing is copied to the heap besides ids. A checksum
+    // mismatch is only detected at the end, so a failed read leaves the sink with a partial image.
+    private static void readFile(Path file, long lsn, BiConsumer<String, Long> sink) throws IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            var size = channel.size();
+
+            if (size < HEADER_SIZE + Integer.BYTES) {
+                throw corrupted(file);
+            }
+
+            var end = size - Integer.BYTES;
+            var checksum = new CRC32();
+            var header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+
+            if (header.getInt() != MAGIC || header.getLong() != lsn) {
+                throw corrupted(file);
+            }
+
+            var count = header.getLong();
+
+            var position = (long) HEADER_SIZE;
+            var read = 0L;
+            var bytes = new byte[Short.MAX_VALUE];
+
+            while (position < end) {
+                var window = channel.map(FileChannel.MapMode.READ_ONLY,
+                                         position,
+                                         Math.min(WINDOW_SIZE, end - position));
+                var windowEnd = window.limit() == end - position;
+
+                // A record crossing the window end is read from the next window
+                while (window.remaining() >= Short.BYTES) {
+                    var start = window.position();
+                    var length = window.getShort(start);
+
+                    if (length < 0 || (windowEnd && window.remaining() < Short.BYTES + length + Long.BYTES)) {
+                        throw corrupted(file);
+                    }
+
+                    if (window.remaining() < Short.BYTES + length + Long.BYTES) {
+                        break;
+                    }
+
+                    window.position(start + Short.BYTES);
+                    window.get(bytes, 0, length);
+                    sink.accept(new String(bytes, 0, length, StandardCharsets.UTF_8), window.getLong());
+                    read++;
+                }
+
+                checksum.update(window.flip());
+                position += window.limit();
+
+                if (windowEnd && position < end) {
+                    throw corrupted(file);
+                }
+            }
+
+            var trailer = ByteBuffer.allocate(Integer.BYTES);
+            channel.read(trailer, end);
+
+            if (read != count || trailer.flip().getInt() != (int) checksum.getValue()) {
+                throw corrupted(file);
+            }
+        }
+    }
+
+    private static IOException corrupted(Path file) {
+        return new IOException("Snapshot " + file + " is corrupted");
+    }
+
+    // Folds write-ahead log records into the net change per account
+    static class Changes {
+
+        private final Map<String, Change> accounts = new HashMap<>();
+
+        void apply(WriteAheadLog.Record record) {
+            switch (record.getType()) {
+                case CREATE: {
+                    var change = change(record.getId());
+
+                    change.created = true;
+                    change.deleted = false;
+                    change.balance = record.getAmount();
+                    break;
+                }
+                case TRANSFER:
+                    credit(record.getId(), -record.getAmount());
+                    credit(record.getOtherId(), record.getAmount());
+                    break;
+                case DELETE:
+                    change(record.getId()).deleted = true;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        int size() {
+            return accounts.size();
+        }
+
+        private void credit(String id, long amount) {
+            var change = change(id);
+
+            // A deleted account does not exist at this point of the log
+            if (!change.deleted) {
+                change.balance += amount;
+            }
+        }
+
+        private Change change(String id) {
+            return accounts.computeIfAbsent(id, key -> new Change());
+        }
+    }
+
+    // Either an absolute balance of an account (re)created since the snapshot, or a delta to its balance
+    private static class Change {
+
+        private boolean created;
+        private boolean deleted;
+        private long balance;
+    }
+}
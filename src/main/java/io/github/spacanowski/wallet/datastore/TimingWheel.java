@@ -0,0 +1,194 @@
+package io.github.spacanowski.wallet.datastore;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Hierarchical timing wheel. Level 0 has a bucket per tick, each level above has buckets spanning a whole
+// rotation of the level below and hands a bucket down once time reaches it. Scheduling and cancelling
+// link or unlink an entry of a bucket list, so both cost O(1) however many timeouts are pending, and
+// advancing costs O(1) per tick plus the timeouts it expires or hands down.
+// Guarded by its own monitor, callers may hold it to register a timeout together with state of their own.
+public class TimingWheel<T> {
+
+    private static final int BITS = 6;
+    private static final int SLOTS = 1 << BITS;
+    private static final int MASK = SLOTS - 1;
+    // With 10 ms ticks six levels span more than two years
+    private static final int LEVELS = 6;
+
+    private final long tickMillis;
+    private final Timeout<T>[][] buckets;
+
+    // Last tick processed, timeouts in the wheel are all due after it
+    private long now;
+    private long size;
+
+    public TimingWheel(long tickMillis, long startMillis) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("Tick has to be positive");
+        }
+
+        this.tickMillis = tickMillis;
+        this.now = startMillis / tickMillis;
+        this.buckets = newBuckets();
+
+        for (var level : buckets) {
+            for (int i = 0; i < SLOTS; i++) {
+                level[i] = new Timeout<>(null, 0);
+                level[i].prev = level[i];
+                level[i].next = level[i];
+            }
+        }
+    }
+
+    // Fires on the first advance to or past the deadline, a deadline already passed fires on the next tick
+    public synchronized Timeout<T> schedule(T value, long deadlineMillis) {
+        var deadline = Math.max(Math.floorDiv(deadlineMillis + tickMillis - 1, tickMillis), now + 1);
+        var timeout = new Timeout<>(value, deadline);
+
+        insert(timeout);
+        size++;
+
+        return timeout;
+    }
+
+    // Returns false when the timeout already fired or was cancelled
+    public synchronized boolean cancel(Timeout<T> timeout) {
+        if (timeout.next == null) {
+            return false;
+        }
+
+        unlink(timeout);
+        size--;
+
+        return true;
+    }
+
+    // Returns values of timeouts due by now, in no particular order
+    public List<T> advance(long nowMillis) {
+        return advance(nowMillis, Integer.MAX_VALUE);
+    }
+
+    // As above but returns at most limit values, the rest stays due and is returned by the next calls.
+    // Callers drain a large backlog in bounded chunks and leave the monitor free in between.
+    public synchronized List<T> advance(long nowMillis, int limit) {
+        var target = Math.floorDiv(nowMillis, tickMillis);
+        var expired = new ArrayList<T>();
+
+        // Nothing to hand down or expire, idle time is skipped at once
+        if (size == 0 && target > now) {
+            now = target;
+        }
+
+        // Left over in the current bucket by a call that reached its limit
+        expire(expired, limit);
+
+        while (expired.size() < limit && now < target) {
+            now++;
+
+            cascade();
+            expire(expired, limit);
+        }
+
+        return expired;
+    }
+
+    public synchronized long size() {
+        return size;
+    }
+
+    // Arrays of a generic type can only be created raw, the cast is safe as buckets never leave the wheel
+    @SuppressWarnings("unchecked")
+    private static <T> Timeout<T>[][] newBuckets() {
+        return (Timeout<T>[][]) new Timeout<?>[LEVELS][SLOTS];
+    }
+
+    // Takes timeouts due by the current tick off its bucket, up to the limit
+    private void expire(List<T> expired, int limit) {
+        var bucket = buckets[0][(int) now & MASK];
+
+        while (bucket.next != bucket && expired.size() < limit) {
+            var timeout = bucket.next;
+
+            unlink(timeout);
+
+            if (timeout.deadline <= now) {
+                expired.add(timeout.value);
+                size--;
+            } else {
+                insert(timeout);
+            }
+        }
+    }
+
+    // Hands buckets of upper levels whose span starts at this tick down to the levels below, top first
+    private void cascade() {
+        var levels = 0;
+
+        while (levels < LEVELS - 1 && (now >>> (BITS * levels) & MASK) == 0) {
+            levels++;
+        }
+
+        for (int level = levels; level > 0; level--) {
+            var bucket = buckets[level][(int) (now >>> (BITS * level)) & MASK];
+
+            while (bucket.next != bucket) {
+                var timeout = bucket.next;
+
+                unlink(timeout);
+                insert(timeout);
+            }
+        }
+    }
+
+    private void insert(Timeout<T> timeout) {
+        var delta = timeout.deadline - now;
+
+        for (int level = 0; level < LEVELS; level++) {
+            if (delta < 1L << (BITS * (level + 1))) {
+                link(buckets[level][(int) (timeout.deadline >>> (BITS * level)) & MASK], timeout);
+                return;
+            }
+        }
+
+        // Beyond the span of the wheel, parked in the farthest bucket of the top level and placed again from there
+        var top = LEVELS - 1;
+        var farthest = now + (1L << (BITS * LEVELS)) - 1;
+
+        link(buckets[top][(int) (farthest >>> (BITS * top)) & MASK], timeout);
+    }
+
+    private static <T> void link(Timeout<T> bucket, Timeout<T> timeout) {
+        timeout.prev = bucket.prev;
+        timeout.next = bucket;
+        bucket.prev.next = timeout;
+        bucket.prev = timeout;
+    }
+
+    private static <T> void unlink(Timeout<T> timeout) {
+        timeout.prev.next = timeout.next;
+        timeout.next.prev = timeout.prev;
+        timeout.prev = null;
+        timeout.next = null;
+    }
+
+    // Entry of a bucket list, also the head of each bucket. Linked only while pending.
+    public static final class Timeout<T> {
+
+        private final T value;
+        // In ticks
+        private final long deadline;
+
+        private Timeout<T> prev;
+        private Timeout<T> next;
+
+        private Timeout(T value, long deadline) {
+            this.value = value;
+            this.deadline = deadline;
+        }
+
+        public T getValue() {
+            return value;
+        }
+    }
+}
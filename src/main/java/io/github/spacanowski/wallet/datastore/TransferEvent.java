@@ -0,0 +1,82 @@
+package io.github.spacanowski.wallet.datastore;
+
+import io.github.spacanowski.wallet.model.data.TransferOutcome;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+// Flight recorder event for a transfer, written to thread local buffers and only when a recording with
+// the event enabled is running. By default only transfers slower than the threshold are kept, which can
+// be changed in the recording settings.
+@Name("io.github.spacanowski.wallet.Transfer")
+@Label("Wallet Transfer")
+@Category("Wallet")
+@Description("Transfer between two accounts, with the time spent waiting for their locks")
+@StackTrace(false)
+@Threshold("1 ms")
+class TransferEvent extends Event {
+
+    @Label("From")
+    String from;
+
+    @Label("To")
+    String to;
+
+    @Label("Amount")
+    long amount;
+
+    @Label("Lock Wait")
+    @Timespan(Timespan.NANOSECONDS)
+    long lockWait;
+
+    @Label("Outcome")
+    String outcome;
+
+    private transient long started;
+
+    static TransferEvent start() {
+        var event = new TransferEvent();
+
+        if (event.isEnabled()) {
+            event.started = System.nanoTime();
+            event.begin();
+        }
+
+        return event;
+    }
+
+    void locked() {
+        if (started != 0) {
+            lockWait = System.nanoTime() - started;
+        }
+    }
+
+    void completed(String fromId, String toId, long sum) {
+        finish(fromId, toId, sum, TransferOutcome.Status.COMPLETED);
+    }
+
+    void failed(String fromId, String toId, long sum, RuntimeException exception) {
+        if (started != 0) {
+            finish(fromId, toId, sum, TransferOutcome.failed(exception).getStatus());
+        }
+    }
+
+    private void finish(String fromId, String toId, long sum, TransferOutcome.Status status) {
+        end();
+
+        if (shouldCommit()) {
+            from = fromId;
+            to = toId;
+            amount = sum;
+            outcome = status.name();
+
+            commit();
+        }
+    }
+}
@@ -1,159 +1,89 @@
 package io.github.spacanowski.wallet.datastore;
 
-import io.github.spacanowski.wallet.exception.AccountNotFoundException;
-import io.github.spacanowski.wallet.exception.InsufficientResourcesException;
 import io.github.spacanowski.wallet.model.data.Account;
-import io.github.spacanowski.wallet.model.data.CreateOpertaion;
-import io.github.spacanowski.wallet.model.data.DeleteOperation;
-import io.github.spacanowski.wallet.model.data.Operation;
-
-import java.math.BigDecimal;
+import io.github.spacanowski.wallet.model.data.AuditPage;
+import io.github.spacanowski.wallet.model.data.AuditQuery;
+import io.github.spacanowski.wallet.model.data.BalanceSnapshot;
+import io.github.spacanowski.wallet.model.data.Hold;
+import io.github.spacanowski.wallet.model.data.TransferOrder;
+import io.github.spacanowski.wallet.model.data.TransferOutcome;
+import io.github.spacanowski.wallet.model.data.TransferResult;
+
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Queue;
-import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.function.BiFunction;
-import java.util.stream.Collectors;
-
-import lombok.extern.slf4j.Slf4j;
-
-@Slf4j
-public class Wallet {
-
-    private final BiFunction<Account, BigDecimal, Boolean> subtract =
-            (from, sum) -> executeSubtract(from, sum);
 
-    private final BiFunction<Account, BigDecimal, Boolean> add =
-            (to, sum) -> executeAdd(to, sum);
+public interface Wallet {
 
-    private ConcurrentHashMap<String, Account> accounts = new ConcurrentHashMap<>();
-    private Queue<Operation> operations = new ConcurrentLinkedQueue<>();
-
-    public Account get(String id) {
-        var account = accounts.get(id);
-
-        if (account == null) {
-            return null;
-        }
+    int DEFAULT_SCALE = 2;
 
-        var readLock = account.readLock();
-        readLock.lock();
+    int getScale();
 
-        try {
-            var resault = new Account();
+    Account get(String id);
 
-            resault.setId(account.getId());
-            resault.setBalance(account.getBalance());
+    // Last published state of the account, read without waiting for writers
+    BalanceSnapshot balance(String id);
 
-            return resault;
-        } finally {
-            readLock.unlock();
-        }
-    }
+    Account create(long initialBalance);
 
-    public Account create(BigDecimal initianlBalance) {
-        var id = UUID.randomUUID().toString();
-        var account = new Account();
+    // Returns balances left by this transfer, without looking both accounts up again
+    TransferResult transfer(String fromId, String toId, long sum);
 
-        account.setId(id);
-        account.setBalance(initianlBalance);
+    // Applies orders in sequence, a failed order does not stop the ones after it
+    default List<TransferOutcome> transfer(List<TransferOrder> orders) {
+        var outcomes = new ArrayList<TransferOutcome>(orders.size());
 
-        var old = accounts.putIfAbsent(id, account);
+        for (var order : orders) {
+            try {
+                transfer(order.getFrom(), order.getTo(), order.getSum());
 
-        if (old != null) {
-            log.info("Id collision during account creation. Retrying.");
-            account = create(initianlBalance);
+                outcomes.add(TransferOutcome.COMPLETED);
+            } catch (RuntimeException e) {
+                outcomes.add(TransferOutcome.failed(e));
+            }
         }
 
-        operations.add(new CreateOpertaion(id, initianlBalance));
-
-        var resault = new Account();
-
-        resault.setId(account.getId());
-        resault.setBalance(account.getBalance());
-
-        return resault;
+        return outcomes;
     }
 
-    public void transfer(String fromId, String toId, BigDecimal sum) {
-        var from = accounts.get(fromId);
-
-        if (from == null) {
-            throw new AccountNotFoundException(fromId);
-        }
-
-        var to = accounts.get(toId);
-
-        if (to == null) {
-            throw new AccountNotFoundException(toId);
-        }
-
-        // Subtract resources from 'from' account and add to 'to' account if subtract was successful
-        if (subtract(from, sum) && !add(to, sum)) {
-            // Rollback subtract of resources
-            add(from, sum);
-        }
+    // Applies all legs in order or none of them, a failing leg fails the whole transaction.
+    // Returns every account of the transaction once, in order of first appearance.
+    default List<Account> transact(List<TransferOrder> legs) {
+        throw new IllegalArgumentException("Transactions are not supported by this engine");
     }
 
-    public void delete(String id) {
-        operations.add(new DeleteOperation(id));
-
-        accounts.remove(id);
+    // Reserves the sum on the sender for a later transfer to the receiver, transfers can no longer spend it.
+    // Unless captured or released first the hold lapses at expiresAt, in epoch milliseconds.
+    default Hold hold(String fromId, String toId, long sum, long expiresAt) {
+        throw new IllegalArgumentException("Holds are not supported by this engine");
     }
 
-    public List<String> getOperations() {
-        return operations.stream()
-                         .map(Operation::getAudit)
-                         .collect(Collectors.toList());
+    // Transfers at most the held sum to the receiver of the hold, whatever is left of it is released
+    default TransferResult capture(String holdId, long sum) {
+        throw new IllegalArgumentException("Holds are not supported by this engine");
     }
 
-    private boolean subtract(Account from, BigDecimal sum) {
-        return executeWithLock(from, sum, subtract);
+    // Returns the sender with the held sum available again
+    default Account release(String holdId) {
+        throw new IllegalArgumentException("Holds are not supported by this engine");
     }
 
-    private boolean executeSubtract(Account from, BigDecimal sum) {
-        if (from.getBalance().compareTo(sum) < 0) {
-            throw new InsufficientResourcesException(from.getId());
-        }
-
-        from.setBalance(from.getBalance().subtract(sum));
-
-        return true;
+    // Releases holds expired by now, in epoch milliseconds. Returns how many.
+    default int expireHolds(long now) {
+        return 0;
     }
 
-    private boolean add(Account to, BigDecimal sum) {
-        return executeWithLock(to, sum, add);
+    void delete(String id);
+
+    // Lets credits to the account proceed without its lock, for accounts receiving from many others.
+    // Returns false when the account does not exist.
+    default boolean stripe(String id) {
+        throw new IllegalArgumentException("Striped accounts are not supported by this engine");
     }
 
-    private boolean executeAdd(Account to, BigDecimal sum) {
-        to.setBalance(to.getBalance().add(sum));
+    // Loads an account kept outside of the wallet, it is not recorded in operations
+    void restore(String id, long balance);
 
-        return true;
-    }
+    List<String> getOperations();
 
-    private boolean executeWithLock(Account account,
-                                    BigDecimal sum,
-                                    BiFunction<Account, BigDecimal, Boolean> operation) {
-        log.debug("Locking for transfer account {}", account.getId());
-
-        var lock = account.writeLock();
-        lock.lock();
-
-        log.debug("Locked for transfer account {}", account.getId());
-
-        try {
-            return operation.apply(account, sum);
-        } catch (InsufficientResourcesException e) {
-            log.error("Failed transfer on account {}", account.getId(), e);
-            throw e;
-        } catch (Exception e) {
-            log.error("Failed transfer on account {}", account.getId(), e);
-            return false;
-        } finally {
-            log.debug("Unlocking after transfer account {}", account.getId());
-            lock.unlock();
-            log.debug("Unlocked after transfer account {}", account.getId());
-        }
-    }
+    AuditPage getOperations(AuditQuery query);
 }
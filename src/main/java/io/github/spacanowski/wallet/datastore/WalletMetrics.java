@@ -0,0 +1,117 @@
+package io.github.spacanowski.wallet.datastore;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Measurements taken inside wallet engines, where request timers can not see lock contention.
+// Engines built without a registry get a disabled instance that reads no clock.
+public class WalletMetrics {
+
+    public static final int DEFAULT_HOT_ACCOUNTS = 20;
+
+    // One transfer in this many is offered to the hot accounts sketch, weighted accordingly
+    private static final int HOT_ACCOUNTS_SAMPLE_RATE = 16;
+
+    private static final WalletMetrics DISABLED = new WalletMetrics();
+
+    private final boolean enabled;
+    private final Timer lockWait;
+    private final Timer lockHold;
+    private final Timer queueWait;
+    private final Counter retries;
+    private final Counter lost;
+    private final HotAccounts hotAccounts;
+
+    private WalletMetrics() {
+        this.enabled = false;
+        this.lockWait = null;
+        this.lockHold = null;
+        this.queueWait = null;
+        this.retries = null;
+        this.lost = null;
+        this.hotAccounts = null;
+    }
+
+    public WalletMetrics(MetricRegistry registry) {
+        this(registry, DEFAULT_HOT_ACCOUNTS);
+    }
+
+    public WalletMetrics(MetricRegistry registry, int hotAccounts) {
+        this.enabled = true;
+        this.lockWait = registry.timer(MetricRegistry.name(Wallet.class, "lock-wait"));
+        this.lockHold = registry.timer(MetricRegistry.name(Wallet.class, "lock-hold"));
+        this.queueWait = registry.timer(MetricRegistry.name(Wallet.class, "queue-wait"));
+        this.retries = registry.counter(MetricRegistry.name(Wallet.class, "cas-retries"));
+        this.lost = registry.counter(MetricRegistry.name(Wallet.class, "lost-minor-units"));
+        this.hotAccounts = new HotAccounts(hotAccounts);
+
+        registry.register(MetricRegistry.name(Wallet.class, "hot-accounts"),
+                          (Gauge<List<HotAccounts.HotAccount>>) this.hotAccounts::top);
+    }
+
+    public static WalletMetrics disabled() {
+        return DISABLED;
+    }
+
+    // Start of a measured interval, 0 when disabled
+    long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    // Records time spent waiting for locks and returns the moment they were all acquired
+    long lockAcquired(long start) {
+        if (!enabled) {
+            return 0;
+        }
+
+        var now = System.nanoTime();
+
+        lockWait.update(now - start, TimeUnit.NANOSECONDS);
+
+        return now;
+    }
+
+    void lockReleased(long acquired) {
+        if (enabled) {
+            lockHold.update(System.nanoTime() - acquired, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // Time a command spent queued before its shard thread picked it up
+    void dequeued(long submitted) {
+        if (enabled) {
+            queueWait.update(System.nanoTime() - submitted, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // Failed compare-and-set attempts of a single update
+    void retried(int attempts) {
+        if (enabled && attempts > 0) {
+            retries.inc(attempts);
+        }
+    }
+
+    // Resources debited and then credited nowhere, in minor units. Anything but zero needs reconciling.
+    void lost(long sum) {
+        if (enabled) {
+            lost.inc(sum);
+        }
+    }
+
+    void transferred(String fromId, String toId) {
+        if (enabled && ThreadLocalRandom.current().nextInt(HOT_ACCOUNTS_SAMPLE_RATE) == 0) {
+            hotAccounts.offer(fromId, HOT_ACCOUNTS_SAMPLE_RATE);
+            hotAccounts.offer(toId, HOT_ACCOUNTS_SAMPLE_RATE);
+        }
+    }
+
+    public List<HotAccounts.HotAccount> getHotAccounts() {
+        return enabled ? hotAccounts.top() : List.of();
+    }
+}
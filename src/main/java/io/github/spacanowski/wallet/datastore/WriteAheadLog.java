@@ -0,0 +1,573 @@
+package io.github.spacanowski.wallet.datastore;
+
+import io.github.spacanowski.wallet.exception.WalletUnavailableException;
+import io.github.spacanowski.wallet.model.data.Operation;
+import io.github.spacanowski.wallet.model.data.TransferOrder;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+// Append-only log of wallet operations. Appends only copy the record into a memory buffer and return
+// its log sequence number (LSN), the buffer is written and forced to disk according to SyncPolicy so
+// many concurrent operations share one fsync.
+//
+// The log is split into segment files named after the LSN of their first record, so segments already
+// covered by a snapshot can be deleted as a whole.
+//
+// Record layout: length, LSN, type, amount, id, other id, CRC32 of everything after the length.
+// A transaction is a header record counting the transfer records right behind it, recovery passes them
+// on only once all of them were read.
+@Slf4j
+public class WriteAheadLog implements Closeable {
+
+    public static final String SEGMENT_PREFIX = "wallet-";
+    public static final String SEGMENT_SUFFIX = ".wal";
+
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+    private static final int MIN_RECORD_SIZE = Long.BYTES + 1 + Long.BYTES + 2 * Short.BYTES + Integer.BYTES;
+    private static final int MAX_RECORD_SIZE = 64 * 1024;
+
+    private static final Operation.Type[] TYPES = Operation.Type.values();
+    private static final byte TRANSACTION = -1;
+
+    private final Path directory;
+    private final long segmentSize;
+    private final SyncPolicy syncPolicy;
+    private final long syncIntervalNanos;
+
+    // Guards pending buffer and LSN sequence
+    private final Object appendLock = new Object();
+    private final CRC32 checksum = new CRC32();
+    private ByteBuffer pending = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private long lastLsn;
+
+    // Serializes writes to the channel, the buffer being written and the current segment are only
+    // touched while holding it
+    private final Object flushLock = new Object();
+    private ByteBuffer writing = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private FileChannel channel;
+    private long segmentStart;
+
+    // Waiters for group commit
+    private final Object durable = new Object();
+    private volatile long durableLsn;
+    // First failed write, records after the durable LSN may be lost and the log takes no more
+    private volatile IOException failure;
+
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    private WriteAheadLog(Path directory,
+                          long segmentSize,
+                          long lastLsn,
+                          SyncPolicy syncPolicy,
+                          long syncIntervalNanos) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.channel = openSegment(directory, lastLsn + 1);
+        this.segmentStart = lastLsn + 1;
+        this.lastLsn = lastLsn;
+        this.durableLsn = lastLsn;
+        this.syncPolicy = syncPolicy;
+        this.syncIntervalNanos = syncIntervalNanos;
+
+        if (syncPolicy == SyncPolicy.PER_OPERATION) {
+            flusher = null;
+        } else {
+            flusher = new Thread(this::flushPeriodically, "wallet-wal-flusher");
+            flusher.setDaemon(true);
+            flusher.start();
+        }
+    }
+
+    // Opens the log in the directory, passing every valid record after the LSN to recovery. A torn
+    // record left by a crash ends the log, it is cut off and new records go to a fresh segment.
+    public static WriteAheadLog open(Path directory,
+                                     long afterLsn,
+                                     long segmentSize,
+                                     SyncPolicy syncPolicy,
+                                     long syncInterval,
+                                     TimeUnit unit,
+                                     Consumer<Record> recovery) throws IOException {
+        Files.createDirectories(directory);
+
+        var lastLsn = Math.max(afterLsn, replay(directory, afterLsn, Long.MAX_VALUE, true, recovery));
+
+        log.info("Opened write-ahead log at LSN {}", lastLsn);
+
+        return new WriteAheadLog(directory, segmentSize, lastLsn, syncPolicy, unit.toNanos(syncInterval));
+    }
+
+    // Passes records with LSN in (afterLsn, upToLsn] to the visitor. Meant for segments closed by
+    // rotate(), so any invalid record is reported as corruption.
+    public static long replay(Path directory, long afterLsn, long upToLsn, Consumer<Record> visitor)
+            throws IOException {
+        return replay(directory, afterLsn, upToLsn, false, visitor);
+    }
+
+    // Deletes segments holding only records up to the LSN
+    public void deleteSegmentsUpTo(long lsn) throws IOException {
+        var starts = segments(directory);
+
+        // The last segment may still be written
+        for (int i = 0; i < starts.size() - 1; i++) {
+            if (starts.get(i + 1) <= lsn + 1) {
+                Files.delete(segment(directory, starts.get(i)));
+            }
+        }
+    }
+
+    public long create(String id, long initialBalance) {
+        return append(Operation.Type.CREATE, id, null, initialBalance);
+    }
+
+    public long transfer(String from, String to, long sum) {
+        return append(Operation.Type.TRANSFER, from, to, sum);
+    }
+
+    // Returns the LSN of the last leg, legs always land in one segment as they are appended together
+    public long transaction(List<TransferOrder> legs) {
+        synchronized (appendLock) {
+            var lsn = append(TRANSACTION, null, null, legs.size());
+
+            for (var leg : legs) {
+                lsn = transfer(leg.getFrom(), leg.getTo(), leg.getSum());
+            }
+
+            return lsn;
+        }
+    }
+
+    public long delete(String id) {
+        return append(Operation.Type.DELETE, id, null, 0);
+    }
+
+    public long getLastLsn() {
+        synchronized (appendLock) {
+            return lastLsn;
+        }
+    }
+
+    public long getDurableLsn() {
+        return durableLsn;
+    }
+
+    public IOException getFailure() {
+        return failure;
+    }
+
+    // Writes out pending records and starts a new segment, returning the last LSN of closed segments
+    public long rotate() throws IOException {
+        synchronized (flushLock) {
+            flush();
+
+            if (channel.position() > 0) {
+                startSegment(durableLsn + 1);
+            }
+
+            return segmentStart - 1;
+        }
+    }
+
+    // Returns once the record with the LSN is durable as far as the sync policy promises
+    public void sync(long lsn) {
+        switch (syncPolicy) {
+            case PER_OPERATION:
+                if (durableLsn < lsn) {
+                    flushUnchecked();
+                }
+                break;
+            case GROUPED:
+                awaitDurable(lsn);
+                break;
+            default:
+                // Periodic sync acknowledges before the record reaches disk
+                break;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+
+        if (flusher != null) {
+            LockSupport.unpark(flusher);
+
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        synchronized (flushLock) {
+            // Nothing is written after a failure, records behind the lost ones would leave a gap
+            if (failure == null) {
+                flush();
+            }
+
+            channel.close();
+        }
+    }
+
+    private long append(Operation.Type type, String id, String otherId, long amount) {
+        return append((byte) type.ordinal(), id, otherId, amount);
+    }
+
+    private long append(byte type, String id, String otherId, long amount) {
+        var idBytes = bytes(id);
+        var otherIdBytes = bytes(otherId);
+        var size = MIN_RECORD_SIZE + idBytes.length + otherIdBytes.length;
+
+        if (size > MAX_RECORD_SIZE) {
+            throw new IllegalArgumentException("Operation is too large for write-ahead log");
+        }
+
+        synchronized (appendLock) {
+            var lsn = ++lastLsn;
+
+            ensureCapacity(Integer.BYTES + size);
+
+            pending.putInt(size);
+
+            var start = pending.position();
+
+            pending.putLong(lsn)
+                   .put(type)
+                   .putLong(amount)
+                   .putShort((short) idBytes.length)
+                   .put(idBytes)
+                   .putShort((short) otherIdBytes.length)
+                   .put(otherIdBytes);
+
+            checksum.reset();
+            checksum.update(pending.array(), start, pending.position() - start);
+            pending.putInt((int) checksum.getValue());
+
+            return lsn;
+        }
+    }
+
+    private void ensureCapacity(int size) {
+        if (pending.remaining() < size) {
+            var grown = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + size));
+
+            pending.flip();
+            grown.put(pending);
+            pending = grown;
+        }
+    }
+
+    private void flush() throws IOException {
+        synchronized (flushLock) {
+            if (failure != null) {
+                throw new IOException("Write-ahead log failed earlier", failure);
+            }
+
+            long upTo;
+
+            synchronized (appendLock) {
+                if (pending.position() == 0) {
+                    return;
+                }
+
+                var flushed = pending;
+                pending = writing;
+                writing = flushed;
+                upTo = lastLsn;
+            }
+
+            try {
+                writing.flip();
+
+                while (writing.hasRemaining()) {
+                    channel.write(writing);
+                }
+
+                writing.clear();
+                channel.force(false);
+
+                durableLsn = upTo;
+
+                if (channel.position() >= segmentSize) {
+                    startSegment(upTo + 1);
+                }
+            } catch (IOException e) {
+                fail(e);
+                throw e;
+            }
+        }
+
+        synchronized (durable) {
+            durable.notifyAll();
+        }
+    }
+
+    private void startSegment(long start) throws IOException {
+        var next = openSegment(directory, start);
+
+        channel.close();
+        channel = next;
+        segmentStart = start;
+    }
+
+    private void flushUnchecked() {
+        try {
+            flush();
+        } catch (IOException e) {
+            throw new WalletUnavailableException(true, e);
+        }
+    }
+
+    private void flushPeriodically() {
+        while (running) {
+            LockSupport.parkNanos(syncIntervalNanos);
+
+            try {
+                flush();
+            } catch (IOException e) {
+                // Recorded by the flush, waiters were woken up to see it
+                return;
+            }
+        }
+    }
+
+    // Only the first failure is kept, it is the one that lost records
+    private void fail(IOException e) {
+        log.error("Failed to write to write-ahead log, no further changes are accepted", e);
+
+        synchronized (durable) {
+            if (failure == null) {
+                failure = e;
+            }
+
+            durable.notifyAll();
+        }
+    }
+
+    private void awaitDurable(long lsn) {
+        synchronized (durable) {
+            while (durableLsn < lsn) {
+                if (failure != null) {
+                    throw new WalletUnavailableException(true, failure);
+                }
+
+                try {
+                    durable.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for write-ahead log", e);
+                }
+            }
+        }
+    }
+
+    private static long replay(Path directory,
+                               long afterLsn,
+                               long upToLsn,
+                               boolean truncateTail,
+                               Consumer<Record> visitor) throws IOException {
+        var starts = segments(directory);
+        var lastLsn = 0L;
+
+        for (int i = 0; i < starts.size(); i++) {
+            var start = starts.get(i);
+            var last = i == starts.size() - 1;
+
+            if (start > upToLsn) {
+                break;
+            }
+
+            // Skip segments whose records all precede the requested range
+            if (!last && starts.get(i + 1) <= afterLsn + 1) {
+                continue;
+            }
+
+            try (var channel = FileChannel.open(segment(directory, start),
+                                                StandardOpenOption.READ,
+                                                StandardOpenOption.WRITE)) {
+                var input = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+                var position = 0L;
+                var end = 0L;
+
+                // Records of a transaction read so far and the number still missing
+                var transaction = new ArrayList<Record>();
+                var missing = 0L;
+
+                while (true) {
+                    var record = readRecord(input);
+
+                    if (record == null) {
+                        break;
+                    }
+
+                    position += Integer.BYTES + record.size;
+
+                    if (record.lsn > upToLsn) {
+                        return lastLsn;
+                    }
+
+                    if (record.type == null) {
+                        missing = record.amount;
+                        continue;
+                    }
+
+                    transaction.add(record);
+
+                    if (missing > 0 && --missing > 0) {
+                        continue;
+                    }
+
+                    // Complete record or transaction, a crash can not cut it off anymore
+                    end = position;
+
+                    for (var complete : transaction) {
+                        lastLsn = complete.lsn;
+
+                        if (complete.lsn > afterLsn) {
+                            visitor.accept(complete);
+                        }
+                    }
+
+                    transaction.clear();
+                }
+
+                if (end < channel.size()) {
+                    if (!last || !truncateTail) {
+                        throw new IOException("Write-ahead log segment " + start + " is corrupted");
+                    }
+
+                    log.warn("Discarding {} bytes of incomplete records at the end of write-ahead log",
+                             channel.size() - end);
+                    channel.truncate(end);
+                    channel.force(false);
+                }
+            }
+        }
+
+        return lastLsn;
+    }
+
+    private static List<Long> segments(Path directory) throws IOException {
+        try (var files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString())
+                        .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                        .map(name -> Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                                                                   name.length() - SEGMENT_SUFFIX.length())))
+                        .sorted()
+                        .collect(Collectors.toList());
+        }
+    }
+
+    private static Path segment(Path directory, long start) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, start, SEGMENT_SUFFIX));
+    }
+
+    // A segment already named after the next LSN holds no valid record, so it is started over
+    private static FileChannel openSegment(Path directory, long start) throws IOException {
+        return FileChannel.open(segment(directory, start),
+                                StandardOpenOption.CREATE,
+                                StandardOpenOption.TRUNCATE_EXISTING,
+                                StandardOpenOption.WRITE);
+    }
+
+    private static byte[] bytes(String id) {
+        return id == null ? new byte[0] : id.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static Record readRecord(DataInputStream input) throws IOException {
+        try {
+            var size = input.readInt();
+
+            if (size < MIN_RECORD_SIZE || size > MAX_RECORD_SIZE) {
+                return null;
+            }
+
+            var body = new byte[size];
+            input.readFully(body);
+
+            var buffer = ByteBuffer.wrap(body);
+            var checksum = new CRC32();
+            checksum.update(body, 0, size - Integer.BYTES);
+
+            if ((int) checksum.getValue() != buffer.getInt(size - Integer.BYTES)) {
+                return null;
+            }
+
+            var lsn = buffer.getLong();
+            var type = buffer.get();
+            var amount = buffer.getLong();
+            var id = readString(buffer);
+            var otherId = readString(buffer);
+
+            if (type == TRANSACTION) {
+                // Header only, it has no operation type of its own
+                return new Record(size, lsn, null, id, otherId, amount);
+            }
+
+            if (type < 0 || type >= TYPES.length) {
+                return null;
+            }
+
+            return new Record(size, lsn, TYPES[type], id, otherId, amount);
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        var length = buffer.getShort();
+
+        if (length == 0) {
+            return null;
+        }
+
+        var value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+
+        return value;
+    }
+
+    public enum SyncPolicy {
+
+        // Every operation forces the log before it is acknowledged
+        PER_OPERATION,
+        // Operations wait for a shared force issued at most every sync interval
+        GROUPED,
+        // Log is forced every sync interval, operations do not wait for it
+        PERIODIC
+    }
+
+    @RequiredArgsConstructor
+    @Getter
+    public static class Record {
+
+        private final int size;
+        private final long lsn;
+        private final Operation.Type type;
+        private final String id;
+        private final String otherId;
+        private final long amount;
+    }
+}
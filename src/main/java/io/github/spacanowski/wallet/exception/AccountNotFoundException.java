@@ -2,9 +2,21 @@ package io.github.spacanowski.wallet.exception;
 
 import static java.lang.String.format;
 
+// Expected outcome of a request rather than a fault, so it carries no stack trace and its message
+// is only formatted when read. Suppression costs nothing until used, it is kept so a failed refund of
+// a transfer can be attached.
 public class AccountNotFoundException extends RuntimeException {
 
+    private final String id;
+
     public AccountNotFoundException(String id) {
-        super(format("No account with id %s found", id));
+        super(null, null, true, false);
+
+        this.id = id;
+    }
+
+    @Override
+    public String getMessage() {
+        return format("No account with id %s found", id);
     }
 }
@@ -0,0 +1,21 @@
+package io.github.spacanowski.wallet.exception;
+
+import static java.lang.String.format;
+
+// Rejected by a business rule rather than a fault, so it carries no stack trace and its message is
+// only formatted when read. Suppression is kept so a failed refund of a transfer can be attached.
+public class BalanceOverflowException extends RuntimeException {
+
+    private final String id;
+
+    public BalanceOverflowException(String id) {
+        super(null, null, true, false);
+
+        this.id = id;
+    }
+
+    @Override
+    public String getMessage() {
+        return format("Account %s balance cannot hold the transferred resources", id);
+    }
+}
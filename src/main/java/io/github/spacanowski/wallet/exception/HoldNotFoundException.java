@@ -0,0 +1,20 @@
+package io.github.spacanowski.wallet.exception;
+
+import static java.lang.String.format;
+
+// Hold never existed or was already captured, released or expired. Expected, so it carries no stack trace.
+public class HoldNotFoundException extends RuntimeException {
+
+    private final String id;
+
+    public HoldNotFoundException(String id) {
+        super(null, null, false, false);
+
+        this.id = id;
+    }
+
+    @Override
+    public String getMessage() {
+        return format("No hold with id %s found", id);
+    }
+}
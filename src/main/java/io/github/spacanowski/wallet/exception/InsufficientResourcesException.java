@@ -2,9 +2,20 @@ package io.github.spacanowski.wallet.exception;
 
 import static java.lang.String.format;
 
+// Expected outcome of a request rather than a fault, so it carries no stack trace and its message
+// is only formatted when read
 public class InsufficientResourcesException extends RuntimeException {
 
+    private final String id;
+
     public InsufficientResourcesException(String id) {
-        super(format("Account %s has insufficient resources to execute operation", id));
+        super(null, null, false, false);
+
+        this.id = id;
+    }
+
+    @Override
+    public String getMessage() {
+        return format("Account %s has insufficient resources to execute operation", id);
     }
 }
@@ -0,0 +1,21 @@
+package io.github.spacanowski.wallet.exception;
+
+import static java.lang.String.format;
+
+// Scheduled transfer never existed, was cancelled or ran too long ago to be remembered. Expected, so it
+// carries no stack trace.
+public class ScheduledTransferNotFoundException extends RuntimeException {
+
+    private final String id;
+
+    public ScheduledTransferNotFoundException(String id) {
+        super(null, null, false, false);
+
+        this.id = id;
+    }
+
+    @Override
+    public String getMessage() {
+        return format("No scheduled transfer with id %s found", id);
+    }
+}
@@ -0,0 +1,21 @@
+package io.github.spacanowski.wallet.exception;
+
+import static java.lang.String.format;
+
+// Accounts of a transaction kept changing under it, nothing was applied and the client may retry.
+// Expected under contention, so it carries no stack trace.
+public class TransactionConflictException extends RuntimeException {
+
+    private final int attempts;
+
+    public TransactionConflictException(int attempts) {
+        super(null, null, false, false);
+
+        this.attempts = attempts;
+    }
+
+    @Override
+    public String getMessage() {
+        return format("Transaction not applied, its accounts changed during each of %d attempts", attempts);
+    }
+}
@@ -0,0 +1,29 @@
+package io.github.spacanowski.wallet.exception;
+
+// Write-ahead log failed and the wallet stopped accepting changes until it is restarted. Thrown before
+// a change is applied, or after it when the log failed while making it durable. An applied change stays
+// in memory but may be lost on restart, so it must not be retried as if nothing happened. Also thrown
+// for a change the wallet never took because it was stopped or the caller was interrupted waiting for it.
+public class WalletUnavailableException extends RuntimeException {
+
+    private final boolean applied;
+
+    public WalletUnavailableException(boolean applied, Throwable cause) {
+        super(applied
+                ? "Change applied but not made durable, wallet stopped accepting changes"
+                : "Wallet stopped accepting changes after its write-ahead log failed",
+              cause);
+
+        this.applied = applied;
+    }
+
+    public WalletUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+
+        this.applied = false;
+    }
+
+    public boolean isApplied() {
+        return applied;
+    }
+}
@@ -0,0 +1,25 @@
+package io.github.spacanowski.wallet.health;
+
+import com.codahale.metrics.health.HealthCheck;
+
+import io.github.spacanowski.wallet.datastore.DurableWallet;
+
+import lombok.RequiredArgsConstructor;
+
+// Unhealthy once a failed write to the log stopped the wallet taking changes, only a restart recovers
+@RequiredArgsConstructor
+public class WriteAheadLogHealthCheck extends HealthCheck {
+
+    private final DurableWallet wallet;
+
+    @Override
+    protected Result check() throws Exception {
+        var failure = wallet.getFailure();
+
+        if (failure != null) {
+            return Result.unhealthy(failure);
+        }
+
+        return Result.healthy();
+    }
+}
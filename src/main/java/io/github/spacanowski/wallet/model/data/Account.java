@@ -1,6 +1,6 @@
 package io.github.spacanowski.wallet.model.data;
 
-import java.math.BigDecimal;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -11,8 +11,16 @@ import lombok.Data;
 public class Account {
 
     private String id;
-    private BigDecimal balance;
+    // Balance in minor units, see Wallet#getScale
+    private long balance;
+    // Part of the balance reserved by holds, transfers can only spend the rest of it
+    private long held;
     private final ReadWriteLock readWriteLock;
+    // Replaced by the holder of the write lock after each change, so readers need no lock
+    private volatile BalanceSnapshot snapshot;
+    // Set once the account is striped, credits then land here without its lock and are folded into
+    // the balance by the next debit
+    private volatile LongAdder credits;
 
     public Account() {
         readWriteLock = new ReentrantReadWriteLock();
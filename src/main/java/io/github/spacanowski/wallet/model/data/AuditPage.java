@@ -0,0 +1,19 @@
+package io.github.spacanowski.wallet.model.data;
+
+import java.util.List;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+@RequiredArgsConstructor
+@Getter
+public class AuditPage {
+
+    private final List<Operation> operations;
+
+    // Cursor of the next page, the whole log up to it has been looked at
+    private final long nextCursor;
+
+    // Sequence of the next record written to the log when the page was read
+    private final long end;
+}
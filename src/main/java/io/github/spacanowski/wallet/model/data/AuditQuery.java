@@ -0,0 +1,30 @@
+package io.github.spacanowski.wallet.model.data;
+
+import java.time.Instant;
+
+import lombok.Builder;
+import lombok.Getter;
+
+@Builder(toBuilder = true)
+@Getter
+public class AuditQuery {
+
+    public static final int DEFAULT_LIMIT = 1000;
+
+    // Sequence of the first record to return
+    private final long cursor;
+
+    // Records from this sequence on are not returned, a stream fixes it when it starts so it ends
+    // however fast new records come in
+    @Builder.Default
+    private final long until = Long.MAX_VALUE;
+
+    @Builder.Default
+    private final int limit = DEFAULT_LIMIT;
+
+    // Optional filters, time range is [from, to)
+    private final String account;
+    private final Operation.Type type;
+    private final Instant from;
+    private final Instant to;
+}
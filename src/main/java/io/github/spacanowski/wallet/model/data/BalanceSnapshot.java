@@ -0,0 +1,33 @@
+package io.github.spacanowski.wallet.model.data;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+// Immutable state of an account left by its last change, published by the wallet so readers take no lock.
+// Version counts changes since the account was created or restored, engines that do not count changes
+// report 0 and their snapshots differ by balance only.
+@AllArgsConstructor
+@Getter
+@ToString
+public class BalanceSnapshot {
+
+    private final String id;
+    // Balance in minor units, see Wallet#getScale
+    private final long balance;
+    private final long version;
+    // Part of the balance reserved by holds, not available for transfers
+    private final long held;
+
+    public BalanceSnapshot(String id, long balance, long version) {
+        this(id, balance, version, 0);
+    }
+
+    public long getAvailable() {
+        return balance - held;
+    }
+
+    public BalanceSnapshot next(long balance, long held) {
+        return new BalanceSnapshot(id, balance, version + 1, held);
+    }
+}
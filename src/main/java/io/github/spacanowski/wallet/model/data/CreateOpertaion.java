@@ -1,9 +1,8 @@
 package io.github.spacanowski.wallet.model.data;
 
+import static io.github.spacanowski.wallet.model.mapper.AccountMapper.toAmount;
 import static java.lang.String.format;
 
-import java.math.BigDecimal;
-
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 
@@ -11,8 +10,10 @@ import lombok.RequiredArgsConstructor;
 @Getter
 public class CreateOpertaion implements Operation {
 
+    private final long sequence;
     private final String id;
-    private final BigDecimal initialBalance;
+    private final long initialBalance;
+    private final int scale;
 
     @Override
     public Type getType() {
@@ -21,6 +22,6 @@ public class CreateOpertaion implements Operation {
 
     @Override
     public String getAudit() {
-        return format("Created account '%s' with balance '%s'", id, initialBalance);
+        return format("Created account '%s' with balance '%s'", id, toAmount(initialBalance, scale));
     }
 }
@@ -9,6 +9,7 @@ import lombok.RequiredArgsConstructor;
 @Getter
 public class DeleteOperation implements Operation {
 
+    private final long sequence;
     private final String id;
 
     @Override
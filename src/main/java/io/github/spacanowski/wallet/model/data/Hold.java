@@ -0,0 +1,20 @@
+package io.github.spacanowski.wallet.model.data;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+
+// Funds reserved on an account for a later transfer to the receiver, released unless captured by expiry
+@RequiredArgsConstructor
+@Getter
+@ToString
+public class Hold {
+
+    private final String id;
+    private final String from;
+    private final String to;
+    // Sum in minor units, see Wallet#getScale
+    private final long sum;
+    // Epoch milliseconds
+    private final long expiresAt;
+}
@@ -2,6 +2,9 @@ package io.github.spacanowski.wallet.model.data;
 
 public interface Operation {
 
+    // Order in which operations happened, across all threads
+    long getSequence();
+
     Type getType();
     String getAudit();
 
@@ -0,0 +1,26 @@
+package io.github.spacanowski.wallet.model.data;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+
+// Transfer waiting for its execution time, or the outcome of running it once it is past
+@RequiredArgsConstructor
+@Getter
+@ToString
+public class ScheduledTransfer {
+
+    private final String id;
+    private final TransferOrder order;
+    // Epoch milliseconds
+    private final long executeAt;
+    private final TransferOutcome outcome;
+
+    public ScheduledTransfer(String id, TransferOrder order, long executeAt) {
+        this(id, order, executeAt, TransferOutcome.PENDING);
+    }
+
+    public ScheduledTransfer withOutcome(TransferOutcome outcome) {
+        return new ScheduledTransfer(id, order, executeAt, outcome);
+    }
+}
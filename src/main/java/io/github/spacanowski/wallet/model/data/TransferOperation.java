@@ -1,9 +1,8 @@
 package io.github.spacanowski.wallet.model.data;
 
+import static io.github.spacanowski.wallet.model.mapper.AccountMapper.toAmount;
 import static java.lang.String.format;
 
-import java.math.BigDecimal;
-
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 
@@ -11,9 +10,11 @@ import lombok.RequiredArgsConstructor;
 @Getter
 public class TransferOperation implements Operation {
 
+    private final long sequence;
     private final String from;
     private final String to;
-    private final BigDecimal sum;
+    private final long sum;
+    private final int scale;
 
     @Override
     public Type getType() {
@@ -22,6 +23,6 @@ public class TransferOperation implements Operation {
 
     @Override
     public String getAudit() {
-        return format("Transfered '%s' from account '%s' to account '%s'", sum, from, to);
+        return format("Transfered '%s' from account '%s' to account '%s'", toAmount(sum, scale), from, to);
     }
 }
@@ -0,0 +1,15 @@
+package io.github.spacanowski.wallet.model.data;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+@RequiredArgsConstructor
+@Getter
+@EqualsAndHashCode
+public class TransferOrder {
+
+    private final String from;
+    private final String to;
+    private final long sum;
+}
@@ -0,0 +1,53 @@
+package io.github.spacanowski.wallet.model.data;
+
+import io.github.spacanowski.wallet.exception.AccountNotFoundException;
+import io.github.spacanowski.wallet.exception.BalanceOverflowException;
+import io.github.spacanowski.wallet.exception.InsufficientResourcesException;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+@RequiredArgsConstructor
+@Getter
+public class TransferOutcome {
+
+    public static final TransferOutcome PENDING = new TransferOutcome(Status.PENDING, null);
+    public static final TransferOutcome COMPLETED = new TransferOutcome(Status.COMPLETED, null);
+
+    private final Status status;
+    private final String error;
+
+    public static TransferOutcome failed(RuntimeException exception) {
+        if (exception instanceof AccountNotFoundException) {
+            return new TransferOutcome(Status.ACCOUNT_NOT_FOUND, exception.getMessage());
+        }
+
+        if (exception instanceof InsufficientResourcesException) {
+            return new TransferOutcome(Status.INSUFFICIENT_RESOURCES, exception.getMessage());
+        }
+
+        if (exception instanceof IllegalArgumentException || exception instanceof BalanceOverflowException) {
+            return new TransferOutcome(Status.INVALID, exception.getMessage());
+        }
+
+        return new TransferOutcome(Status.FAILED, exception.getMessage());
+    }
+
+    // Order of a batch the wallet failed in the middle of, it may or may not have been applied
+    public static TransferOutcome unknown(RuntimeException exception) {
+        return new TransferOutcome(Status.UNKNOWN, exception.getMessage());
+    }
+
+    public enum Status {
+
+        // Scheduled transfer not run yet
+        PENDING,
+        COMPLETED,
+        ACCOUNT_NOT_FOUND,
+        INSUFFICIENT_RESOURCES,
+        INVALID,
+        FAILED,
+        // Check the balances before running it again, it may already have been applied
+        UNKNOWN
+    }
+}
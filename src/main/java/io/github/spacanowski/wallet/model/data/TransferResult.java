@@ -0,0 +1,13 @@
+package io.github.spacanowski.wallet.model.data;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+// Balances of both accounts right after a transfer, read while the transfer still held them
+@RequiredArgsConstructor
+@Getter
+public class TransferResult {
+
+    private final Account from;
+    private final Account to;
+}
@@ -0,0 +1,22 @@
+package io.github.spacanowski.wallet.model.input;
+
+import java.math.BigDecimal;
+
+import javax.validation.constraints.DecimalMin;
+import javax.validation.constraints.NotNull;
+
+import lombok.Data;
+
+@Data
+public class BatchTransfer {
+
+    @NotNull
+    private String from;
+
+    @NotNull
+    private String to;
+
+    @NotNull
+    @DecimalMin(value = "0.0", inclusive = false)
+    private BigDecimal sum;
+}
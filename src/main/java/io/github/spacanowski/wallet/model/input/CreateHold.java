@@ -0,0 +1,30 @@
+package io.github.spacanowski.wallet.model.input;
+
+import java.math.BigDecimal;
+
+import javax.validation.constraints.DecimalMin;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+import lombok.Data;
+
+@Data
+public class CreateHold {
+
+    public static final long DEFAULT_TTL_SECONDS = 7 * 24 * 60 * 60;
+    public static final long MAX_TTL_SECONDS = 30 * 24 * 60 * 60;
+
+    // Account the held sum is captured to
+    @NotNull
+    private String to;
+
+    @NotNull
+    @DecimalMin(value = "0.0", inclusive = false)
+    private BigDecimal sum;
+
+    // Released when not captured within this
+    @Min(1)
+    @Max(MAX_TTL_SECONDS)
+    private long ttlSeconds = DEFAULT_TTL_SECONDS;
+}
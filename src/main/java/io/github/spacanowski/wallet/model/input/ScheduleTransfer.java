@@ -0,0 +1,21 @@
+package io.github.spacanowski.wallet.model.input;
+
+import java.math.BigDecimal;
+
+import javax.validation.constraints.DecimalMin;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+import lombok.Data;
+
+@Data
+public class ScheduleTransfer {
+
+    @NotNull
+    @DecimalMin(value = "0.0", inclusive = false)
+    private BigDecimal sum;
+
+    // Epoch milliseconds, a time already passed runs the transfer right away
+    @Min(0)
+    private long executeAt;
+}
@@ -1,14 +1,45 @@
 package io.github.spacanowski.wallet.model.mapper;
 
+import static java.lang.String.format;
+
 import io.github.spacanowski.wallet.model.data.Account;
+import io.github.spacanowski.wallet.model.data.BalanceSnapshot;
 import io.github.spacanowski.wallet.model.output.AccountOutput;
 
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
 public class AccountMapper {
 
-    public static AccountOutput toOutput(Account account) {
+    public static AccountOutput toOutput(Account account, int scale) {
         return AccountOutput.builder()
                             .id(account.getId())
-                            .balance(account.getBalance())
+                            .balance(toAmount(account.getBalance(), scale))
+                            .available(toAmount(account.getBalance() - account.getHeld(), scale))
+                            .build();
+    }
+
+    public static AccountOutput toOutput(BalanceSnapshot snapshot, int scale) {
+        return AccountOutput.builder()
+                            .id(snapshot.getId())
+                            .balance(toAmount(snapshot.getBalance(), scale))
+                            .available(toAmount(snapshot.getAvailable(), scale))
                             .build();
     }
+
+    public static BigDecimal toAmount(long minorUnits, int scale) {
+        return BigDecimal.valueOf(minorUnits, scale);
+    }
+
+    public static long toMinorUnits(BigDecimal amount, int scale) {
+        try {
+            return amount.setScale(scale, RoundingMode.UNNECESSARY)
+                         .unscaledValue()
+                         .longValueExact();
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException(format("Amount %s cannot be represented with %d decimal places",
+                                                      amount.toPlainString(),
+                                                      scale));
+        }
+    }
 }
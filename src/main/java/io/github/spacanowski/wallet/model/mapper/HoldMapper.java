@@ -0,0 +1,17 @@
+package io.github.spacanowski.wallet.model.mapper;
+
+import io.github.spacanowski.wallet.model.data.Hold;
+import io.github.spacanowski.wallet.model.output.HoldOutput;
+
+public class HoldMapper {
+
+    public static HoldOutput toOutput(Hold hold, int scale) {
+        return HoldOutput.builder()
+                         .id(hold.getId())
+                         .from(hold.getFrom())
+                         .to(hold.getTo())
+                         .sum(AccountMapper.toAmount(hold.getSum(), scale))
+                         .expiresAt(hold.getExpiresAt())
+                         .build();
+    }
+}
@@ -0,0 +1,38 @@
+package io.github.spacanowski.wallet.model.mapper;
+
+import io.github.spacanowski.wallet.model.data.ScheduledTransfer;
+import io.github.spacanowski.wallet.model.data.TransferOutcome;
+import io.github.spacanowski.wallet.model.data.TransferResult;
+import io.github.spacanowski.wallet.model.input.BatchTransfer;
+import io.github.spacanowski.wallet.model.output.BatchTransferItemOutput;
+import io.github.spacanowski.wallet.model.output.ScheduledTransferOutput;
+import io.github.spacanowski.wallet.model.output.TransferOutput;
+
+public class TransferMapper {
+
+    public static TransferOutput toOutput(TransferResult result, int scale) {
+        return new TransferOutput(AccountMapper.toOutput(result.getFrom(), scale),
+                                  AccountMapper.toOutput(result.getTo(), scale));
+    }
+
+    public static BatchTransferItemOutput toOutput(BatchTransfer transfer, TransferOutcome outcome) {
+        return BatchTransferItemOutput.builder()
+                                      .from(transfer.getFrom())
+                                      .to(transfer.getTo())
+                                      .status(outcome.getStatus())
+                                      .error(outcome.getError())
+                                      .build();
+    }
+
+    public static ScheduledTransferOutput toOutput(ScheduledTransfer transfer, int scale) {
+        return ScheduledTransferOutput.builder()
+                                      .id(transfer.getId())
+                                      .from(transfer.getOrder().getFrom())
+                                      .to(transfer.getOrder().getTo())
+                                      .sum(AccountMapper.toAmount(transfer.getOrder().getSum(), scale))
+                                      .executeAt(transfer.getExecuteAt())
+                                      .status(transfer.getOutcome().getStatus())
+                                      .error(transfer.getOutcome().getError())
+                                      .build();
+    }
+}
@@ -14,5 +14,8 @@ import lombok.NoArgsConstructor;
 public class AccountOutput {
 
     private String id;
+    // Ledger balance, including the part reserved by holds
     private BigDecimal balance;
+    // Part of the balance transfers may spend
+    private BigDecimal available;
 }
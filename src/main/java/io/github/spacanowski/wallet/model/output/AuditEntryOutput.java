@@ -0,0 +1,15 @@
+package io.github.spacanowski.wallet.model.output;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Data
+public class AuditEntryOutput {
+
+    // Order in which operations happened across all threads, entries of a page may come out of it
+    private long sequence;
+    private String audit;
+}
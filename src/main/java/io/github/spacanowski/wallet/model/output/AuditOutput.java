@@ -0,0 +1,19 @@
+package io.github.spacanowski.wallet.model.output;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Data
+public class AuditOutput {
+
+    private List<AuditEntryOutput> audits;
+    private long nextCursor;
+
+    // Sequence of the next record written to the log when the page was read
+    private long end;
+}
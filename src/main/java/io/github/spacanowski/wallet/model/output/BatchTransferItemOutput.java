@@ -0,0 +1,20 @@
+package io.github.spacanowski.wallet.model.output;
+
+import io.github.spacanowski.wallet.model.data.TransferOutcome;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Data
+public class BatchTransferItemOutput {
+
+    private String from;
+    private String to;
+    private TransferOutcome.Status status;
+    private String error;
+}
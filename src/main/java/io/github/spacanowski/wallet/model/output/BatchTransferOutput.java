@@ -0,0 +1,17 @@
+package io.github.spacanowski.wallet.model.output;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Data
+public class BatchTransferOutput {
+
+    private int completed;
+    private int failed;
+    private List<BatchTransferItemOutput> results;
+}
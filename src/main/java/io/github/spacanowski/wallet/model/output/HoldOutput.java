@@ -0,0 +1,22 @@
+package io.github.spacanowski.wallet.model.output;
+
+import java.math.BigDecimal;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Data
+public class HoldOutput {
+
+    private String id;
+    private String from;
+    private String to;
+    private BigDecimal sum;
+    // Epoch milliseconds
+    private long expiresAt;
+}
@@ -0,0 +1,26 @@
+package io.github.spacanowski.wallet.model.output;
+
+import io.github.spacanowski.wallet.model.data.TransferOutcome;
+
+import java.math.BigDecimal;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Data
+public class ScheduledTransferOutput {
+
+    private String id;
+    private String from;
+    private String to;
+    private BigDecimal sum;
+    // Epoch milliseconds
+    private long executeAt;
+    private TransferOutcome.Status status;
+    private String error;
+}
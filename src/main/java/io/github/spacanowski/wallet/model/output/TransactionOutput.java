@@ -0,0 +1,16 @@
+package io.github.spacanowski.wallet.model.output;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Data
+public class TransactionOutput {
+
+    // Every account of the transaction once, in order of first appearance, with its balance afterwards
+    private List<AccountOutput> accounts;
+}
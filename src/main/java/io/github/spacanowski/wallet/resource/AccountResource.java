@@ -3,24 +3,58 @@ package io.github.spacanowski.wallet.resource;
 import static java.lang.String.format;
 
 import com.codahale.metrics.annotation.Timed;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
 
+import io.github.spacanowski.wallet.model.data.AuditQuery;
+import io.github.spacanowski.wallet.model.data.BalanceSnapshot;
+import io.github.spacanowski.wallet.model.data.Operation;
+import io.github.spacanowski.wallet.model.input.BatchTransfer;
 import io.github.spacanowski.wallet.model.input.CreateAccount;
+import io.github.spacanowski.wallet.model.input.CreateHold;
+import io.github.spacanowski.wallet.model.input.ScheduleTransfer;
 import io.github.spacanowski.wallet.model.input.Transfer;
 import io.github.spacanowski.wallet.service.AccountService;
+import io.github.spacanowski.wallet.service.TransferExecutor;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URI;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 
 import javax.inject.Inject;
 import javax.validation.Valid;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.Size;
 import javax.ws.rs.DELETE;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -31,36 +65,87 @@ import lombok.extern.slf4j.Slf4j;
 @Produces(MediaType.APPLICATION_JSON)
 public class AccountResource {
 
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
+    private static final int MAX_BATCH_SIZE = 10_000;
+    private static final int MAX_TRANSACTION_LEGS = 1_000;
+    private static final int MAX_AUDIT_PAGE_SIZE = 10_000;
+    private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 255;
+
+    private static final JsonFactory JSON = new JsonFactory().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
     private final AccountService accountService;
+    private final TransferExecutor transferExecutor;
 
     @Timed
     @GET
     @Path("/audits")
-    public Response getAuditData() {
-        log.debug("Getting audit data");
+    public Response getAuditData(@QueryParam("cursor") @Min(0) long cursor,
+                                 @QueryParam("limit")
+                                 @DefaultValue("" + AuditQuery.DEFAULT_LIMIT)
+                                 @Min(1)
+                                 @Max(MAX_AUDIT_PAGE_SIZE) int limit,
+                                 @QueryParam("account") String account,
+                                 @QueryParam("type") Operation.Type type,
+                                 @QueryParam("from") String from,
+                                 @QueryParam("to") String to,
+                                 @QueryParam("stream") boolean stream) {
+        log.debug("Getting audit data from {}", cursor);
+
+        var query = AuditQuery.builder()
+                              .cursor(cursor)
+                              .limit(limit)
+                              .account(account)
+                              .type(type)
+                              .from(instant("from", from))
+                              .to(instant("to", to))
+                              .build();
+
+        if (stream) {
+            return Response.ok()
+                           .entity((StreamingOutput) output -> streamAuditData(query, output))
+                           .build();
+        }
+
+        var result = accountService.getAuditData(query);
 
         return Response.ok()
-                       .entity(accountService.getAuditData())
+                       .entity(result.getAudits())
+                       .header(NEXT_CURSOR_HEADER, result.getNextCursor())
                        .build();
     }
 
     @Timed
     @GET
     @Path("/{id}")
-    public Response getAccount(@PathParam("id") String id) {
+    public Response getAccount(@PathParam("id") String id, @Context Request request) {
         log.debug("Getting account {}", id);
 
+        var balance = accountService.getBalance(id);
+        var tag = tag(balance);
+
+        // Unchanged since the client last read it, answered with 304 and no body
+        var notModified = request.evaluatePreconditions(tag);
+
+        if (notModified != null) {
+            return notModified.build();
+        }
+
         return Response.ok()
-                       .entity(accountService.getAccount(id))
+                       .entity(accountService.getAccount(balance))
+                       .tag(tag)
                        .build();
     }
 
     @Timed
     @POST
-    public Response createAccount(@Valid CreateAccount account) {
+    public Response createAccount(@HeaderParam(IDEMPOTENCY_KEY_HEADER)
+                                  @Size(max = MAX_IDEMPOTENCY_KEY_LENGTH) String idempotencyKey,
+                                  @Valid CreateAccount account) {
         log.debug("Creating account");
 
-        var result = accountService.createAccount(account);
+        var result = accountService.createAccount(account, idempotencyKey);
 
         return Response.created(URI.create(format("/accounts/%s", result.getId())))
                        .entity(result)
@@ -70,13 +155,135 @@ public class AccountResource {
     @Timed
     @PUT
     @Path("/{id}/transfer/{to}")
-    public Response transferResources(@PathParam("id") String id,
-                                      @PathParam("to") String toId,
-                                      @Valid Transfer transfer) {
+    public void transferResources(@Suspended AsyncResponse response,
+                                  @PathParam("id") String id,
+                                  @PathParam("to") String toId,
+                                  @HeaderParam(IDEMPOTENCY_KEY_HEADER)
+                                  @Size(max = MAX_IDEMPOTENCY_KEY_LENGTH) String idempotencyKey,
+                                  @Valid Transfer transfer) {
         log.debug("Transfering between {} and {}", id, toId);
 
+        execute(response, id, () -> accountService.transferResources(id, toId, transfer, idempotencyKey));
+    }
+
+    // Scheduled transfers live in memory only, with persistence enabled they are rejected with 400
+    @Timed
+    @POST
+    @Path("/{id}/transfer/{to}/scheduled")
+    public Response scheduleTransfer(@PathParam("id") String id,
+                                     @PathParam("to") String toId,
+                                     @HeaderParam(IDEMPOTENCY_KEY_HEADER)
+                                     @Size(max = MAX_IDEMPOTENCY_KEY_LENGTH) String idempotencyKey,
+                                     @Valid ScheduleTransfer transfer) {
+        log.debug("Scheduling transfer between {} and {}", id, toId);
+
+        var result = accountService.scheduleTransfer(id, toId, transfer, idempotencyKey);
+
+        // Accepted only, the outcome is known once it ran
+        return Response.accepted(result)
+                       .location(URI.create(format("/accounts/transfers/scheduled/%s", result.getId())))
+                       .build();
+    }
+
+    @Timed
+    @GET
+    @Path("/transfers/scheduled/{transferId}")
+    public Response getScheduledTransfer(@PathParam("transferId") String transferId) {
+        log.debug("Getting scheduled transfer {}", transferId);
+
         return Response.ok()
-                       .entity(accountService.transferResources(id, toId, transfer))
+                       .entity(accountService.getScheduledTransfer(transferId))
+                       .build();
+    }
+
+    @Timed
+    @DELETE
+    @Path("/transfers/scheduled/{transferId}")
+    public Response cancelScheduledTransfer(@PathParam("transferId") String transferId) {
+        log.debug("Cancelling scheduled transfer {}", transferId);
+
+        accountService.cancelScheduledTransfer(transferId);
+
+        return Response.noContent()
+                       .build();
+    }
+
+    // The batch is bound as a whole rather than parsed as it streams in, so a malformed order rejects the
+    // request before any order is applied. Its size limit bounds the memory this takes.
+    @Timed
+    @POST
+    @Path("/transfers/batch")
+    public void transferResources(@Suspended AsyncResponse response,
+                                  @NotEmpty
+                                  @Size(max = MAX_BATCH_SIZE)
+                                  @Valid List<BatchTransfer> transfers) {
+        log.debug("Transfering batch of {}", transfers.size());
+
+        execute(response, transfers.get(0).getFrom(), () -> accountService.transferResources(transfers));
+    }
+
+    @Timed
+    @POST
+    @Path("/transactions")
+    public void transact(@Suspended AsyncResponse response,
+                         @HeaderParam(IDEMPOTENCY_KEY_HEADER)
+                         @Size(max = MAX_IDEMPOTENCY_KEY_LENGTH) String idempotencyKey,
+                         @NotEmpty
+                         @Size(max = MAX_TRANSACTION_LEGS)
+                         @Valid List<BatchTransfer> legs) {
+        log.debug("Applying transaction of {} legs", legs.size());
+
+        execute(response, legs.get(0).getFrom(), () -> accountService.transact(legs, idempotencyKey));
+    }
+
+    // Holds live in memory only, with persistence enabled they are rejected with 400
+    @Timed
+    @POST
+    @Path("/{id}/holds")
+    public Response holdResources(@PathParam("id") String id,
+                                  @HeaderParam(IDEMPOTENCY_KEY_HEADER)
+                                  @Size(max = MAX_IDEMPOTENCY_KEY_LENGTH) String idempotencyKey,
+                                  @Valid CreateHold hold) {
+        log.debug("Holding resources of {} for {}", id, hold.getTo());
+
+        var result = accountService.holdResources(id, hold, idempotencyKey);
+
+        return Response.created(URI.create(format("/accounts/holds/%s", result.getId())))
+                       .entity(result)
+                       .build();
+    }
+
+    @Timed
+    @POST
+    @Path("/holds/{holdId}/capture")
+    public void captureHold(@Suspended AsyncResponse response,
+                            @PathParam("holdId") String holdId,
+                            @Valid Transfer capture) {
+        log.debug("Capturing hold {}", holdId);
+
+        execute(response, holdId, () -> accountService.captureHold(holdId, capture));
+    }
+
+    @Timed
+    @DELETE
+    @Path("/holds/{holdId}")
+    public Response releaseHold(@PathParam("holdId") String holdId) {
+        log.debug("Releasing hold {}", holdId);
+
+        return Response.ok()
+                       .entity(accountService.releaseHold(holdId))
+                       .build();
+    }
+
+    @Timed
+    @PUT
+    @Path("/{id}/striped")
+    public Response stripeAccount(@PathParam("id") String id) {
+        log.debug("Striping account {}", id);
+
+        accountService.stripeAccount(id);
+
+        return Response.noContent()
                        .build();
     }
 
@@ -91,4 +298,92 @@ public class AccountResource {
         return Response.noContent()
                        .build();
     }
+
+    // Runs the transfer on the executor partition of the account, the server thread is released meanwhile
+    private void execute(AsyncResponse response, String account, Supplier<Object> transfer) {
+        var submitted = new AtomicReference<CompletableFuture<Object>>();
+
+        if (transferExecutor.isAsync()) {
+            // A transfer still queued is cancelled and never applied. One already running may have been
+            // applied, so the request keeps waiting for its outcome rather than being told it failed.
+            response.setTimeoutHandler(timedOut -> {
+                var pending = submitted.get();
+
+                if (pending != null && pending.cancel(false)) {
+                    timedOut.resume(new RejectedExecutionException("Transfer timed out in queue"));
+                } else {
+                    timedOut.setTimeout(transferExecutor.getTimeoutNanos(), TimeUnit.NANOSECONDS);
+                }
+            });
+            response.setTimeout(transferExecutor.getTimeoutNanos(), TimeUnit.NANOSECONDS);
+        }
+
+        var pending = transferExecutor.submit(account, transfer).toCompletableFuture();
+
+        submitted.set(pending);
+
+        pending.whenComplete((result, error) -> {
+            if (error == null) {
+                response.resume(Response.ok().entity(result).build());
+            } else if (!(error instanceof CancellationException)) {
+                // A cancelled transfer is answered by the timeout handler that cancelled it
+                response.resume(error instanceof CompletionException ? error.getCause() : error);
+            }
+        });
+    }
+
+    // ISO-8601 instant, a malformed one is answered with 400
+    private static Instant instant(String name, String value) {
+        if (value == null) {
+            return null;
+        }
+
+        try {
+            return Instant.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException(format("Parameter '%s' is not an ISO-8601 instant", name));
+        }
+    }
+
+    // Balance is part of the tag, so an account deleted and restored with another balance never matches.
+    // Holds publish a new version, so the available balance is covered as well.
+    private static EntityTag tag(BalanceSnapshot balance) {
+        return new EntityTag(balance.getVersion() + "-" + balance.getBalance());
+    }
+
+    // Writes all matching records page by page, so the response never holds more than one page. Records
+    // written after the first page was read are left out, so the stream ends under constant writes.
+    private void streamAuditData(AuditQuery query, OutputStream output) throws IOException {
+        try (var generator = JSON.createGenerator(output)) {
+            generator.writeStartArray();
+
+            var page = query;
+
+            while (true) {
+                var result = accountService.getAuditData(page);
+
+                for (var entry : result.getAudits()) {
+                    generator.writeStartObject();
+                    generator.writeNumberField("sequence", entry.getSequence());
+                    generator.writeStringField("audit", entry.getAudit());
+                    generator.writeEndObject();
+                }
+
+                generator.flush();
+
+                var until = Math.min(page.getUntil(), result.getEnd());
+
+                if (result.getAudits().size() < page.getLimit() || result.getNextCursor() >= until) {
+                    break;
+                }
+
+                page = page.toBuilder()
+                           .cursor(result.getNextCursor())
+                           .until(until)
+                           .build();
+            }
+
+            generator.writeEndArray();
+        }
+    }
 }
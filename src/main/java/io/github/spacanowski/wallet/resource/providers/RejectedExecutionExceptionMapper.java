@@ -0,0 +1,24 @@
+package io.github.spacanowski.wallet.resource.providers;
+
+import io.github.spacanowski.wallet.model.output.ErrorOutput;
+
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.ext.ExceptionMapper;
+import javax.ws.rs.ext.Provider;
+
+// Transfer queue of the account is full, the client should back off and retry
+@Provider
+public class RejectedExecutionExceptionMapper implements ExceptionMapper<RejectedExecutionException> {
+
+    @Override
+    public Response toResponse(RejectedExecutionException exception) {
+        return Response.status(Status.SERVICE_UNAVAILABLE)
+                       .entity(new ErrorOutput("Too many pending transfers, retry later"))
+                       .type(MediaType.APPLICATION_JSON)
+                       .build();
+    }
+}
@@ -0,0 +1,23 @@
+package io.github.spacanowski.wallet.resource.providers;
+
+import io.github.spacanowski.wallet.exception.WalletUnavailableException;
+import io.github.spacanowski.wallet.model.output.ErrorOutput;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.ext.ExceptionMapper;
+import javax.ws.rs.ext.Provider;
+
+// Wallet is fail-stopped or shutting down, it takes changes again only once restarted
+@Provider
+public class WalletUnavailableExceptionMapper implements ExceptionMapper<WalletUnavailableException> {
+
+    @Override
+    public Response toResponse(WalletUnavailableException exception) {
+        return Response.status(Status.SERVICE_UNAVAILABLE)
+                       .entity(new ErrorOutput(exception.getMessage()))
+                       .type(MediaType.APPLICATION_JSON)
+                       .build();
+    }
+}
@@ -1,15 +1,36 @@
 package io.github.spacanowski.wallet.service;
 
+import static io.github.spacanowski.wallet.model.mapper.AccountMapper.toMinorUnits;
 import static io.github.spacanowski.wallet.model.mapper.AccountMapper.toOutput;
 
 import io.github.spacanowski.wallet.datastore.Wallet;
 import io.github.spacanowski.wallet.exception.AccountNotFoundException;
+import io.github.spacanowski.wallet.exception.ScheduledTransferNotFoundException;
+import io.github.spacanowski.wallet.model.data.AuditQuery;
+import io.github.spacanowski.wallet.model.data.BalanceSnapshot;
+import io.github.spacanowski.wallet.model.data.TransferOrder;
+import io.github.spacanowski.wallet.model.data.TransferOutcome;
+import io.github.spacanowski.wallet.model.input.BatchTransfer;
 import io.github.spacanowski.wallet.model.input.CreateAccount;
+import io.github.spacanowski.wallet.model.input.CreateHold;
+import io.github.spacanowski.wallet.model.input.ScheduleTransfer;
 import io.github.spacanowski.wallet.model.input.Transfer;
+import io.github.spacanowski.wallet.model.mapper.HoldMapper;
+import io.github.spacanowski.wallet.model.mapper.TransferMapper;
 import io.github.spacanowski.wallet.model.output.AccountOutput;
+import io.github.spacanowski.wallet.model.output.AuditEntryOutput;
+import io.github.spacanowski.wallet.model.output.AuditOutput;
+import io.github.spacanowski.wallet.model.output.BatchTransferItemOutput;
+import io.github.spacanowski.wallet.model.output.BatchTransferOutput;
+import io.github.spacanowski.wallet.model.output.HoldOutput;
+import io.github.spacanowski.wallet.model.output.ScheduledTransferOutput;
+import io.github.spacanowski.wallet.model.output.TransactionOutput;
 import io.github.spacanowski.wallet.model.output.TransferOutput;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import javax.inject.Inject;
 
@@ -19,37 +40,247 @@ import lombok.RequiredArgsConstructor;
 public class AccountService {
 
     private final Wallet wallet;
+    private final IdempotencyCache idempotency;
+    private final TransferScheduler scheduler;
 
     public AccountOutput getAccount(String id) {
-        var result = wallet.get(id);
+        return getAccount(getBalance(id));
+    }
+
+    public AccountOutput getAccount(BalanceSnapshot balance) {
+        return toOutput(balance, wallet.getScale());
+    }
+
+    // Published balance, served without locking the account
+    public BalanceSnapshot getBalance(String id) {
+        var result = wallet.balance(id);
 
         if (result == null) {
             throw new AccountNotFoundException(id);
         }
 
-        return toOutput(result);
+        return result;
     }
 
     public AccountOutput createAccount(CreateAccount account) {
-        return toOutput(wallet.create(account.getBalance()));
+        return createAccount(account, null);
+    }
+
+    // A request repeated with the same idempotency key gets the account created by the first one
+    public AccountOutput createAccount(CreateAccount account, String idempotencyKey) {
+        var scale = wallet.getScale();
+        var balance = toMinorUnits(account.getBalance(), scale);
+
+        if (idempotencyKey == null) {
+            return toOutput(wallet.create(balance), scale);
+        }
+
+        return idempotency.execute("create:" + idempotencyKey,
+                                   balance,
+                                   () -> toOutput(wallet.create(balance), scale));
     }
 
     public TransferOutput transferResources(String from, String to, Transfer transfer) {
+        return transferResources(from, to, transfer, null);
+    }
+
+    // A request repeated with the same idempotency key gets the result of the first one, not a second transfer
+    public TransferOutput transferResources(String from, String to, Transfer transfer, String idempotencyKey) {
         if (from.equals(to)) {
             throw new IllegalArgumentException("Cannot transfer to same account");
         }
 
-        wallet.transfer(from, to, transfer.getSum());
+        var scale = wallet.getScale();
+        var sum = toMinorUnits(transfer.getSum(), scale);
+
+        if (idempotencyKey == null) {
+            return transfer(from, to, sum, scale);
+        }
+
+        return idempotency.execute("transfer:" + idempotencyKey,
+                                   List.of(from, to, sum),
+                                   () -> transfer(from, to, sum, scale));
+    }
+
+    // Checks are repeated when the transfer runs, accounts are only looked up here to reject a transfer early
+    public ScheduledTransferOutput scheduleTransfer(String from,
+                                                    String to,
+                                                    ScheduleTransfer transfer,
+                                                    String idempotencyKey) {
+        if (from.equals(to)) {
+            throw new IllegalArgumentException("Cannot transfer to same account");
+        }
+
+        getBalance(from);
+        getBalance(to);
+
+        var scale = wallet.getScale();
+        var order = new TransferOrder(from, to, toMinorUnits(transfer.getSum(), scale));
+
+        if (idempotencyKey == null) {
+            return schedule(order, transfer.getExecuteAt(), scale);
+        }
+
+        return idempotency.execute("schedule:" + idempotencyKey,
+                                   List.of(order, transfer.getExecuteAt()),
+                                   () -> schedule(order, transfer.getExecuteAt(), scale));
+    }
+
+    public ScheduledTransferOutput getScheduledTransfer(String id) {
+        var result = scheduler.get(id);
 
-        return new TransferOutput(toOutput(wallet.get(from)),
-                                  toOutput(wallet.get(to)));
+        if (result == null) {
+            throw new ScheduledTransferNotFoundException(id);
+        }
+
+        return TransferMapper.toOutput(result, wallet.getScale());
+    }
+
+    // Only pending transfers can be cancelled
+    public void cancelScheduledTransfer(String id) {
+        if (!scheduler.cancel(id)) {
+            throw new ScheduledTransferNotFoundException(id);
+        }
+    }
+
+    public BatchTransferOutput transferResources(List<BatchTransfer> transfers) {
+        var scale = wallet.getScale();
+        var outcomes = new TransferOutcome[transfers.size()];
+        var orders = new ArrayList<TransferOrder>(transfers.size());
+        var positions = new int[transfers.size()];
+
+        for (int i = 0; i < transfers.size(); i++) {
+            var transfer = transfers.get(i);
+
+            try {
+                if (transfer.getFrom().equals(transfer.getTo())) {
+                    throw new IllegalArgumentException("Cannot transfer to same account");
+                }
+
+                positions[orders.size()] = i;
+                orders.add(new TransferOrder(transfer.getFrom(),
+                                             transfer.getTo(),
+                                             toMinorUnits(transfer.getSum(), scale)));
+            } catch (IllegalArgumentException e) {
+                outcomes[i] = TransferOutcome.failed(e);
+            }
+        }
+
+        var applied = wallet.transfer(orders);
+
+        for (int i = 0; i < applied.size(); i++) {
+            outcomes[positions[i]] = applied.get(i);
+        }
+
+        var results = new ArrayList<BatchTransferItemOutput>(transfers.size());
+        var completed = 0;
+
+        for (int i = 0; i < outcomes.length; i++) {
+            if (outcomes[i].getStatus() == TransferOutcome.Status.COMPLETED) {
+                completed++;
+            }
+
+            results.add(TransferMapper.toOutput(transfers.get(i), outcomes[i]));
+        }
+
+        return new BatchTransferOutput(completed, transfers.size() - completed, results);
+    }
+
+    public TransactionOutput transact(List<BatchTransfer> legs) {
+        return transact(legs, null);
+    }
+
+    // All legs or none of them. A request repeated with the same idempotency key gets the result of the first one.
+    public TransactionOutput transact(List<BatchTransfer> legs, String idempotencyKey) {
+        var scale = wallet.getScale();
+        var orders = new ArrayList<TransferOrder>(legs.size());
+
+        for (var leg : legs) {
+            if (leg.getFrom().equals(leg.getTo())) {
+                throw new IllegalArgumentException("Cannot transfer to same account");
+            }
+
+            orders.add(new TransferOrder(leg.getFrom(), leg.getTo(), toMinorUnits(leg.getSum(), scale)));
+        }
+
+        if (idempotencyKey == null) {
+            return transaction(orders, scale);
+        }
+
+        return idempotency.execute("transaction:" + idempotencyKey, orders, () -> transaction(orders, scale));
+    }
+
+    public HoldOutput holdResources(String from, CreateHold hold) {
+        return holdResources(from, hold, null);
+    }
+
+    // A request repeated with the same idempotency key gets the hold placed by the first one
+    public HoldOutput holdResources(String from, CreateHold hold, String idempotencyKey) {
+        if (from.equals(hold.getTo())) {
+            throw new IllegalArgumentException("Cannot hold for transfer to same account");
+        }
+
+        var scale = wallet.getScale();
+        var sum = toMinorUnits(hold.getSum(), scale);
+        var ttl = TimeUnit.SECONDS.toMillis(hold.getTtlSeconds());
+
+        if (idempotencyKey == null) {
+            return hold(from, hold.getTo(), sum, ttl, scale);
+        }
+
+        return idempotency.execute("hold:" + idempotencyKey,
+                                   List.of(from, hold.getTo(), sum, ttl),
+                                   () -> hold(from, hold.getTo(), sum, ttl, scale));
+    }
+
+    public TransferOutput captureHold(String holdId, Transfer capture) {
+        var scale = wallet.getScale();
+
+        return TransferMapper.toOutput(wallet.capture(holdId, toMinorUnits(capture.getSum(), scale)), scale);
+    }
+
+    public AccountOutput releaseHold(String holdId) {
+        return toOutput(wallet.release(holdId), wallet.getScale());
+    }
+
+    // For accounts receiving from many others, credits then stop waiting on each other
+    public void stripeAccount(String id) {
+        if (!wallet.stripe(id)) {
+            throw new AccountNotFoundException(id);
+        }
     }
 
     public void deleteAccount(String id) {
         wallet.delete(id);
     }
 
-    public List<String> getAuditData() {
-        return wallet.getOperations();
+    public AuditOutput getAuditData(AuditQuery query) {
+        var page = wallet.getOperations(query);
+
+        return new AuditOutput(page.getOperations()
+                                   .stream()
+                                   .map(operation -> new AuditEntryOutput(operation.getSequence(), operation.getAudit()))
+                                   .collect(Collectors.toList()),
+                               page.getNextCursor(),
+                               page.getEnd());
+    }
+
+    private TransferOutput transfer(String from, String to, long sum, int scale) {
+        return TransferMapper.toOutput(wallet.transfer(from, to, sum), scale);
+    }
+
+    private ScheduledTransferOutput schedule(TransferOrder order, long executeAt, int scale) {
+        return TransferMapper.toOutput(scheduler.schedule(order, executeAt), scale);
+    }
+
+    private HoldOutput hold(String from, String to, long sum, long ttl, int scale) {
+        return HoldMapper.toOutput(wallet.hold(from, to, sum, System.currentTimeMillis() + ttl), scale);
+    }
+
+    private TransactionOutput transaction(List<TransferOrder> orders, int scale) {
+        return new TransactionOutput(wallet.transact(orders)
+                                           .stream()
+                                           .map(account -> toOutput(account, scale))
+                                           .collect(Collectors.toList()));
     }
 }
@@ -0,0 +1,62 @@
+package io.github.spacanowski.wallet.service;
+
+import io.dropwizard.lifecycle.Managed;
+import io.github.spacanowski.wallet.datastore.Wallet;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import lombok.extern.slf4j.Slf4j;
+
+// Releases expired holds of the wallet from one timer thread. Each run advances the timing wheel of the
+// wallet to the current time, so the cost of a run depends on holds expiring rather than holds pending.
+@Slf4j
+public class HoldExpiry implements Managed {
+
+    private final Wallet wallet;
+    private final long intervalNanos;
+
+    private ScheduledExecutorService timer;
+
+    public HoldExpiry(Wallet wallet, long interval, TimeUnit unit) {
+        this.wallet = wallet;
+        this.intervalNanos = unit.toNanos(interval);
+    }
+
+    // Returns the number of holds released
+    public int expire() {
+        try {
+            var expired = wallet.expireHolds(System.currentTimeMillis());
+
+            if (expired > 0) {
+                log.debug("Released {} expired holds", expired);
+            }
+
+            return expired;
+        } catch (RuntimeException e) {
+            // Holds left on the wheel are expired by the next run
+            log.error("Failed to release expired holds", e);
+
+            return 0;
+        }
+    }
+
+    @Override
+    public void start() {
+        timer = Executors.newSingleThreadScheduledExecutor(task -> {
+            var thread = new Thread(task, "hold-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleWithFixedDelay(this::expire, intervalNanos, intervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void stop() throws InterruptedException {
+        if (timer != null) {
+            timer.shutdown();
+            timer.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package io.github.spacanowski.wallet.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.github.spacanowski.wallet.exception.WalletUnavailableException;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+// Results of requests sent with an idempotency key, a retried request gets the stored result instead
+// of being applied again. Bounded by size with W-TinyLFU eviction and by time since the first request.
+// Requests still running are kept apart from the cache and moved into it once complete, so eviction
+// never drops a key a concurrent duplicate has to wait for.
+@Slf4j
+public class IdempotencyCache {
+
+    public static final long DEFAULT_MAXIMUM_SIZE = 1_000_000;
+    public static final long DEFAULT_EXPIRY_HOURS = 24;
+
+    private final Cache<String, Result> results;
+    private final ConcurrentHashMap<String, CompletableFuture<Result>> running = new ConcurrentHashMap<>();
+
+    public IdempotencyCache() {
+        this(DEFAULT_MAXIMUM_SIZE, DEFAULT_EXPIRY_HOURS, TimeUnit.HOURS);
+    }
+
+    public IdempotencyCache(long maximumSize, long expiry, TimeUnit unit) {
+        this.results = Caffeine.newBuilder()
+                               .maximumSize(maximumSize)
+                               .expireAfterWrite(expiry, unit)
+                               .build();
+    }
+
+    // Runs the operation once per key. A concurrent request with the same key waits for the first one,
+    // failed operations are not stored since they changed nothing and may be retried. A change applied
+    // but not made durable did change the wallet, its failure is stored and replayed instead.
+    public <T> T execute(String key, Object request, Supplier<T> operation) {
+        var stored = results.getIfPresent(key);
+
+        if (stored != null) {
+            return replay(key, stored, request);
+        }
+
+        var pending = new CompletableFuture<Result>();
+        var existing = running.putIfAbsent(key, pending);
+
+        if (existing != null) {
+            return replay(key, await(existing), request);
+        }
+
+        try {
+            // Completed after the lookup above, it was stored before it stopped running
+            stored = results.getIfPresent(key);
+
+            if (stored != null) {
+                pending.complete(stored);
+
+                return replay(key, stored, request);
+            }
+
+            var response = operation.get();
+            var result = new Result(request, response, null);
+
+            results.put(key, result);
+            pending.complete(result);
+
+            return response;
+        } catch (WalletUnavailableException e) {
+            if (e.isApplied()) {
+                var result = new Result(request, null, e);
+
+                results.put(key, result);
+                pending.complete(result);
+            } else {
+                pending.completeExceptionally(e);
+            }
+
+            throw e;
+        } catch (RuntimeException e) {
+            pending.completeExceptionally(e);
+            throw e;
+        } finally {
+            running.remove(key, pending);
+        }
+    }
+
+    public long size() {
+        return results.estimatedSize() + running.size();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T replay(String key, Result result, Object request) {
+        log.debug("Replaying request with idempotency key {}", key);
+
+        if (!Objects.equals(result.request, request)) {
+            throw new IllegalArgumentException("Idempotency key already used for a different request");
+        }
+
+        if (result.failure != null) {
+            throw result.failure;
+        }
+
+        return (T) result.response;
+    }
+
+    private Result await(CompletableFuture<Result> result) {
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            // Same failure as the first request, which was not stored
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+
+            throw e;
+        }
+    }
+
+    @RequiredArgsConstructor
+    private static class Result {
+
+        private final Object request;
+        private final Object response;
+        private final RuntimeException failure;
+    }
+}
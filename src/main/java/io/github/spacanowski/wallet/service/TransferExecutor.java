@@ -0,0 +1,159 @@
+package io.github.spacanowski.wallet.service;
+
+import io.dropwizard.lifecycle.Managed;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+// Runs transfers off the server threads, so requests blocked on a hot account do not exhaust the
+// server pool. Transfers are partitioned by source account onto small executors with bounded queues,
+// a hot account backs up only its own partition and a full queue rejects new transfers right away.
+// A transfer still queued once its timeout passed, or cancelled meanwhile, never reaches the wallet.
+// Without partitions transfers run on the calling thread.
+@Slf4j
+public class TransferExecutor implements Managed {
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    private final ThreadPoolExecutor[] partitions;
+
+    // How long a request may wait for its transfer
+    @Getter
+    private final long timeoutNanos;
+
+    public TransferExecutor() {
+        this(0, 0, 0, 0, TimeUnit.NANOSECONDS);
+    }
+
+    public TransferExecutor(int partitionCount, int threadsPerPartition, int queueCapacity, long timeout, TimeUnit unit) {
+        this.partitions = new ThreadPoolExecutor[partitionCount];
+        this.timeoutNanos = unit.toNanos(timeout);
+
+        for (int i = 0; i < partitionCount; i++) {
+            var partition = i;
+
+            partitions[i] = new ThreadPoolExecutor(threadsPerPartition,
+                                                   threadsPerPartition,
+                                                   0,
+                                                   TimeUnit.MILLISECONDS,
+                                                   new ArrayBlockingQueue<>(queueCapacity),
+                                                   task -> {
+                                                       var thread = new Thread(task, "transfer-" + partition);
+                                                       thread.setDaemon(true);
+                                                       return thread;
+                                                   },
+                                                   new ThreadPoolExecutor.AbortPolicy());
+        }
+    }
+
+    public boolean isAsync() {
+        return partitions.length > 0;
+    }
+
+    // Completes exceptionally with RejectedExecutionException when the partition queue is full or the
+    // transfer waited in it past the timeout. Cancelling the future succeeds only before the transfer ran.
+    public <T> CompletionStage<T> submit(String key, Supplier<T> transfer) {
+        if (!isAsync()) {
+            try {
+                return CompletableFuture.completedFuture(transfer.get());
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+
+        var partition = partitions[Math.floorMod(key.hashCode(), partitions.length)];
+        var task = new Transfer<>(transfer, partition, timeoutNanos > 0 ? System.nanoTime() + timeoutNanos : 0);
+
+        try {
+            partition.execute(task);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        return task;
+    }
+
+    // Transfers waiting in all partition queues
+    public long getQueueDepth() {
+        long depth = 0;
+
+        for (var partition : partitions) {
+            depth += partition.getQueue().size();
+        }
+
+        return depth;
+    }
+
+    @Override
+    public void start() {
+        // Partition threads are started with the first transfer
+    }
+
+    @Override
+    public void stop() throws InterruptedException {
+        for (var partition : partitions) {
+            partition.shutdown();
+        }
+
+        for (var partition : partitions) {
+            if (!partition.awaitTermination(30, TimeUnit.SECONDS)) {
+                log.warn("Transfers still running after shutdown");
+            }
+        }
+    }
+
+    // Whoever claims the transfer first either runs it or cancels it, so a cancelled transfer never
+    // reaches the wallet and one already running is never reported as cancelled
+    private static class Transfer<T> extends CompletableFuture<T> implements Runnable {
+
+        private final Supplier<T> transfer;
+        private final ThreadPoolExecutor partition;
+        private final long deadline;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        private Transfer(Supplier<T> transfer, ThreadPoolExecutor partition, long deadline) {
+            this.transfer = transfer;
+            this.partition = partition;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public void run() {
+            if (!claimed.compareAndSet(false, true)) {
+                return;
+            }
+
+            if (deadline != 0 && System.nanoTime() - deadline > 0) {
+                completeExceptionally(new RejectedExecutionException("Transfer waited in queue past its timeout"));
+                return;
+            }
+
+            try {
+                complete(transfer.get());
+            } catch (Throwable e) {
+                completeExceptionally(e);
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            if (!claimed.compareAndSet(false, true)) {
+                return false;
+            }
+
+            // Frees its place in the partition queue right away
+            partition.remove(this);
+
+            return super.cancel(mayInterruptIfRunning);
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package io.github.spacanowski.wallet.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.dropwizard.lifecycle.Managed;
+import io.github.spacanowski.wallet.datastore.DurableWallet;
+import io.github.spacanowski.wallet.datastore.TimingWheel;
+import io.github.spacanowski.wallet.datastore.Wallet;
+import io.github.spacanowski.wallet.model.data.ScheduledTransfer;
+import io.github.spacanowski.wallet.model.data.TransferOrder;
+import io.github.spacanowski.wallet.model.data.TransferOutcome;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import lombok.extern.slf4j.Slf4j;
+
+// Runs transfers at their execution time. Pending transfers wait on a hierarchical timing wheel, so each
+// of millions costs O(1) to schedule or cancel. Transfers falling due together are split by sender into
+// partitions run in parallel, and each partition goes to the wallet as batches, so a burst of due transfers
+// takes a lock per account and batch rather than a task per transfer. A run starts only once the previous
+// one finished, transfers due meanwhile wait on the wheel and go in the next, larger, batches.
+//
+// Pending transfers live in memory only. They are not journaled, so with a durable wallet scheduling is
+// rejected rather than accepting transfers a restart would silently drop.
+@Slf4j
+public class TransferScheduler implements Managed {
+
+    public static final long DEFAULT_TICK_MILLIS = 100;
+    public static final int DEFAULT_BATCH_SIZE = 1_000;
+    public static final long DEFAULT_MAXIMUM_OUTCOMES = 1_000_000;
+    public static final long DEFAULT_OUTCOME_EXPIRY_HOURS = 24;
+
+    private final Wallet wallet;
+    private final long tickMillis;
+    private final int parallelism;
+    private final int batchSize;
+    private final TimingWheel<ScheduledTransfer> wheel;
+    private final ConcurrentHashMap<String, TimingWheel.Timeout<ScheduledTransfer>> pending = new ConcurrentHashMap<>();
+    // Transfers already run with their outcomes, for clients asking after them
+    private final Cache<String, ScheduledTransfer> outcomes;
+
+    private ScheduledExecutorService timer;
+    private ExecutorService workers;
+
+    public TransferScheduler(Wallet wallet) {
+        this(wallet,
+             DEFAULT_TICK_MILLIS,
+             Runtime.getRuntime().availableProcessors(),
+             DEFAULT_BATCH_SIZE,
+             DEFAULT_MAXIMUM_OUTCOMES,
+             DEFAULT_OUTCOME_EXPIRY_HOURS,
+             TimeUnit.HOURS);
+    }
+
+    public TransferScheduler(Wallet wallet,
+                             long tickMillis,
+                             int parallelism,
+                             int batchSize,
+                             long maximumOutcomes,
+                             long outcomeExpiry,
+                             TimeUnit unit) {
+        this.wallet = wallet;
+        this.tickMillis = tickMillis;
+        this.parallelism = parallelism;
+        this.batchSize = batchSize;
+        this.wheel = new TimingWheel<>(tickMillis, System.currentTimeMillis());
+        this.outcomes = Caffeine.newBuilder()
+                                .maximumSize(maximumOutcomes)
+                                .expireAfterWrite(outcomeExpiry, unit)
+                                .build();
+    }
+
+    public ScheduledTransfer schedule(TransferOrder order, long executeAt) {
+        if (wallet instanceof DurableWallet) {
+            throw new IllegalArgumentException("Scheduled transfers are not supported with persistence enabled");
+        }
+
+        var transfer = new ScheduledTransfer(UUID.randomUUID().toString(), order, executeAt);
+
+        // Under the monitor of the wheel, so no run takes the transfer off the wheel before it can be found here
+        synchronized (wheel) {
+            pending.put(transfer.getId(), wheel.schedule(transfer, executeAt));
+        }
+
+        return transfer;
+    }
+
+    // Returns false when the transfer is not pending any more
+    public boolean cancel(String id) {
+        var timeout = pending.remove(id);
+
+        if (timeout == null) {
+            return false;
+        }
+
+        wheel.cancel(timeout);
+
+        return true;
+    }
+
+    // Pending transfer, or the one run with its outcome. Null for transfers not known or run too long ago.
+    public ScheduledTransfer get(String id) {
+        var timeout = pending.get(id);
+
+        return timeout != null ? timeout.getValue() : outcomes.getIfPresent(id);
+    }
+
+    public long getPendingCount() {
+        return pending.size();
+    }
+
+    // Runs transfers due by now, in epoch milliseconds, and returns how many. A burst is taken off the wheel
+    // a chunk at a time, each chunk a batch for every partition, so it never sits in memory at once and
+    // scheduling and cancelling only wait for the wheel between chunks. Chunks follow the ticks of the wheel,
+    // transfers of a sender due within the same tick are ordered only inside a chunk.
+    public int runDue(long now) {
+        var chunk = (int) Math.min((long) batchSize * parallelism, Integer.MAX_VALUE);
+        var run = 0;
+
+        while (true) {
+            var due = wheel.advance(now, chunk);
+
+            run += run(due);
+
+            if (due.size() < chunk) {
+                return run;
+            }
+        }
+    }
+
+    @Override
+    public void start() {
+        var threads = new AtomicInteger();
+
+        workers = Executors.newFixedThreadPool(parallelism, task -> {
+            var thread = new Thread(task, "scheduled-transfer-" + threads.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer = Executors.newSingleThreadScheduledExecutor(task -> {
+            var thread = new Thread(task, "transfer-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleWithFixedDelay(this::runDueSafely, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() throws InterruptedException {
+        if (timer != null) {
+            // A running batch is not interrupted, its transfers are applied and their outcomes recorded
+            timer.shutdown();
+            timer.awaitTermination(1, TimeUnit.MINUTES);
+            workers.shutdown();
+            workers.awaitTermination(1, TimeUnit.MINUTES);
+        }
+
+        if (!pending.isEmpty()) {
+            log.warn("Stopped with {} scheduled transfers not run", pending.size());
+        }
+    }
+
+    private int run(List<ScheduledTransfer> due) {
+        if (due.isEmpty()) {
+            return 0;
+        }
+
+        var partitions = new ArrayList<List<ScheduledTransfer>>(parallelism);
+
+        for (int i = 0; i < parallelism; i++) {
+            partitions.add(new ArrayList<>());
+        }
+
+        for (var transfer : due) {
+            // Cancelled since it was taken off the wheel
+            if (pending.remove(transfer.getId()) == null) {
+                continue;
+            }
+
+            // Still reported pending until its outcome is known
+            outcomes.put(transfer.getId(), transfer);
+
+            var from = transfer.getOrder().getFrom();
+
+            partitions.get(Math.floorMod(from.hashCode(), parallelism)).add(transfer);
+        }
+
+        var run = new AtomicInteger();
+        var runs = partitions.stream()
+                             .filter(partition -> !partition.isEmpty())
+                             .map(partition -> CompletableFuture.runAsync(() -> run.addAndGet(execute(partition)), executor()))
+                             .toArray(CompletableFuture[]::new);
+
+        CompletableFuture.allOf(runs).join();
+
+        log.debug("Ran {} scheduled transfers in {} partitions", run.get(), parallelism);
+
+        return run.get();
+    }
+
+    // Transfers of one sender run in order of their execution time
+    private int execute(List<ScheduledTransfer> partition) {
+        partition.sort(Comparator.comparingLong(ScheduledTransfer::getExecuteAt));
+
+        for (int start = 0; start < partition.size(); start += batchSize) {
+            var batch = partition.subList(start, Math.min(start + batchSize, partition.size()));
+            var orders = new ArrayList<TransferOrder>(batch.size());
+
+            for (var transfer : batch) {
+                orders.add(transfer.getOrder());
+            }
+
+            List<TransferOutcome> results;
+
+            try {
+                results = wallet.transfer(orders);
+            } catch (RuntimeException e) {
+                // Orders of a batch fail one by one, this is a failure of the wallet itself. Orders before it
+                // failed may have been applied, so none is reported failed and retried into a second payment.
+                log.error("Failed to run batch of {} scheduled transfers", orders.size(), e);
+                results = Collections.nCopies(orders.size(), TransferOutcome.unknown(e));
+            }
+
+            for (int i = 0; i < batch.size(); i++) {
+                outcomes.put(batch.get(i).getId(), batch.get(i).withOutcome(results.get(i)));
+            }
+        }
+
+        return partition.size();
+    }
+
+    // Without a started worker pool, as in tests, partitions run on the calling thread
+    private Executor executor() {
+        return workers != null ? workers : Runnable::run;
+    }
+
+    private void runDueSafely() {
+        try {
+            runDue(System.currentTimeMillis());
+        } catch (RuntimeException e) {
+            log.error("Failed to run scheduled transfers", e);
+        }
+    }
+}
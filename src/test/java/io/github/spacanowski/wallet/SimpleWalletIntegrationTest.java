@@ -3,9 +3,11 @@ package io.github.spacanowski.wallet;
 import static java.lang.String.format;
 import static javax.ws.rs.client.Entity.entity;
 import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
+import static javax.ws.rs.core.Response.Status.ACCEPTED;
 import static javax.ws.rs.core.Response.Status.BAD_REQUEST;
 import static javax.ws.rs.core.Response.Status.CREATED;
 import static javax.ws.rs.core.Response.Status.NOT_FOUND;
+import static javax.ws.rs.core.Response.Status.NOT_MODIFIED;
 import static javax.ws.rs.core.Response.Status.NO_CONTENT;
 import static javax.ws.rs.core.Response.Status.OK;
 import static org.assertj.core.api.Assertions.assertThat;
@@ -14,14 +16,26 @@ import io.dropwizard.testing.ConfigOverride;
 import io.dropwizard.testing.junit5.DropwizardAppExtension;
 import io.dropwizard.testing.junit5.DropwizardExtensionsSupport;
 import io.github.spacanowski.wallet.configuration.SimpleWalletConfiguration;
+import io.github.spacanowski.wallet.model.data.TransferOutcome;
+import io.github.spacanowski.wallet.model.input.BatchTransfer;
 import io.github.spacanowski.wallet.model.input.CreateAccount;
+import io.github.spacanowski.wallet.model.input.CreateHold;
+import io.github.spacanowski.wallet.model.input.ScheduleTransfer;
 import io.github.spacanowski.wallet.model.input.Transfer;
 import io.github.spacanowski.wallet.model.output.AccountOutput;
+import io.github.spacanowski.wallet.model.output.AuditEntryOutput;
+import io.github.spacanowski.wallet.model.output.BatchTransferOutput;
+import io.github.spacanowski.wallet.model.output.HoldOutput;
+import io.github.spacanowski.wallet.model.output.ScheduledTransferOutput;
 import io.github.spacanowski.wallet.model.output.TransferOutput;
+import io.github.spacanowski.wallet.resource.AccountResource;
 
 import java.math.BigDecimal;
+import java.util.List;
 
 import javax.ws.rs.client.Invocation;
+import javax.ws.rs.core.GenericType;
+import javax.ws.rs.core.HttpHeaders;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -51,7 +65,7 @@ public class SimpleWalletIntegrationTest {
         var result = response.readEntity(AccountOutput.class);
 
         assertThat(result.getId()).isNotNull();
-        assertThat(result.getBalance()).isEqualTo(balance);
+        assertThat(result.getBalance()).isEqualByComparingTo(balance);
     }
 
     @Test
@@ -69,7 +83,7 @@ public class SimpleWalletIntegrationTest {
         var result = response.readEntity(AccountOutput.class);
 
         assertThat(result.getId()).isNotNull();
-        assertThat(result.getBalance()).isEqualTo(balance);
+        assertThat(result.getBalance()).isEqualByComparingTo(balance);
     }
 
     @Test
@@ -98,7 +112,108 @@ public class SimpleWalletIntegrationTest {
         var result = response.readEntity(AccountOutput.class);
 
         assertThat(result.getId()).isEqualTo(accountId);
-        assertThat(result.getBalance()).isEqualTo(balance);
+        assertThat(result.getBalance()).isEqualByComparingTo(balance);
+    }
+
+    @Test
+    public void shouldReturnNotModifiedUntilBalanceChanges() {
+        var accountId = createTestAccount(BigDecimal.valueOf(5));
+        var otherId = createTestAccount(BigDecimal.valueOf(0));
+
+        var tag = request("/accounts/" + accountId)
+                         .get()
+                         .getHeaderString(HttpHeaders.ETAG);
+
+        var unchanged = request("/accounts/" + accountId)
+                               .header(HttpHeaders.IF_NONE_MATCH, tag)
+                               .get();
+
+        assertThat(unchanged.getStatus()).isEqualTo(NOT_MODIFIED.getStatusCode());
+
+        var transfer = new Transfer();
+        transfer.setSum(BigDecimal.valueOf(1));
+
+        request(format("/accounts/%s/transfer/%s", accountId, otherId))
+               .put(entity(transfer, APPLICATION_JSON));
+
+        var changed = request("/accounts/" + accountId)
+                             .header(HttpHeaders.IF_NONE_MATCH, tag)
+                             .get();
+
+        assertThat(changed.getStatus()).isEqualTo(OK.getStatusCode());
+        assertThat(changed.getHeaderString(HttpHeaders.ETAG)).isNotEqualTo(tag);
+        assertThat(changed.readEntity(AccountOutput.class).getBalance()).isEqualByComparingTo(BigDecimal.valueOf(4));
+    }
+
+    @Test
+    public void shouldCaptureHeldResources() {
+        var customerId = createTestAccount(BigDecimal.valueOf(5));
+        var merchantId = createTestAccount(BigDecimal.valueOf(0));
+
+        var hold = new CreateHold();
+        hold.setTo(merchantId);
+        hold.setSum(BigDecimal.valueOf(3));
+
+        var held = request(format("/accounts/%s/holds", customerId))
+                          .post(entity(hold, APPLICATION_JSON));
+
+        assertThat(held.getStatus()).isEqualTo(CREATED.getStatusCode());
+
+        var holdId = held.readEntity(HoldOutput.class).getId();
+        var customer = request("/accounts/" + customerId)
+                              .get()
+                              .readEntity(AccountOutput.class);
+
+        assertThat(customer.getBalance()).isEqualByComparingTo(BigDecimal.valueOf(5));
+        assertThat(customer.getAvailable()).isEqualByComparingTo(BigDecimal.valueOf(2));
+
+        var capture = new Transfer();
+        capture.setSum(BigDecimal.valueOf(2));
+
+        var captured = request(format("/accounts/holds/%s/capture", holdId))
+                              .post(entity(capture, APPLICATION_JSON))
+                              .readEntity(TransferOutput.class);
+
+        assertThat(captured.getFrom().getBalance()).isEqualByComparingTo(BigDecimal.valueOf(3));
+        assertThat(captured.getFrom().getAvailable()).isEqualByComparingTo(BigDecimal.valueOf(3));
+        assertThat(captured.getTo().getBalance()).isEqualByComparingTo(BigDecimal.valueOf(2));
+
+        var released = request("/accounts/holds/" + holdId)
+                              .delete();
+
+        assertThat(released.getStatus()).isEqualTo(NOT_FOUND.getStatusCode());
+    }
+
+    @Test
+    public void shouldRunScheduledTransferOnceDue() throws Exception {
+        var fromId = createTestAccount(BigDecimal.valueOf(5));
+        var toId = createTestAccount(BigDecimal.valueOf(0));
+
+        var transfer = new ScheduleTransfer();
+        transfer.setSum(BigDecimal.valueOf(2));
+        transfer.setExecuteAt(System.currentTimeMillis() + 200);
+
+        var response = request(format("/accounts/%s/transfer/%s/scheduled", fromId, toId))
+                              .post(entity(transfer, APPLICATION_JSON));
+
+        assertThat(response.getStatus()).isEqualTo(ACCEPTED.getStatusCode());
+
+        var location = response.getLocation().getPath();
+        var scheduled = response.readEntity(ScheduledTransferOutput.class);
+
+        assertThat(scheduled.getStatus()).isEqualTo(TransferOutcome.Status.PENDING);
+
+        for (int i = 0; i < 100 && scheduled.getStatus() == TransferOutcome.Status.PENDING; i++) {
+            Thread.sleep(50);
+
+            scheduled = request(location).get()
+                                         .readEntity(ScheduledTransferOutput.class);
+        }
+
+        assertThat(scheduled.getStatus()).isEqualTo(TransferOutcome.Status.COMPLETED);
+        assertThat(request("/accounts/" + toId).get()
+                                               .readEntity(AccountOutput.class)
+                                               .getBalance()).isEqualByComparingTo(BigDecimal.valueOf(2));
     }
 
     @Test
@@ -131,10 +246,10 @@ public class SimpleWalletIntegrationTest {
         var result = response.readEntity(TransferOutput.class);
 
         assertThat(result.getFrom().getId()).isEqualTo(fromAccountId);
-        assertThat(result.getFrom().getBalance()).isEqualTo(fromBalance.subtract(transferSum));
+        assertThat(result.getFrom().getBalance()).isEqualByComparingTo(fromBalance.subtract(transferSum));
 
         assertThat(result.getTo().getId()).isEqualTo(toAccountId);
-        assertThat(result.getTo().getBalance()).isEqualTo(toBalance.add(transferSum));
+        assertThat(result.getTo().getBalance()).isEqualByComparingTo(toBalance.add(transferSum));
 
         var fromGetResponse = request("/accounts/" + fromAccountId)
                                 .get();
@@ -143,7 +258,7 @@ public class SimpleWalletIntegrationTest {
 
         var from = fromGetResponse.readEntity(AccountOutput.class);
 
-        assertThat(from.getBalance()).isEqualTo(fromBalance.subtract(transferSum));
+        assertThat(from.getBalance()).isEqualByComparingTo(fromBalance.subtract(transferSum));
 
         var toGetResponse = request("/accounts/" + toAccountId)
                                 .get();
@@ -152,7 +267,32 @@ public class SimpleWalletIntegrationTest {
 
         var to = toGetResponse.readEntity(AccountOutput.class);
 
-        assertThat(to.getBalance()).isEqualTo(toBalance.add(transferSum));
+        assertThat(to.getBalance()).isEqualByComparingTo(toBalance.add(transferSum));
+    }
+
+    @Test
+    public void shouldNotRepeatTransferRetriedWithIdempotencyKey() {
+        var transfer = new Transfer();
+        transfer.setSum(BigDecimal.valueOf(1));
+
+        var fromId = createTestAccount(BigDecimal.valueOf(5));
+        var toId = createTestAccount(BigDecimal.valueOf(0));
+
+        for (int i = 0; i < 3; i++) {
+            var response = request(format("/accounts/%s/transfer/%s", fromId, toId))
+                                   .header(AccountResource.IDEMPOTENCY_KEY_HEADER, "retried-" + fromId)
+                                   .put(entity(transfer, APPLICATION_JSON));
+
+            assertThat(response.getStatus()).isEqualTo(OK.getStatusCode());
+            assertThat(response.readEntity(TransferOutput.class).getFrom().getBalance())
+                      .isEqualByComparingTo(BigDecimal.valueOf(4));
+        }
+
+        var from = request("/accounts/" + fromId)
+                               .get()
+                               .readEntity(AccountOutput.class);
+
+        assertThat(from.getBalance()).isEqualByComparingTo(BigDecimal.valueOf(4));
     }
 
     @Test
@@ -215,6 +355,32 @@ public class SimpleWalletIntegrationTest {
         assertThat(response.getStatus()).isEqualTo(BAD_REQUEST.getStatusCode());
     }
 
+    @Test
+    public void shouldTransferBatch() {
+        var firstId = createTestAccount(BigDecimal.valueOf(5));
+        var secondId = createTestAccount(BigDecimal.valueOf(0));
+
+        var response = request("/accounts/transfers/batch")
+                               .post(entity(List.of(batchTransfer(firstId, secondId, BigDecimal.valueOf(2)),
+                                                    batchTransfer(firstId, secondId, BigDecimal.valueOf(4)),
+                                                    batchTransfer(secondId, firstId, BigDecimal.valueOf(0.5))),
+                                            APPLICATION_JSON));
+
+        assertThat(response.getStatus()).isEqualTo(OK.getStatusCode());
+
+        var result = response.readEntity(BatchTransferOutput.class);
+
+        assertThat(result.getCompleted()).isEqualTo(2);
+        assertThat(result.getFailed()).isEqualTo(1);
+        assertThat(result.getResults().get(1).getStatus()).isEqualTo(TransferOutcome.Status.INSUFFICIENT_RESOURCES);
+
+        var first = request("/accounts/" + firstId)
+                               .get()
+                               .readEntity(AccountOutput.class);
+
+        assertThat(first.getBalance()).isEqualByComparingTo(BigDecimal.valueOf(3.5));
+    }
+
     @Test
     public void shouldDeleteAccount() {
         var id = createTestAccount(BigDecimal.valueOf(1.1));
@@ -238,12 +404,49 @@ public class SimpleWalletIntegrationTest {
         assertThat(response.getStatus()).isEqualTo(OK.getStatusCode());
     }
 
+    @Test
+    public void shouldGetOperationsOfAccountPageByPage() {
+        var first = createTestAccount(BigDecimal.valueOf(10));
+        createTestAccount(BigDecimal.valueOf(0));
+
+        request(format("/accounts/%s", first))
+                .delete();
+
+        var firstPage = request(format("/accounts/audits?account=%s&limit=1", first))
+                               .get();
+
+        assertThat(firstPage.getStatus()).isEqualTo(OK.getStatusCode());
+        var created = firstPage.readEntity(new GenericType<List<AuditEntryOutput>>() {});
+
+        assertThat(created).extracting(AuditEntryOutput::getAudit)
+                           .containsExactly(format("Created account '%s' with balance '10.00'", first));
+
+        var cursor = firstPage.getHeaderString(AccountResource.NEXT_CURSOR_HEADER);
+        var secondPage = request(format("/accounts/audits?account=%s&limit=1&cursor=%s", first, cursor))
+                               .get();
+
+        var deleted = secondPage.readEntity(new GenericType<List<AuditEntryOutput>>() {});
+
+        assertThat(deleted).extracting(AuditEntryOutput::getAudit)
+                           .containsExactly(format("Deleted account '%s'", first));
+        assertThat(deleted.get(0).getSequence()).isGreaterThan(created.get(0).getSequence());
+    }
+
     private Invocation.Builder request(String url) {
         return SUPPORT.client()
                       .target(String.format("http://localhost:%d%s", SUPPORT.getLocalPort(), url))
                       .request();
     }
 
+    private BatchTransfer batchTransfer(String from, String to, BigDecimal sum) {
+        var transfer = new BatchTransfer();
+        transfer.setFrom(from);
+        transfer.setTo(to);
+        transfer.setSum(sum);
+
+        return transfer;
+    }
+
     private String createTestAccount(BigDecimal balance) {
         var account = new CreateAccount();
         account.setBalance(balance);
@@ -0,0 +1,79 @@
+package io.github.spacanowski.wallet.configuration;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.Assert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.dropwizard.configuration.ConfigurationValidationException;
+import io.dropwizard.configuration.ResourceConfigurationSourceProvider;
+import io.dropwizard.configuration.YamlConfigurationFactory;
+import io.dropwizard.jackson.DiscoverableSubtypeResolver;
+import io.dropwizard.jackson.Jackson;
+import io.dropwizard.jersey.validation.Validators;
+import io.github.spacanowski.wallet.datastore.AtomicWallet;
+import io.github.spacanowski.wallet.datastore.AuditLog;
+import io.github.spacanowski.wallet.datastore.CompactWallet;
+import io.github.spacanowski.wallet.datastore.LockingWallet;
+import io.github.spacanowski.wallet.datastore.ShardedWallet;
+import io.github.spacanowski.wallet.datastore.Wallet;
+import io.github.spacanowski.wallet.datastore.WalletMetrics;
+
+import org.junit.jupiter.api.Test;
+
+public class WalletEngineFactoryTest {
+
+    private final ObjectMapper mapper = Jackson.newObjectMapper();
+
+    private final YamlConfigurationFactory<SimpleWalletConfiguration> factory =
+            new YamlConfigurationFactory<>(SimpleWalletConfiguration.class, Validators.newValidator(), mapper, "dw");
+
+    @Test
+    public void shouldDiscoverEngines() {
+        assertThat(new DiscoverableSubtypeResolver().getDiscoveredSubtypes().contains(ShardedEngineFactory.class),
+                   equalTo(true));
+    }
+
+    @Test
+    public void shouldUseLockingEngineByDefault() throws Exception {
+        var configuration = factory.build();
+
+        assertThat(configuration.getWalletEngine(), instanceOf(LockingEngineFactory.class));
+        assertThat(build(configuration.getWalletEngine()), instanceOf(LockingWallet.class));
+    }
+
+    @Test
+    public void shouldSelectEngineByType() throws Exception {
+        var atomic = mapper.readValue("{\"type\": \"atomic\"}", WalletEngineFactory.class);
+        var combining = mapper.readValue("{\"type\": \"locking\", \"combining\": true}", WalletEngineFactory.class);
+        var sharded = mapper.readValue("{\"type\": \"sharded\", \"shards\": 2}", WalletEngineFactory.class);
+
+        var compact = mapper.readValue("{\"type\": \"compact\", \"node\": 7, \"offHeap\": true}",
+                                       WalletEngineFactory.class);
+
+        assertThat(build(atomic), instanceOf(AtomicWallet.class));
+        assertThat(((LockingEngineFactory) combining).isCombining(), equalTo(true));
+        assertThat(build(combining), instanceOf(LockingWallet.class));
+        assertThat(((CompactEngineFactory) compact).isOffHeap(), equalTo(true));
+        assertThat(build(compact), instanceOf(CompactWallet.class));
+        assertThat(((ShardedEngineFactory) sharded).getShards(), equalTo(2));
+
+        var wallet = build(sharded);
+
+        assertThat(wallet, instanceOf(ShardedWallet.class));
+
+        ((ShardedWallet) wallet).stop();
+    }
+
+    @Test
+    public void shouldRejectInvalidEngineConfiguration() {
+        assertThrows(ConfigurationValidationException.class,
+                     () -> factory.build(new ResourceConfigurationSourceProvider(), "invalid-engine.yml"));
+    }
+
+    private Wallet build(WalletEngineFactory engine) {
+        return engine.build(Wallet.DEFAULT_SCALE, new AuditLog(Wallet.DEFAULT_SCALE), WalletMetrics.disabled());
+    }
+}
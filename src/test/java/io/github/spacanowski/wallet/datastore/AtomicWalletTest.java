@@ -0,0 +1,39 @@
+package io.github.spacanowski.wallet.datastore;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+public class AtomicWalletTest extends WalletTest {
+
+    @Override
+    protected Wallet createWallet() {
+        return new AtomicWallet();
+    }
+
+    @Override
+    protected boolean countsChanges() {
+        return false;
+    }
+
+    @Test
+    public void shouldNotSupportStripedAccounts() {
+        var wallet = createWallet();
+        var account = wallet.create(1L);
+
+        assertThrows(IllegalArgumentException.class, () -> wallet.stripe(account.getId()));
+    }
+
+    @Test
+    public void shouldNotSupportHolds() {
+        var wallet = createWallet();
+        var from = wallet.create(1L);
+        var to = wallet.create(0L);
+
+        assertThrows(IllegalArgumentException.class,
+                     () -> wallet.hold(from.getId(), to.getId(), 1L, System.currentTimeMillis()));
+        assertThat(wallet.expireHolds(System.currentTimeMillis()), equalTo(0));
+    }
+}
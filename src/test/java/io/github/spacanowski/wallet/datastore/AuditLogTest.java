@@ -0,0 +1,285 @@
+package io.github.spacanowski.wallet.datastore;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import io.github.spacanowski.wallet.model.data.AuditPage;
+import io.github.spacanowski.wallet.model.data.AuditQuery;
+import io.github.spacanowski.wallet.model.data.Operation;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+import org.junit.jupiter.api.Test;
+
+public class AuditLogTest {
+
+    @Test
+    public void shouldFormatRecords() {
+        var audit = new AuditLog(2);
+
+        audit.create("1-1-1", 110L);
+        audit.transfer("1-1-1", "2-2-2", 5L);
+        audit.delete("1-1-1");
+
+        assertThat(audit.getOperations(),
+                   equalTo(List.of("Created account '1-1-1' with balance '1.10'",
+                                   "Transfered '0.05' from account '1-1-1' to account '2-2-2'",
+                                   "Deleted account '1-1-1'")));
+    }
+
+    @Test
+    public void shouldOverwriteOldestRecords() {
+        var audit = new AuditLog(3, AuditLog.OverflowPolicy.DROP_OLDEST, 0);
+
+        IntStream.range(0, 5)
+                 .forEach(i -> audit.delete(String.valueOf(i)));
+
+        assertThat(audit.getOperations(),
+                   equalTo(List.of("Deleted account '2'",
+                                   "Deleted account '3'",
+                                   "Deleted account '4'")));
+        assertThat(audit.getDropped(), equalTo(2L));
+    }
+
+    @Test
+    public void shouldDropNewestRecords() {
+        var audit = new AuditLog(3, AuditLog.OverflowPolicy.DROP_NEWEST, 0);
+
+        IntStream.range(0, 5)
+                 .forEach(i -> audit.delete(String.valueOf(i)));
+
+        assertThat(audit.getOperations(),
+                   equalTo(List.of("Deleted account '0'",
+                                   "Deleted account '1'",
+                                   "Deleted account '2'")));
+        assertThat(audit.getDropped(), equalTo(2L));
+    }
+
+    @Test
+    public void shouldForgetAccountsWithoutRecordsInRing() {
+        // Larger than the capture buffer, so records drained late stay in the ring
+        var audit = new AuditLog(2 * AuditBuffer.CAPACITY, AuditLog.OverflowPolicy.DROP_OLDEST, 0);
+
+        IntStream.range(0, 100_000)
+                 .forEach(i -> audit.transfer("from-" + i, "to-" + i, i));
+
+        audit.drain();
+
+        assertThat(audit.getIndexedAccounts() <= 4L * audit.getCapacity(), equalTo(true));
+        assertThat(audit.read(AuditQuery.builder().account("from-99999").build()).getOperations().size(),
+                   equalTo(1));
+        assertThat(audit.read(AuditQuery.builder().account("from-0").build()).getOperations().size(),
+                   equalTo(0));
+    }
+
+    @Test
+    public void shouldKeepCompleteRecordsUnderConcurrentWriters() {
+        var audit = new AuditLog(64, AuditLog.OverflowPolicy.DROP_OLDEST, 0);
+
+        IntStream.range(0, 100_000)
+                 .parallel()
+                 .forEach(i -> audit.transfer("from-" + i, "to-" + i, i));
+
+        var operations = audit.read();
+
+        assertThat(operations.size(), equalTo(64));
+
+        operations.forEach(operation -> {
+            var audited = operation.getAudit();
+            var sum = audited.substring(audited.indexOf('\'') + 1, audited.indexOf('\'', audited.indexOf('\'') + 1));
+
+            assertThat(audited, equalTo(String.format("Transfered '%s' from account 'from-%s' to account 'to-%s'",
+                                                      sum, sum, sum)));
+        });
+    }
+
+    @Test
+    public void shouldReadRecordsOfAccountPageByPage() {
+        var audit = new AuditLog(2);
+
+        audit.create("1-1-1", 100L);
+        audit.create("2-2-2", 0L);
+        audit.transfer("1-1-1", "2-2-2", 5L);
+        audit.transfer("2-2-2", "1-1-1", 1L);
+        audit.delete("2-2-2");
+
+        var first = audit.read(AuditQuery.builder().account("1-1-1").limit(2).build());
+
+        assertThat(audits(first), equalTo(List.of("Created account '1-1-1' with balance '1.00'",
+                                                  "Transfered '0.05' from account '1-1-1' to account '2-2-2'")));
+
+        var second = audit.read(AuditQuery.builder().account("1-1-1").limit(2).cursor(first.getNextCursor()).build());
+
+        assertThat(audits(second), equalTo(List.of("Transfered '0.01' from account '2-2-2' to account '1-1-1'")));
+        assertThat(second.getNextCursor(), equalTo(5L));
+    }
+
+    @Test
+    public void shouldPageThroughFilteredRecordsOfAccount() {
+        var audit = new AuditLog(10_000, AuditLog.OverflowPolicy.DROP_OLDEST, 0);
+
+        IntStream.range(0, 1_000)
+                 .forEach(i -> {
+                     audit.transfer("hot", "other-" + i, i);
+                     audit.delete("other-" + i);
+                     audit.transfer("other-" + i, "hot", i);
+                 });
+
+        var query = AuditQuery.builder().account("hot").type(Operation.Type.TRANSFER).limit(7).build();
+        var read = 0;
+
+        while (true) {
+            var page = audit.read(query);
+
+            read += page.getOperations().size();
+
+            if (page.getOperations().size() < query.getLimit()) {
+                break;
+            }
+
+            query = query.toBuilder().cursor(page.getNextCursor()).build();
+        }
+
+        assertThat(read, equalTo(2_000));
+    }
+
+    @Test
+    public void shouldNotReadRecordsFromUpperSequence() {
+        var audit = new AuditLog(2);
+
+        audit.create("1-1-1", 100L);
+        audit.delete("1-1-1");
+        audit.create("2-2-2", 100L);
+
+        var page = audit.read(AuditQuery.builder().until(2).build());
+        var ofAccount = audit.read(AuditQuery.builder().account("2-2-2").until(2).build());
+
+        assertThat(audits(page), equalTo(List.of("Created account '1-1-1' with balance '1.00'",
+                                                 "Deleted account '1-1-1'")));
+        assertThat(page.getNextCursor(), equalTo(2L));
+        assertThat(page.getEnd(), equalTo(3L));
+        assertThat(ofAccount.getOperations().size(), equalTo(0));
+    }
+
+    @Test
+    public void shouldFilterRecordsByTypeAndTime() {
+        var audit = new AuditLog(2);
+
+        audit.create("1-1-1", 100L);
+        audit.delete("1-1-1");
+
+        var deletes = audit.read(AuditQuery.builder().type(Operation.Type.DELETE).build());
+        var future = audit.read(AuditQuery.builder().from(Instant.now().plusSeconds(60)).build());
+
+        assertThat(audits(deletes), equalTo(List.of("Deleted account '1-1-1'")));
+        assertThat(future.getOperations().size(), equalTo(0));
+        assertThat(future.getNextCursor(), equalTo(2L));
+    }
+
+    @Test
+    public void shouldNotFindOverwrittenRecordsOfAccount() {
+        var audit = new AuditLog(3, AuditLog.OverflowPolicy.DROP_OLDEST, 0);
+
+        audit.create("1-1-1", 1L);
+        IntStream.range(0, 3)
+                 .forEach(i -> audit.transfer("2-2-2", "3-3-3", i));
+        audit.delete("1-1-1");
+
+        assertThat(audits(audit.read(AuditQuery.builder().account("1-1-1").build())),
+                   equalTo(List.of("Deleted account '1-1-1'")));
+        assertThat(audits(audit.read(AuditQuery.builder().account("3-3-3").build())),
+                   equalTo(List.of("Transfered '1' from account '2-2-2' to account '3-3-3'",
+                                   "Transfered '2' from account '2-2-2' to account '3-3-3'")));
+    }
+
+    @Test
+    public void shouldFindAllRecordsOfAccountUnderConcurrentWriters() {
+        var audit = new AuditLog(100_000, AuditLog.OverflowPolicy.DROP_OLDEST, 0);
+
+        IntStream.range(0, 10_000)
+                 .parallel()
+                 .forEach(i -> audit.transfer("from-" + (i % 10), "to", i));
+
+        var page = audit.read(AuditQuery.builder().account("from-3").build());
+
+        assertThat(page.getOperations().size(), equalTo(1000));
+    }
+
+    @Test
+    public void shouldOrderOperationsCapturedByManyThreads() throws Exception {
+        var audit = new AuditLog(100_000, AuditLog.OverflowPolicy.DROP_OLDEST, 1, TimeUnit.HOURS, 0);
+
+        IntStream.range(0, 20_000)
+                 .parallel()
+                 .forEach(i -> audit.transfer("from", "to", i));
+
+        var sequences = audit.read()
+                             .stream()
+                             .mapToLong(Operation::getSequence)
+                             .toArray();
+
+        assertThat(sequences.length, equalTo(20_000));
+        assertThat(sequences, equalTo(LongStream.range(0, 20_000).toArray()));
+        assertThat(audit.getPending(), equalTo(0L));
+
+        audit.stop();
+    }
+
+    @Test
+    public void shouldKeepOperationsOfThreadInOrderOnceItsBufferIsFull() throws Exception {
+        var audit = new AuditLog(10_000, AuditLog.OverflowPolicy.DROP_OLDEST, 1, TimeUnit.HOURS, 0);
+        var count = AuditBuffer.CAPACITY + 10;
+
+        // Operations past the buffer capacity go to the log directly
+        IntStream.range(0, count)
+                 .forEach(i -> audit.delete(String.valueOf(i)));
+
+        var sequences = new long[count];
+        var read = 0;
+        var cursor = 0L;
+
+        // Pages are cut in log order, every one has to come after the one before
+        while (read < count) {
+            var page = audit.read(AuditQuery.builder().limit(100).cursor(cursor).build());
+
+            for (var operation : page.getOperations()) {
+                sequences[read++] = operation.getSequence();
+            }
+
+            cursor = page.getNextCursor();
+        }
+
+        assertThat(sequences, equalTo(LongStream.range(0, count).toArray()));
+
+        audit.stop();
+    }
+
+    @Test
+    public void shouldReportOperationsWaitingToBeDrained() throws Exception {
+        var audit = new AuditLog(10, AuditLog.OverflowPolicy.DROP_OLDEST, 1, TimeUnit.HOURS, 0);
+
+        audit.delete("1-1-1");
+        audit.delete("2-2-2");
+
+        assertThat(audit.getPending(), equalTo(2L));
+
+        audit.drain();
+
+        assertThat(audit.getPending(), equalTo(0L));
+        assertThat(audit.getDrainLagMillis(), equalTo(0L));
+
+        audit.stop();
+    }
+
+    private static List<String> audits(AuditPage page) {
+        return page.getOperations()
+                   .stream()
+                   .map(Operation::getAudit)
+                   .collect(Collectors.toList());
+    }
+}
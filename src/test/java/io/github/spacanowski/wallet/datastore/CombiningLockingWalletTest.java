@@ -0,0 +1,119 @@
+package io.github.spacanowski.wallet.datastore;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.Assert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.github.spacanowski.wallet.exception.BalanceOverflowException;
+import io.github.spacanowski.wallet.exception.InsufficientResourcesException;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+public class CombiningLockingWalletTest extends WalletTest {
+
+    @Override
+    protected Wallet createWallet() {
+        return new LockingWallet(Wallet.DEFAULT_SCALE, new AuditLog(Wallet.DEFAULT_SCALE), WalletMetrics.disabled(), true);
+    }
+
+    @Test
+    public void shouldReportLostSumWhenRefundFails() {
+        var metrics = mock(WalletMetrics.class);
+        var wallet = new LockingWallet(Wallet.DEFAULT_SCALE, new AuditLog(Wallet.DEFAULT_SCALE), metrics, true);
+
+        var from = wallet.create(10L).getId();
+        var to = wallet.create(Long.MAX_VALUE).getId();
+        var rich = wallet.create(Long.MAX_VALUE - 7).getId();
+        var changes = new AtomicInteger();
+
+        // Changes are told apart by their order: debit, credit, refund. The sender is credited just before
+        // the credit, which overflows, so the refund overflows the sender too.
+        when(metrics.start()).thenAnswer(invocation -> {
+            if (changes.incrementAndGet() == 2) {
+                wallet.transfer(rich, from, Long.MAX_VALUE - 7);
+            }
+
+            return 0L;
+        });
+
+        var failure = assertThrows(BalanceOverflowException.class, () -> wallet.transfer(from, to, 5L));
+
+        assertThat(failure.getSuppressed().length, equalTo(1));
+        assertThat(failure.getSuppressed()[0], instanceOf(BalanceOverflowException.class));
+        assertThat(wallet.get(from).getBalance(), equalTo(Long.MAX_VALUE - 2));
+        verify(metrics).lost(5L);
+    }
+
+    @Test
+    public void shouldCreditHotAccountFromManyThreads() {
+        var wallet = createWallet();
+        var merchant = wallet.create(0L).getId();
+
+        var customers = IntStream.range(0, 64)
+                                 .mapToObj(i -> wallet.create(1000L).getId())
+                                 .toArray(String[]::new);
+
+        IntStream.range(0, 64_000)
+                 .parallel()
+                 .forEach(i -> wallet.transfer(customers[i % customers.length], merchant, 1L));
+
+        assertThat(wallet.get(merchant).getBalance(), equalTo(64_000L));
+        assertThat(wallet.balance(merchant).getBalance(), equalTo(64_000L));
+
+        for (var customer : customers) {
+            assertThat(wallet.get(customer).getBalance(), equalTo(0L));
+        }
+    }
+
+    @Test
+    public void shouldCreditStripedHotAccountWithoutCombining() {
+        var wallet = createWallet();
+        var merchant = wallet.create(0L).getId();
+        var customer = wallet.create(10_000L).getId();
+
+        wallet.stripe(merchant);
+
+        IntStream.range(0, 10_000)
+                 .parallel()
+                 .forEach(i -> wallet.transfer(customer, merchant, 1L));
+
+        assertThat(wallet.balance(merchant).getBalance(), equalTo(10_000L));
+
+        wallet.transfer(merchant, customer, 2_500L);
+
+        assertThat(wallet.get(merchant).getBalance(), equalTo(7_500L));
+        assertThat(wallet.get(customer).getBalance(), equalTo(2_500L));
+    }
+
+    @Test
+    public void shouldNotCombineDebitsIntoHeldSum() {
+        var wallet = createWallet();
+        var customer = wallet.create(1_000L).getId();
+        var merchant = wallet.create(0L).getId();
+
+        wallet.hold(customer, merchant, 400L, System.currentTimeMillis() + 60_000);
+
+        var completed = IntStream.range(0, 1_000)
+                                 .parallel()
+                                 .filter(i -> {
+                                     try {
+                                         wallet.transfer(customer, merchant, 1L);
+                                         return true;
+                                     } catch (InsufficientResourcesException e) {
+                                         return false;
+                                     }
+                                 })
+                                 .count();
+
+        assertThat(completed, equalTo(600L));
+        assertThat(wallet.get(customer).getBalance(), equalTo(400L));
+        assertThat(wallet.balance(customer).getAvailable(), equalTo(0L));
+    }
+}
@@ -0,0 +1,65 @@
+package io.github.spacanowski.wallet.datastore;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.Assert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+public class CompactIdsTest {
+
+    @Test
+    public void shouldEncodeAndDecodeIds() {
+        for (var id : new long[] { 1L, 61L, 62L, 1L << 40, Long.MAX_VALUE }) {
+            assertThat(CompactIds.decode(CompactIds.encode(id)), equalTo(id));
+        }
+
+        assertThat(CompactIds.encode(62L), equalTo("10"));
+        assertThat(CompactIds.encode(Long.MAX_VALUE).length(), equalTo(11));
+    }
+
+    @Test
+    public void shouldRejectInvalidText() {
+        assertThat(CompactIds.decode(""), equalTo(-1L));
+        assertThat(CompactIds.decode("01"), equalTo(-1L));
+        assertThat(CompactIds.decode("1-1-1"), equalTo(-1L));
+        assertThat(CompactIds.decode("zzzzzzzzzzz"), equalTo(-1L));
+        assertThat(CompactIds.decode("123456789012"), equalTo(-1L));
+    }
+
+    @Test
+    public void shouldGenerateIncreasingIds() {
+        var ids = new CompactIds(3);
+
+        var previous = ids.next();
+
+        for (int i = 0; i < 100_000; i++) {
+            var next = ids.next();
+
+            assertThat(next, greaterThan(previous));
+
+            previous = next;
+        }
+    }
+
+    @Test
+    public void shouldGenerateUniqueIdsConcurrently() {
+        var ids = new CompactIds(CompactIds.MAX_NODE);
+
+        var generated = IntStream.range(0, 100_000)
+                                 .parallel()
+                                 .mapToObj(i -> ids.next())
+                                 .collect(Collectors.toSet());
+
+        assertThat(generated.size(), equalTo(100_000));
+    }
+
+    @Test
+    public void shouldRejectNodeOutOfRange() {
+        assertThrows(IllegalArgumentException.class, () -> new CompactIds(CompactIds.MAX_NODE + 1));
+    }
+}
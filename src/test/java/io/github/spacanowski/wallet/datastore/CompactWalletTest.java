@@ -0,0 +1,103 @@
+package io.github.spacanowski.wallet.datastore;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import io.github.spacanowski.wallet.exception.AccountNotFoundException;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+public class CompactWalletTest extends WalletTest {
+
+    @Override
+    protected Wallet createWallet() {
+        return new CompactWallet(Wallet.DEFAULT_SCALE, new AuditLog(Wallet.DEFAULT_SCALE), 1, 4, false);
+    }
+
+    @Test
+    public void shouldCreateShortIds() {
+        var wallet = createWallet();
+
+        var result = wallet.create(1L);
+
+        assertThat(result.getId().length(), lessThanOrEqualTo(11));
+        assertThat(CompactIds.encode(CompactIds.decode(result.getId())), equalTo(result.getId()));
+    }
+
+    @Test
+    public void shouldNotFindAccountsWithForeignIds() {
+        var wallet = createWallet();
+        var account = wallet.create(10L);
+
+        assertNull(wallet.get(UUID.randomUUID().toString()));
+        assertNull(wallet.get("0"));
+        assertNull(wallet.get("0" + account.getId()));
+        assertThrows(AccountNotFoundException.class,
+                     () -> wallet.transfer(account.getId(), "not-an-id", 1L));
+    }
+
+    @Test
+    public void shouldKeepAccountsWhileTablesGrowAndShrink() {
+        var wallet = createWallet();
+
+        var ids = IntStream.range(0, 10_000)
+                           .mapToObj(i -> wallet.create(i).getId())
+                           .toArray(String[]::new);
+
+        for (int i = 0; i < ids.length; i += 2) {
+            wallet.delete(ids[i]);
+        }
+
+        for (int i = 0; i < ids.length; i++) {
+            var account = wallet.get(ids[i]);
+
+            if (i % 2 == 0) {
+                assertNull(account);
+            } else {
+                assertThat(account.getBalance(), equalTo((long) i));
+            }
+        }
+
+        assertThat(((CompactWallet) wallet).getAccountCount(), equalTo(5_000L));
+        // Tables do not shrink, every slot is 24 bytes
+        assertThat(((CompactWallet) wallet).getTableBytes(), greaterThanOrEqualTo(10_000 * 24L));
+    }
+
+    @Test
+    public void shouldReadBalancesWhileTablesGrow() {
+        var wallet = createWallet();
+        var account = wallet.create(42L);
+
+        // Creations keep resizing tables under the optimistic readers
+        var writer = CompletableFuture.runAsync(() -> IntStream.range(0, 50_000).forEach(wallet::create));
+
+        while (!writer.isDone()) {
+            var snapshot = wallet.balance(account.getId());
+
+            assertThat(snapshot.getBalance(), equalTo(42L));
+            assertThat(snapshot.getVersion(), equalTo(0L));
+        }
+
+        writer.join();
+    }
+
+    @Test
+    public void shouldRestoreAccounts() {
+        var wallet = createWallet();
+        var id = CompactIds.encode(42L);
+
+        wallet.restore(id, 7L);
+
+        assertThat(wallet.get(id).getBalance(), equalTo(7L));
+        assertThrows(IllegalArgumentException.class,
+                     () -> wallet.restore(UUID.randomUUID().toString(), 7L));
+    }
+}
@@ -0,0 +1,341 @@
+package io.github.spacanowski.wallet.datastore;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import io.github.spacanowski.wallet.exception.WalletUnavailableException;
+import io.github.spacanowski.wallet.health.WriteAheadLogHealthCheck;
+import io.github.spacanowski.wallet.model.data.TransferOrder;
+import io.github.spacanowski.wallet.model.data.TransferResult;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+public class DurableWalletTest extends WalletTest {
+
+    @Override
+    protected Wallet createWallet() {
+        try {
+            return recover(Files.createTempDirectory("wallet"), WriteAheadLog.SyncPolicy.GROUPED);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Test
+    public void shouldRecoverAccountsAfterRestart() throws Exception {
+        var directory = Files.createTempDirectory("wallet");
+        var wallet = recover(directory, WriteAheadLog.SyncPolicy.PER_OPERATION);
+
+        var first = wallet.create(1000L);
+        var second = wallet.create(0L);
+        var deleted = wallet.create(50L);
+
+        IntStream.range(0, 100)
+                 .parallel()
+                 .forEach(i -> wallet.transfer(first.getId(), second.getId(), 3L));
+
+        wallet.transfer(List.of(new TransferOrder(second.getId(), deleted.getId(), 10L)));
+        wallet.delete(deleted.getId());
+        wallet.stop();
+
+        var recovered = recover(directory, WriteAheadLog.SyncPolicy.PER_OPERATION);
+
+        assertThat(recovered.get(first.getId()).getBalance(), equalTo(700L));
+        assertThat(recovered.get(second.getId()).getBalance(), equalTo(290L));
+        assertNull(recovered.get(deleted.getId()));
+
+        recovered.stop();
+    }
+
+    @Test
+    public void shouldRejectHolds() throws Exception {
+        var wallet = recover(Files.createTempDirectory("wallet"), WriteAheadLog.SyncPolicy.PER_OPERATION);
+
+        var customer = wallet.create(100L);
+        var merchant = wallet.create(0L);
+        var expiresAt = System.currentTimeMillis() + 60_000;
+
+        // Not journaled, a hold would reserve nothing once the wallet restarted
+        assertThrows(IllegalArgumentException.class,
+                     () -> wallet.hold(customer.getId(), merchant.getId(), 40L, expiresAt));
+        assertThrows(IllegalArgumentException.class, () -> wallet.capture("hold", 30L));
+        assertThrows(IllegalArgumentException.class, () -> wallet.release("hold"));
+
+        assertThat(wallet.balance(customer.getId()).getAvailable(), equalTo(100L));
+
+        wallet.stop();
+    }
+
+    @Test
+    public void shouldIgnoreTornRecordAtEndOfLog() throws Exception {
+        var directory = Files.createTempDirectory("wallet");
+        var wallet = recover(directory, WriteAheadLog.SyncPolicy.PERIODIC);
+
+        var account = wallet.create(10L);
+        wallet.stop();
+
+        // Simulates a crash in the middle of writing the next record
+        Files.write(lastSegment(directory), new byte[] { 0, 0, 0, 40, 1, 2, 3 }, StandardOpenOption.APPEND);
+
+        var recovered = recover(directory, WriteAheadLog.SyncPolicy.PERIODIC);
+        var other = recovered.create(5L);
+        recovered.stop();
+
+        var again = recover(directory, WriteAheadLog.SyncPolicy.PERIODIC);
+
+        assertThat(again.get(account.getId()).getBalance(), equalTo(10L));
+        assertThat(again.get(other.getId()).getBalance(), equalTo(5L));
+
+        again.stop();
+    }
+
+    @Test
+    public void shouldRecoverWholeTransactionsOnly() throws Exception {
+        var directory = Files.createTempDirectory("wallet");
+        var wallet = recover(directory, WriteAheadLog.SyncPolicy.PER_OPERATION);
+
+        var buyer = wallet.create(100L);
+        var seller = wallet.create(0L);
+        var fee = wallet.create(0L);
+
+        wallet.transact(List.of(new TransferOrder(buyer.getId(), seller.getId(), 50L),
+                                new TransferOrder(buyer.getId(), fee.getId(), 5L)));
+        wallet.transact(List.of(new TransferOrder(buyer.getId(), seller.getId(), 40L),
+                                new TransferOrder(buyer.getId(), fee.getId(), 4L)));
+        wallet.stop();
+
+        // Simulates a crash in the middle of writing the last leg of the second transaction
+        try (var channel = FileChannel.open(lastSegment(directory), StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        var recovered = recover(directory, WriteAheadLog.SyncPolicy.PER_OPERATION);
+
+        assertThat(recovered.get(buyer.getId()).getBalance(), equalTo(45L));
+        assertThat(recovered.get(seller.getId()).getBalance(), equalTo(50L));
+        assertThat(recovered.get(fee.getId()).getBalance(), equalTo(5L));
+
+        recovered.stop();
+    }
+
+    @Test
+    public void shouldRecoverFromSnapshotAndLogTail() throws Exception {
+        var directory = Files.createTempDirectory("wallet");
+        var wallet = recover(directory, WriteAheadLog.SyncPolicy.PER_OPERATION, 256);
+
+        var first = wallet.create(1000L);
+        var second = wallet.create(0L);
+        var deleted = wallet.create(50L);
+
+        IntStream.range(0, 100).forEach(i -> wallet.transfer(first.getId(), second.getId(), 3L));
+
+        wallet.snapshot();
+
+        // Changes after the snapshot come from the log only
+        var created = wallet.create(20L);
+        wallet.transfer(second.getId(), created.getId(), 10L);
+        wallet.delete(deleted.getId());
+        wallet.stop();
+
+        assertThat(files(directory, Snapshot.SUFFIX), equalTo(1L));
+
+        var recovered = recover(directory, WriteAheadLog.SyncPolicy.PER_OPERATION, 256);
+
+        assertThat(recovered.get(first.getId()).getBalance(), equalTo(700L));
+        assertThat(recovered.get(second.getId()).getBalance(), equalTo(290L));
+        assertThat(recovered.get(created.getId()).getBalance(), equalTo(30L));
+        assertNull(recovered.get(deleted.getId()));
+
+        // Next snapshot is merged from the previous one and the log in between
+        recovered.snapshot();
+        recovered.stop();
+
+        assertThat(files(directory, Snapshot.SUFFIX), equalTo(1L));
+        assertThat(files(directory, WriteAheadLog.SEGMENT_SUFFIX), equalTo(1L));
+
+        var again = recover(directory, WriteAheadLog.SyncPolicy.PER_OPERATION, 256);
+
+        assertThat(again.get(first.getId()).getBalance(), equalTo(700L));
+        assertThat(again.get(second.getId()).getBalance(), equalTo(290L));
+        assertThat(again.get(created.getId()).getBalance(), equalTo(30L));
+        assertNull(again.get(deleted.getId()));
+
+        again.stop();
+    }
+
+    @Test
+    public void shouldStopTakingChangesOnceLogFails() throws Exception {
+        var wallet = recover(Files.createTempDirectory("wallet"), WriteAheadLog.SyncPolicy.PER_OPERATION);
+        var health = new WriteAheadLogHealthCheck(wallet);
+
+        var first = wallet.create(100L);
+        var second = wallet.create(0L);
+
+        assertThat(health.execute().isHealthy(), equalTo(true));
+
+        // Closes the log under the wallet, its next write fails
+        wallet.stop();
+
+        var applied = assertThrows(WalletUnavailableException.class,
+                                   () -> wallet.transfer(first.getId(), second.getId(), 10L));
+
+        assertThat(applied.isApplied(), equalTo(true));
+        assertThat(wallet.get(first.getId()).getBalance(), equalTo(90L));
+
+        var rejected = assertThrows(WalletUnavailableException.class,
+                                    () -> wallet.transfer(first.getId(), second.getId(), 10L));
+
+        assertThat(rejected.isApplied(), equalTo(false));
+        assertThat(wallet.get(first.getId()).getBalance(), equalTo(90L));
+        assertThrows(WalletUnavailableException.class, () -> wallet.create(1L));
+        assertThrows(WalletUnavailableException.class, () -> wallet.delete(first.getId()));
+        assertThat(wallet.get(first.getId()).getBalance(), equalTo(90L));
+        assertThat(health.execute().isHealthy(), equalTo(false));
+    }
+
+    @Test
+    public void shouldNeverLogTransferBeforeTheCreditItSpends() throws Exception {
+        var directory = Files.createTempDirectory("wallet");
+        var applied = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+
+        // Holds the first transfer between applying it and returning, as a slow thread would
+        var engine = new LockingWallet() {
+            @Override
+            public TransferResult transfer(String fromId, String toId, long sum) {
+                var result = super.transfer(fromId, toId, sum);
+
+                if (applied.getCount() > 0) {
+                    applied.countDown();
+                    await(release);
+                }
+
+                return result;
+            }
+        };
+
+        var wallet = recover(engine, directory);
+
+        var payer = wallet.create(100L);
+        var middle = wallet.create(0L);
+        var payee = wallet.create(0L);
+
+        var credit = CompletableFuture.runAsync(() -> wallet.transfer(payer.getId(), middle.getId(), 50L));
+
+        applied.await();
+
+        // Spends the credit already visible in memory
+        var spend = CompletableFuture.runAsync(() -> wallet.transfer(middle.getId(), payee.getId(), 50L));
+
+        Thread.sleep(100);
+        release.countDown();
+
+        credit.get(10, TimeUnit.SECONDS);
+        spend.get(10, TimeUnit.SECONDS);
+        wallet.stop();
+
+        var records = new ArrayList<WriteAheadLog.Record>();
+
+        WriteAheadLog.replay(directory, 0, Long.MAX_VALUE, records::add);
+
+        var last = records.get(records.size() - 1);
+
+        assertThat(last.getId(), equalTo(middle.getId()));
+
+        // Simulates a crash before the last record reached the disk
+        try (var channel = FileChannel.open(lastSegment(directory), StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - Integer.BYTES - last.getSize());
+        }
+
+        var recovered = recover(directory, WriteAheadLog.SyncPolicy.PER_OPERATION);
+
+        assertThat(recovered.get(payer.getId()).getBalance(), equalTo(50L));
+        assertThat(recovered.get(middle.getId()).getBalance(), equalTo(50L));
+        assertThat(recovered.get(payee.getId()).getBalance(), equalTo(0L));
+
+        recovered.stop();
+    }
+
+    @Test
+    public void shouldRejectCorruptedSnapshot() throws Exception {
+        var directory = Files.createTempDirectory("wallet");
+        var wallet = recover(directory, WriteAheadLog.SyncPolicy.PER_OPERATION);
+
+        wallet.create(10L);
+        wallet.snapshot();
+        wallet.stop();
+
+        try (var files = Files.list(directory)) {
+            var snapshot = files.filter(file -> file.toString().endsWith(Snapshot.SUFFIX)).findFirst().get();
+            var content = Files.readAllBytes(snapshot);
+
+            content[content.length - 10] ^= 1;
+            Files.write(snapshot, content);
+        }
+
+        assertThrows(IOException.class, () -> recover(directory, WriteAheadLog.SyncPolicy.PER_OPERATION));
+    }
+
+    private DurableWallet recover(Path directory, WriteAheadLog.SyncPolicy syncPolicy) throws IOException {
+        return recover(directory, syncPolicy, 1024 * 1024);
+    }
+
+    private DurableWallet recover(Path directory, WriteAheadLog.SyncPolicy syncPolicy, long segmentSize)
+            throws IOException {
+        return DurableWallet.recover(new LockingWallet(),
+                                     directory,
+                                     syncPolicy,
+                                     1,
+                                     segmentSize,
+                                     0,
+                                     TimeUnit.MILLISECONDS);
+    }
+
+    private DurableWallet recover(Wallet engine, Path directory) throws IOException {
+        return DurableWallet.recover(engine,
+                                     directory,
+                                     WriteAheadLog.SyncPolicy.PER_OPERATION,
+                                     1,
+                                     1024 * 1024,
+                                     0,
+                                     TimeUnit.MILLISECONDS);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Path lastSegment(Path directory) throws IOException {
+        try (var files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(WriteAheadLog.SEGMENT_SUFFIX))
+                        .max(Comparator.naturalOrder())
+                        .get();
+        }
+    }
+
+    private static long files(Path directory, String suffix) throws IOException {
+        try (var files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(suffix)).count();
+        }
+    }
+}
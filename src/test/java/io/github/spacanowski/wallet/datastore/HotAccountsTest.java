@@ -0,0 +1,83 @@
+package io.github.spacanowski.wallet.datastore;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+public class HotAccountsTest {
+
+    @Test
+    public void shouldCountAccountsExactlyWhileThereIsRoom() {
+        var hot = new HotAccounts(3);
+
+        hot.offer("a", 1);
+        hot.offer("b", 5);
+        hot.offer("a", 1);
+
+        var top = hot.top();
+
+        assertThat(top.size(), equalTo(2));
+        assertThat(top.get(0).getId(), equalTo("b"));
+        assertThat(top.get(0).getCount(), equalTo(5L));
+        assertThat(top.get(1).getCount(), equalTo(2L));
+        assertThat(top.get(1).getError(), equalTo(0L));
+    }
+
+    @Test
+    public void shouldKeepHeavyHittersAmongManyAccounts() {
+        // Guaranteed for accounts touched more often than total weight divided by the number of counters
+        var hot = new HotAccounts(4);
+
+        for (int i = 0; i < 10_000; i++) {
+            hot.offer("cold-" + i, 1);
+
+            if (i % 2 == 0) {
+                hot.offer("hot", 1);
+            }
+        }
+
+        var top = hot.top().get(0);
+
+        assertThat(top.getId(), equalTo("hot"));
+        assertThat(top.getCount(), greaterThanOrEqualTo(5_000L));
+        assertThat(top.getCount() - top.getError(), lessThanOrEqualTo(5_000L));
+    }
+
+    @Test
+    public void shouldMergeCountsOfAllThreads() {
+        var hot = new HotAccounts(2, 4);
+
+        IntStream.range(0, 8_000)
+                 .parallel()
+                 .forEach(i -> hot.offer(i % 2 == 0 ? "a" : "b", 1));
+
+        var top = hot.top();
+
+        assertThat(top.size(), equalTo(2));
+        assertThat(top.get(0).getCount(), equalTo(4_000L));
+        assertThat(top.get(1).getCount(), equalTo(4_000L));
+        assertThat(top.get(0).getError(), equalTo(0L));
+    }
+
+    @Test
+    public void shouldKeepMergedCountAboveRealOneAfterEvictions() {
+        // Accounts missing from a full sketch are merged with its smallest count, so a cold one stays
+        // below the total weight divided by the number of counters
+        var hot = new HotAccounts(8, 4);
+
+        IntStream.range(0, 8_000)
+                 .parallel()
+                 .forEach(i -> hot.offer(i % 4 == 0 ? "hot" : "cold-" + i, 1));
+
+        var top = hot.top().get(0);
+
+        assertThat(top.getId(), equalTo("hot"));
+        assertThat(top.getCount(), greaterThanOrEqualTo(2_000L));
+        assertThat(top.getCount() - top.getError(), lessThanOrEqualTo(2_000L));
+    }
+}
@@ -0,0 +1,299 @@
+package io.github.spacanowski.wallet.datastore;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import io.github.spacanowski.wallet.exception.AccountNotFoundException;
+import io.github.spacanowski.wallet.exception.HoldNotFoundException;
+import io.github.spacanowski.wallet.exception.InsufficientResourcesException;
+import io.github.spacanowski.wallet.exception.TransactionConflictException;
+import io.github.spacanowski.wallet.model.data.Account;
+import io.github.spacanowski.wallet.model.data.TransferOrder;
+import io.github.spacanowski.wallet.model.data.TransferOutcome;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+public class LockingWalletTest extends WalletTest {
+
+    @Override
+    protected Wallet createWallet() {
+        return new LockingWallet();
+    }
+
+    @Test
+    public void shouldKeepTotalBalanceConstantDuringConcurrentTransfers() {
+        var wallet = new LockingWallet();
+
+        var ids = List.of(wallet.create(1000L).getId(),
+                          wallet.create(1000L).getId(),
+                          wallet.create(1000L).getId());
+
+        var running = new AtomicBoolean(true);
+        var invariant = CompletableFuture.runAsync(() -> {
+            while (running.get()) {
+                var total = wallet.get(ids)
+                                  .stream()
+                                  .mapToLong(Account::getBalance)
+                                  .sum();
+
+                assertThat(total, equalTo(3000L));
+            }
+        });
+
+        IntStream.range(0, 10_000)
+                 .parallel()
+                 .forEach(i -> {
+                     try {
+                         wallet.transfer(ids.get(i % 3), ids.get((i + 1) % 3), 7L);
+                     } catch (InsufficientResourcesException e) {
+                         // Accounts may be drained for a moment
+                     }
+                 });
+
+        running.set(false);
+
+        invariant.join();
+
+        assertThat(wallet.get(ids).stream().mapToLong(Account::getBalance).sum(), equalTo(3000L));
+    }
+
+    @Test
+    public void shouldFoldCreditsOfStripedAccount() {
+        var wallet = createWallet();
+        var merchant = wallet.create(5L).getId();
+
+        var customers = IntStream.range(0, 16)
+                                 .mapToObj(i -> wallet.create(1000L).getId())
+                                 .toArray(String[]::new);
+
+        assertThat(wallet.stripe(merchant), equalTo(true));
+        assertThat(wallet.stripe("missing"), equalTo(false));
+
+        IntStream.range(0, 16_000)
+                 .parallel()
+                 .forEach(i -> wallet.transfer(customers[i % customers.length], merchant, 1L));
+
+        assertThat(wallet.get(merchant).getBalance(), equalTo(16_005L));
+        assertThat(wallet.balance(merchant).getBalance(), equalTo(16_005L));
+
+        // Debit folds credits into the balance first
+        var result = wallet.transfer(merchant, customers[0], 16_000L);
+
+        assertThat(result.getFrom().getBalance(), equalTo(5L));
+        assertThat(wallet.get(merchant).getBalance(), equalTo(5L));
+        assertThat(wallet.get(customers[0]).getBalance(), equalTo(16_000L));
+    }
+
+    @Test
+    public void shouldTransferBatchSpanningChunksInOrder() {
+        var wallet = createWallet();
+        var from = wallet.create(LockingWallet.BATCH_CHUNK_SIZE + 1L).getId();
+        var to = wallet.create(0L).getId();
+
+        // The last debit of the second chunk only succeeds once every order before it was applied
+        var orders = IntStream.range(0, 2 * LockingWallet.BATCH_CHUNK_SIZE)
+                              .mapToObj(i -> i % 2 == 0
+                                      ? new TransferOrder(from, to, 2L)
+                                      : new TransferOrder(to, from, 1L))
+                              .collect(Collectors.toList());
+
+        var outcomes = wallet.transfer(orders);
+
+        assertThat(outcomes.stream().allMatch(outcome -> outcome.getStatus() == TransferOutcome.Status.COMPLETED),
+                   equalTo(true));
+        assertThat(wallet.get(from).getBalance(), equalTo(1L));
+        assertThat(wallet.get(to).getBalance(), equalTo((long) LockingWallet.BATCH_CHUNK_SIZE));
+    }
+
+    @Test
+    public void shouldReserveHeldSumUntilCaptured() {
+        var wallet = createWallet();
+        var customer = wallet.create(100L).getId();
+        var merchant = wallet.create(0L).getId();
+
+        var hold = wallet.hold(customer, merchant, 60L, System.currentTimeMillis() + 60_000);
+
+        assertThat(wallet.get(customer).getHeld(), equalTo(60L));
+        assertThat(wallet.balance(customer).getBalance(), equalTo(100L));
+        assertThat(wallet.balance(customer).getAvailable(), equalTo(40L));
+
+        assertThrows(InsufficientResourcesException.class, () -> wallet.transfer(customer, merchant, 50L));
+        assertThrows(InsufficientResourcesException.class,
+                     () -> wallet.hold(customer, merchant, 50L, System.currentTimeMillis() + 60_000));
+        assertThrows(InsufficientResourcesException.class,
+                     () -> wallet.transact(List.of(new TransferOrder(customer, merchant, 50L))));
+        assertThat(wallet.transfer(List.of(new TransferOrder(customer, merchant, 50L))).get(0).getStatus(),
+                   equalTo(TransferOutcome.Status.INSUFFICIENT_RESOURCES));
+        assertThrows(IllegalArgumentException.class, () -> wallet.capture(hold.getId(), 61L));
+
+        // Rest of the hold is released along with the capture
+        var result = wallet.capture(hold.getId(), 45L);
+
+        assertThat(result.getFrom().getBalance(), equalTo(55L));
+        assertThat(result.getFrom().getHeld(), equalTo(0L));
+        assertThat(result.getTo().getBalance(), equalTo(45L));
+        assertThat(wallet.balance(customer).getAvailable(), equalTo(55L));
+
+        assertThrows(HoldNotFoundException.class, () -> wallet.capture(hold.getId(), 1L));
+        assertThrows(HoldNotFoundException.class, () -> wallet.release(hold.getId()));
+    }
+
+    @Test
+    public void shouldReleaseHold() {
+        var wallet = createWallet();
+        var customer = wallet.create(100L).getId();
+        var merchant = wallet.create(0L).getId();
+
+        var hold = wallet.hold(customer, merchant, 100L, System.currentTimeMillis() + 60_000);
+        var version = wallet.balance(customer).getVersion();
+
+        var released = wallet.release(hold.getId());
+
+        assertThat(released.getBalance(), equalTo(100L));
+        assertThat(released.getHeld(), equalTo(0L));
+        assertThat(wallet.balance(customer).getAvailable(), equalTo(100L));
+        assertThat(wallet.balance(customer).getVersion(), equalTo(version + 1));
+
+        assertThrows(HoldNotFoundException.class, () -> wallet.release(hold.getId()));
+        assertThrows(HoldNotFoundException.class, () -> wallet.release("missing"));
+    }
+
+    @Test
+    public void shouldExpireHoldsNotCaptured() {
+        var wallet = createWallet();
+        var customer = wallet.create(100L).getId();
+        var merchant = wallet.create(0L).getId();
+        var now = System.currentTimeMillis();
+
+        var expiring = wallet.hold(customer, merchant, 30L, now + 1_000);
+        var captured = wallet.hold(customer, merchant, 20L, now + 1_000);
+
+        wallet.hold(customer, merchant, 10L, now + 60_000);
+        wallet.capture(captured.getId(), 20L);
+
+        assertThat(wallet.expireHolds(now), equalTo(0));
+        assertThat(wallet.balance(customer).getAvailable(), equalTo(40L));
+
+        assertThat(wallet.expireHolds(now + 1_000 + LockingWallet.HOLD_TICK_MILLIS), equalTo(1));
+        assertThat(wallet.balance(customer).getAvailable(), equalTo(70L));
+        assertThat(wallet.get(customer).getHeld(), equalTo(10L));
+
+        assertThrows(HoldNotFoundException.class, () -> wallet.capture(expiring.getId(), 30L));
+    }
+
+    @Test
+    public void shouldKeepHeldSumsConsistentDuringConcurrentHolds() {
+        var wallet = createWallet();
+        var accounts = IntStream.range(0, 8)
+                                .mapToObj(i -> wallet.create(1000L).getId())
+                                .toArray(String[]::new);
+        var now = System.currentTimeMillis();
+
+        IntStream.range(0, 20_000)
+                 .parallel()
+                 .forEach(i -> {
+                     var from = accounts[i % accounts.length];
+                     var to = accounts[(i + 1) % accounts.length];
+
+                     try {
+                         var hold = wallet.hold(from, to, 7L, now + i % 3 * 1_000);
+
+                         if (i % 3 == 1) {
+                             wallet.capture(hold.getId(), 5L);
+                         } else if (i % 3 == 2) {
+                             wallet.release(hold.getId());
+                         }
+
+                         wallet.transfer(to, from, 3L);
+                     } catch (InsufficientResourcesException | HoldNotFoundException e) {
+                         // Expected when balances run low or a hold expired first
+                     }
+
+                     if (i % 100 == 0) {
+                         wallet.expireHolds(now + i % 3 * 1_000);
+                     }
+                 });
+
+        wallet.expireHolds(now + 3_000);
+
+        var total = 0L;
+
+        for (var id : accounts) {
+            var account = wallet.get(id);
+
+            assertThat(account.getHeld(), equalTo(0L));
+            assertThat(wallet.balance(id).getAvailable(), equalTo(account.getBalance()));
+
+            total += account.getBalance();
+        }
+
+        assertThat(total, equalTo(8_000L));
+    }
+
+    @Test
+    public void shouldApplyAllLegsOfTransaction() {
+        var wallet = createWallet();
+        var buyer = wallet.create(100L).getId();
+        var seller = wallet.create(0L).getId();
+        var fee = wallet.create(0L).getId();
+
+        var result = wallet.transact(List.of(new TransferOrder(buyer, seller, 90L),
+                                             new TransferOrder(buyer, fee, 10L)));
+
+        assertThat(result.stream().map(Account::getId).collect(Collectors.toList()), equalTo(List.of(buyer, seller, fee)));
+        assertThat(result.stream().map(Account::getBalance).collect(Collectors.toList()), equalTo(List.of(0L, 90L, 10L)));
+        assertThat(wallet.getOperations().size(), equalTo(5));
+    }
+
+    @Test
+    public void shouldApplyNoLegOfFailedTransaction() {
+        var wallet = createWallet();
+        var buyer = wallet.create(100L).getId();
+        var seller = wallet.create(0L).getId();
+
+        assertThrows(InsufficientResourcesException.class,
+                     () -> wallet.transact(List.of(new TransferOrder(buyer, seller, 90L),
+                                                   new TransferOrder(buyer, seller, 20L))));
+        assertThrows(AccountNotFoundException.class,
+                     () -> wallet.transact(List.of(new TransferOrder(buyer, "missing", 1L))));
+
+        assertThat(wallet.get(buyer).getBalance(), equalTo(100L));
+        assertThat(wallet.get(seller).getBalance(), equalTo(0L));
+        assertThat(wallet.balance(buyer).getVersion(), equalTo(0L));
+    }
+
+    @Test
+    public void shouldKeepTotalBalanceConstantDuringConcurrentTransactions() {
+        var wallet = new LockingWallet();
+
+        var ids = List.of(wallet.create(1000L).getId(),
+                          wallet.create(1000L).getId(),
+                          wallet.create(1000L).getId());
+
+        IntStream.range(0, 10_000)
+                 .parallel()
+                 .forEach(i -> {
+                     var from = ids.get(i % 3);
+
+                     try {
+                         if (i % 2 == 0) {
+                             wallet.transact(List.of(new TransferOrder(from, ids.get((i + 1) % 3), 3L),
+                                                     new TransferOrder(from, ids.get((i + 2) % 3), 4L)));
+                         } else {
+                             wallet.transfer(from, ids.get((i + 1) % 3), 7L);
+                         }
+                     } catch (InsufficientResourcesException | TransactionConflictException e) {
+                         // Accounts may be drained for a moment or keep changing under a transaction
+                     }
+                 });
+
+        assertThat(wallet.get(ids).stream().mapToLong(Account::getBalance).sum(), equalTo(3000L));
+    }
+}
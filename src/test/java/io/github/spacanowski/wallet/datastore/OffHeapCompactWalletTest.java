@@ -0,0 +1,9 @@
+package io.github.spacanowski.wallet.datastore;
+
+public class OffHeapCompactWalletTest extends CompactWalletTest {
+
+    @Override
+    protected Wallet createWallet() {
+        return new CompactWallet(Wallet.DEFAULT_SCALE, new AuditLog(Wallet.DEFAULT_SCALE), 1, 4, true);
+    }
+}
@@ -0,0 +1,118 @@
+package io.github.spacanowski.wallet.datastore;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.Assert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.github.spacanowski.wallet.exception.AccountNotFoundException;
+import io.github.spacanowski.wallet.exception.BalanceOverflowException;
+import io.github.spacanowski.wallet.exception.WalletUnavailableException;
+
+import java.time.Duration;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+public class ShardedWalletTest extends WalletTest {
+
+    @Override
+    protected Wallet createWallet() {
+        return new ShardedWallet(Wallet.DEFAULT_SCALE, new AuditLog(Wallet.DEFAULT_SCALE), 4, 16);
+    }
+
+    @Test
+    public void shouldTransferAcrossShards() {
+        var wallet = createWallet();
+
+        var accounts = IntStream.range(0, 32)
+                                .mapToObj(i -> wallet.create(100L).getId())
+                                .toArray(String[]::new);
+
+        IntStream.range(0, 3200)
+                 .parallel()
+                 .forEach(i -> wallet.transfer(accounts[i % 32], accounts[(i + 7) % 32], 1L));
+
+        var total = IntStream.range(0, 32)
+                             .mapToLong(i -> wallet.get(accounts[i]).getBalance())
+                             .sum();
+
+        assertThat(total, equalTo(3200L));
+        assertThat(wallet.get(accounts[0]).getBalance(), equalTo(100L));
+    }
+
+    @Test
+    public void shouldKeepAccountsAfterDeletingFromShard() {
+        var wallet = createWallet();
+
+        var first = wallet.create(1L);
+        var second = wallet.create(2L);
+        var third = wallet.create(3L);
+
+        wallet.delete(first.getId());
+
+        assertThat(wallet.get(second.getId()).getBalance(), equalTo(2L));
+        assertThat(wallet.get(third.getId()).getBalance(), equalTo(3L));
+    }
+
+    @Test
+    public void shouldReportLostSumWhenRefundFails() {
+        var metrics = mock(WalletMetrics.class);
+        var wallet = new ShardedWallet(Wallet.DEFAULT_SCALE, new AuditLog(Wallet.DEFAULT_SCALE), 2, 16, metrics);
+
+        var from = wallet.create(10L).getId();
+        var to = wallet.create(Long.MAX_VALUE).getId();
+
+        while (Math.floorMod(from.hashCode(), 2) == Math.floorMod(to.hashCode(), 2)) {
+            to = wallet.create(Long.MAX_VALUE).getId();
+        }
+
+        // Commands are told apart by their submission time: lookup of the target, debit, credit, refund.
+        // The sender is deleted just before the credit, which overflows, so the refund fails too.
+        when(metrics.start()).thenReturn(1L, 2L, 3L, 4L);
+        doAnswer(invocation -> {
+            wallet.delete(from);
+            return null;
+        }).when(metrics).dequeued(eq(3L));
+
+        var target = to;
+        var failure = assertThrows(BalanceOverflowException.class, () -> wallet.transfer(from, target, 5L));
+
+        assertThat(failure.getSuppressed().length, equalTo(1));
+        assertThat(failure.getSuppressed()[0], instanceOf(AccountNotFoundException.class));
+        verify(metrics).lost(5L);
+    }
+
+    @Test
+    public void shouldFailCommandsSentAfterStop() throws InterruptedException {
+        var wallet = new ShardedWallet(Wallet.DEFAULT_SCALE, new AuditLog(Wallet.DEFAULT_SCALE), 2, 16);
+
+        var account = wallet.create(10L).getId();
+
+        wallet.stop();
+
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            assertThrows(WalletUnavailableException.class, () -> wallet.get(account));
+            assertThrows(WalletUnavailableException.class, () -> wallet.create(1L));
+        });
+    }
+
+    @Test
+    public void shouldFailCommandWhenInterruptedWhileSending() {
+        var wallet = createWallet();
+
+        var account = wallet.create(10L).getId();
+
+        Thread.currentThread().interrupt();
+
+        assertThrows(WalletUnavailableException.class, () -> wallet.get(account));
+        assertThat(Thread.interrupted(), equalTo(true));
+        assertThat(wallet.get(account).getBalance(), equalTo(10L));
+    }
+}
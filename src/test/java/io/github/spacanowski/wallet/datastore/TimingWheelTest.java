@@ -0,0 +1,105 @@
+package io.github.spacanowski.wallet.datastore;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class TimingWheelTest {
+
+    @Test
+    public void shouldFireTimeoutsOnceTheirDeadlinePassed() {
+        var wheel = new TimingWheel<String>(10, 1_000);
+
+        wheel.schedule("a", 1_015);
+        wheel.schedule("b", 1_020);
+
+        assertThat(wheel.advance(1_019), empty());
+        assertThat(wheel.advance(1_020), containsInAnyOrder("a", "b"));
+        assertThat(wheel.size(), equalTo(0L));
+    }
+
+    @Test
+    public void shouldFirePassedDeadlinesOnNextTick() {
+        var wheel = new TimingWheel<String>(10, 1_000);
+
+        wheel.schedule("a", 500);
+
+        assertThat(wheel.advance(1_009), empty());
+        assertThat(wheel.advance(1_010), contains("a"));
+    }
+
+    @Test
+    public void shouldNotFireCancelledTimeouts() {
+        var wheel = new TimingWheel<String>(10, 0);
+
+        var timeout = wheel.schedule("a", 100_000);
+
+        wheel.schedule("b", 100_000);
+
+        assertThat(wheel.cancel(timeout), equalTo(true));
+        assertThat(wheel.cancel(timeout), equalTo(false));
+        assertThat(wheel.advance(100_000), contains("b"));
+    }
+
+    @Test
+    public void shouldFireDueTimeoutsInChunks() {
+        var wheel = new TimingWheel<Integer>(10, 0);
+
+        for (int i = 0; i < 25; i++) {
+            wheel.schedule(i, 10 + i % 2 * 10);
+        }
+
+        wheel.schedule(25, 1_000);
+
+        assertThat(wheel.advance(500, 10).size(), equalTo(10));
+        assertThat(wheel.advance(500, 10).size(), equalTo(10));
+        assertThat(wheel.advance(500, 10).size(), equalTo(5));
+        assertThat(wheel.advance(500, 10), empty());
+        assertThat(wheel.size(), equalTo(1L));
+        assertThat(wheel.advance(1_000, 10), contains(25));
+    }
+
+    @Test
+    public void shouldFireTimeoutsOfEveryLevelOnTime() {
+        var wheel = new TimingWheel<Long>(1, 0);
+        var random = new Random(7);
+        var deadlines = new long[10_000];
+
+        for (int i = 0; i < deadlines.length; i++) {
+            // Skewed towards near deadlines, the farthest ones sit in the fifth level
+            deadlines[i] = 1 + (long) (Math.pow(random.nextDouble(), 4) * 50_000_000L);
+
+            wheel.schedule(deadlines[i], deadlines[i]);
+        }
+
+        Arrays.sort(deadlines);
+
+        var now = 0L;
+        var fired = 0;
+        var due = 0;
+
+        while (wheel.size() > 0) {
+            now += 1 + random.nextInt(5_000);
+
+            for (var deadline : wheel.advance(now)) {
+                assertThat(deadline <= now, equalTo(true));
+                fired++;
+            }
+
+            while (due < deadlines.length && deadlines[due] <= now) {
+                due++;
+            }
+
+            assertThat(fired, equalTo(due));
+        }
+
+        assertThat(fired, equalTo(deadlines.length));
+    }
+}
@@ -0,0 +1,63 @@
+package io.github.spacanowski.wallet.datastore;
+
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import io.github.spacanowski.wallet.exception.InsufficientResourcesException;
+
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.stream.Collectors;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.jupiter.api.Test;
+
+public class TransferEventTest {
+
+    @Test
+    public void shouldRecordTransfersWithOutcome() throws Exception {
+        var wallet = new LockingWallet();
+        var from = wallet.create(10L).getId();
+        var to = wallet.create(0L).getId();
+        var file = Files.createTempFile("transfers", ".jfr");
+
+        try (var recording = new Recording()) {
+            recording.enable(TransferEvent.class).withThreshold(Duration.ZERO);
+            recording.start();
+
+            wallet.transfer(from, to, 10L);
+
+            assertThrows(InsufficientResourcesException.class, () -> wallet.transfer(from, to, 10L));
+
+            recording.stop();
+            recording.dump(file);
+        }
+
+        var outcomes = RecordingFile.readAllEvents(file)
+                                    .stream()
+                                    .filter(event -> event.getEventType().getName().equals("io.github.spacanowski.wallet.Transfer"))
+                                    .map(event -> event.getString("outcome"))
+                                    .collect(Collectors.toList());
+
+        assertThat(outcomes, containsInAnyOrder("COMPLETED", "INSUFFICIENT_RESOURCES"));
+
+        Files.delete(file);
+    }
+
+    @Test
+    public void shouldThrowBusinessFailuresWithoutStackTrace() {
+        var wallet = new LockingWallet();
+        var from = wallet.create(0L).getId();
+        var to = wallet.create(0L).getId();
+
+        var exception = assertThrows(InsufficientResourcesException.class, () -> wallet.transfer(from, to, 10L));
+
+        assertThat(exception.getStackTrace().length, equalTo(0));
+        assertThat(exception.getMessage(),
+                   equalTo("Account " + from + " has insufficient resources to execute operation"));
+    }
+}
@@ -0,0 +1,44 @@
+package io.github.spacanowski.wallet.datastore;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.Assert.assertThat;
+
+import com.codahale.metrics.MetricRegistry;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class WalletMetricsTest {
+
+    @Test
+    public void shouldMeasureLocksAndHotAccounts() {
+        var registry = new MetricRegistry();
+        var wallet = new LockingWallet(Wallet.DEFAULT_SCALE, new AuditLog(Wallet.DEFAULT_SCALE), new WalletMetrics(registry));
+
+        var hot = wallet.create(1_000_000L).getId();
+        var cold = wallet.create(0L).getId();
+
+        for (int i = 0; i < 2_000; i++) {
+            wallet.transfer(hot, cold, 1L);
+        }
+
+        assertThat(registry.timer(MetricRegistry.name(Wallet.class, "lock-wait")).getCount(), equalTo(2_000L));
+        assertThat(registry.timer(MetricRegistry.name(Wallet.class, "lock-hold")).getCount(), equalTo(2_000L));
+
+        var top = (List<?>) registry.getGauges().get(MetricRegistry.name(Wallet.class, "hot-accounts")).getValue();
+
+        assertThat(top.size(), equalTo(2));
+        assertThat(((HotAccounts.HotAccount) top.get(0)).getCount(), greaterThan(0L));
+    }
+
+    @Test
+    public void shouldReadNothingWhenDisabled() {
+        var metrics = WalletMetrics.disabled();
+
+        assertThat(metrics.start(), equalTo(0L));
+        assertThat(metrics.lockAcquired(0L), equalTo(0L));
+        assertThat(metrics.getHotAccounts().isEmpty(), equalTo(true));
+    }
+}
@@ -9,19 +9,30 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import io.github.spacanowski.wallet.exception.AccountNotFoundException;
 import io.github.spacanowski.wallet.exception.InsufficientResourcesException;
+import io.github.spacanowski.wallet.model.data.TransferOrder;
+import io.github.spacanowski.wallet.model.data.TransferOutcome;
 
 import java.math.BigDecimal;
+import java.util.List;
+import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.Test;
 
-public class WalletTest {
+public abstract class WalletTest {
+
+    protected abstract Wallet createWallet();
+
+    // Whether published snapshots carry the number of changes of an account
+    protected boolean countsChanges() {
+        return true;
+    }
 
     @Test
     public void shouldCreateAccount() {
-        var wallet = new Wallet();
-        var balance = BigDecimal.valueOf(2.2);
+        var wallet = createWallet();
+        var balance = 220L;
 
         var result = wallet.create(balance);
 
@@ -31,14 +42,14 @@ public class WalletTest {
 
     @Test
     public void shouldGetAccount() {
-        var wallet = new Wallet();
-        var balance = BigDecimal.valueOf(2.2);
+        var wallet = createWallet();
+        var balance = 220L;
 
-        wallet.create(BigDecimal.valueOf(1.1));
+        wallet.create(110L);
 
         var account = wallet.create(balance);
 
-        wallet.create(BigDecimal.valueOf(3.3));
+        wallet.create(330L);
 
         var result = wallet.get(account.getId());
 
@@ -48,38 +59,60 @@ public class WalletTest {
 
     @Test
     public void shouldTransferBetweenAccounts() {
-        var wallet = new Wallet();
+        var wallet = createWallet();
 
-        var fromInitialBalance = BigDecimal.valueOf(2.2);
+        var fromInitialBalance = 220L;
         var from = wallet.create(fromInitialBalance);
 
-        var toInitialBalance = BigDecimal.valueOf(0.0);
+        var toInitialBalance = 0L;
         var to = wallet.create(toInitialBalance);
 
-        var transferSum = BigDecimal.valueOf(1.1);
+        var transferSum = 110L;
         wallet.transfer(from.getId(), to.getId(), transferSum);
 
         var fromAfterTransfer = wallet.get(from.getId());
 
-        assertThat(fromAfterTransfer.getBalance(), equalTo(fromInitialBalance.subtract(transferSum)));
+        assertThat(fromAfterTransfer.getBalance(), equalTo(fromInitialBalance - transferSum));
 
         var toAfterTransfer = wallet.get(to.getId());
 
-        assertThat(toAfterTransfer.getBalance(), equalTo(toInitialBalance.add(transferSum)));
+        assertThat(toAfterTransfer.getBalance(), equalTo(toInitialBalance + transferSum));
+    }
+
+    @Test
+    public void shouldReturnBalancesAfterTransfer() {
+        var wallet = createWallet();
+
+        // Enough pairs that engines partitioning accounts see transfers both within and across partitions
+        var ids = IntStream.range(0, 16)
+                           .mapToObj(i -> wallet.create(100L).getId())
+                           .collect(Collectors.toList());
+
+        for (int i = 0; i < ids.size(); i++) {
+            var from = ids.get(i);
+            var to = ids.get((i + 1) % ids.size());
+
+            var result = wallet.transfer(from, to, 10L);
+
+            assertThat(result.getFrom().getId(), equalTo(from));
+            assertThat(result.getFrom().getBalance(), equalTo(wallet.get(from).getBalance()));
+            assertThat(result.getTo().getId(), equalTo(to));
+            assertThat(result.getTo().getBalance(), equalTo(wallet.get(to).getBalance()));
+        }
     }
 
     @Test
     public void shouldNotTransferIfResourcesAreInsuficcient() {
-        var wallet = new Wallet();
+        var wallet = createWallet();
 
-        var fromInitialBalance = BigDecimal.valueOf(2.2);
+        var fromInitialBalance = 220L;
         var from = wallet.create(fromInitialBalance);
 
-        var toInitialBalance = BigDecimal.valueOf(0.0);
+        var toInitialBalance = 0L;
         var to = wallet.create(toInitialBalance);
 
         assertThrows(InsufficientResourcesException.class,
-                     () -> wallet.transfer(from.getId(), to.getId(), fromInitialBalance.multiply(BigDecimal.valueOf(2))));
+                     () -> wallet.transfer(from.getId(), to.getId(), fromInitialBalance * 2));
 
         var fromAfterTransfer = wallet.get(from.getId());
 
@@ -92,13 +125,13 @@ public class WalletTest {
 
     @Test
     public void shouldNotTransferIfFromIsNotExisting() {
-        var wallet = new Wallet();
+        var wallet = createWallet();
 
-        var toInitialBalance = BigDecimal.valueOf(0.0);
+        var toInitialBalance = 0L;
         var to = wallet.create(toInitialBalance);
 
         assertThrows(AccountNotFoundException.class,
-                     () -> wallet.transfer("123123", to.getId(), BigDecimal.valueOf(2)));
+                     () -> wallet.transfer("123123", to.getId(), 200L));
 
         var toAfterTransfer = wallet.get(to.getId());
 
@@ -107,23 +140,52 @@ public class WalletTest {
 
     @Test
     public void shouldNotTransferIfToIsNotExisting() {
-        var wallet = new Wallet();
+        var wallet = createWallet();
 
-        var fromInitialBalance = BigDecimal.valueOf(2.2);
+        var fromInitialBalance = 220L;
         var from = wallet.create(fromInitialBalance);
 
         assertThrows(AccountNotFoundException.class,
-                     () -> wallet.transfer(from.getId(), "123123", BigDecimal.valueOf(2)));
+                     () -> wallet.transfer(from.getId(), "123123", 200L));
 
         var fromAfterTransfer = wallet.get(from.getId());
 
         assertThat(fromAfterTransfer.getBalance(), equalTo(fromInitialBalance));
     }
 
+    @Test
+    public void shouldPublishBalanceAfterEachChange() {
+        var wallet = createWallet();
+
+        var from = wallet.create(220L);
+        var to = wallet.create(0L);
+
+        var created = wallet.balance(from.getId());
+
+        assertThat(created.getId(), equalTo(from.getId()));
+        assertThat(created.getBalance(), equalTo(220L));
+        assertThat(created.getVersion(), equalTo(0L));
+
+        wallet.transfer(from.getId(), to.getId(), 110L);
+        wallet.transfer(from.getId(), to.getId(), 10L);
+
+        var fromAfterTransfer = wallet.balance(from.getId());
+        var toAfterTransfer = wallet.balance(to.getId());
+
+        assertThat(fromAfterTransfer.getBalance(), equalTo(100L));
+        assertThat(toAfterTransfer.getBalance(), equalTo(120L));
+        assertThat(toAfterTransfer.getVersion(), equalTo(countsChanges() ? 2L : 0L));
+
+        wallet.delete(from.getId());
+
+        assertNull(wallet.balance(from.getId()));
+        assertNull(wallet.balance("missing"));
+    }
+
     @Test
     public void shouldDeleteAccount() {
-        var wallet = new Wallet();
-        var balance = BigDecimal.valueOf(2.2);
+        var wallet = createWallet();
+        var balance = 220L;
 
         var account = wallet.create(balance);
 
@@ -136,20 +198,20 @@ public class WalletTest {
 
     @Test
     public void shouldTransferBetweenAccountsInThreadSafeWay() {
-        var wallet = new Wallet();
+        var wallet = createWallet();
 
-        var account1InitialBalance = BigDecimal.valueOf(1000.0);
+        var account1InitialBalance = 100000L;
         var account1 = wallet.create(account1InitialBalance);
 
-        var account2InitialBalance = BigDecimal.valueOf(1000.0);
+        var account2InitialBalance = 100000L;
         var account2 = wallet.create(account2InitialBalance);
 
-        var account1toAccount2Sum = BigDecimal.valueOf(1.1);
-        var account2toAccount1Sum = BigDecimal.valueOf(2.2);
+        var account1toAccount2Sum = 110L;
+        var account2toAccount1Sum = 220L;
 
-        var operationsCount = BigDecimal.valueOf(100);
+        var operationsCount = 100;
 
-        IntStream.range(1, operationsCount.intValue() * 2 + 1)
+        IntStream.range(1, operationsCount * 2 + 1)
                  .parallel()
                  .forEach(i -> {
                      if ((i % 2) == 0) {
@@ -163,21 +225,71 @@ public class WalletTest {
 
         assertThat(account1AfterTransfer.getBalance(),
                    equalTo(account1InitialBalance
-                                 .add(account2toAccount1Sum.multiply(operationsCount))
-                                 .subtract(account1toAccount2Sum.multiply(operationsCount))));
+                           + account2toAccount1Sum * operationsCount
+                           - account1toAccount2Sum * operationsCount));
 
         var account2AfterTransfer = wallet.get(account2.getId());
 
         assertThat(account2AfterTransfer.getBalance(),
                    equalTo(account2InitialBalance
-                                .add(account1toAccount2Sum.multiply(operationsCount))
-                                .subtract(account2toAccount1Sum.multiply(operationsCount))));
+                           + account1toAccount2Sum * operationsCount
+                           - account2toAccount1Sum * operationsCount));
+    }
+
+    @Test
+    public void shouldNotOverdrawAccountUnderConcurrentTransfers() {
+        var wallet = createWallet();
+
+        var from = wallet.create(1000L);
+        var to = wallet.create(0L);
+
+        IntStream.range(0, 200)
+                 .parallel()
+                 .forEach(i -> {
+                     try {
+                         wallet.transfer(from.getId(), to.getId(), 30L);
+                     } catch (InsufficientResourcesException e) {
+                         // Expected once 'from' account is drained
+                     }
+                 });
+
+        var fromAfterTransfer = wallet.get(from.getId());
+        var toAfterTransfer = wallet.get(to.getId());
+
+        assertThat(fromAfterTransfer.getBalance(), equalTo(10L));
+        assertThat(toAfterTransfer.getBalance(), equalTo(990L));
+    }
+
+    @Test
+    public void shouldTransferBatch() {
+        var wallet = createWallet();
+
+        var first = wallet.create(100L);
+        var second = wallet.create(0L);
+        var third = wallet.create(0L);
+
+        var outcomes = wallet.transfer(List.of(new TransferOrder(first.getId(), second.getId(), 60L),
+                                               new TransferOrder(second.getId(), third.getId(), 50L),
+                                               new TransferOrder(first.getId(), third.getId(), 60L),
+                                               new TransferOrder(first.getId(), "123123", 10L),
+                                               new TransferOrder(third.getId(), first.getId(), 20L)));
+
+        assertThat(outcomes.stream().map(TransferOutcome::getStatus).collect(Collectors.toList()),
+                   equalTo(List.of(TransferOutcome.Status.COMPLETED,
+                                   TransferOutcome.Status.COMPLETED,
+                                   TransferOutcome.Status.INSUFFICIENT_RESOURCES,
+                                   TransferOutcome.Status.ACCOUNT_NOT_FOUND,
+                                   TransferOutcome.Status.COMPLETED)));
+
+        assertThat(wallet.get(first.getId()).getBalance(), equalTo(60L));
+        assertThat(wallet.get(second.getId()).getBalance(), equalTo(10L));
+        assertThat(wallet.get(third.getId()).getBalance(), equalTo(30L));
     }
 
     @Test
     public void shouldGetOperations() {
-        var wallet = new Wallet();
-        var balance = BigDecimal.valueOf(2.2);
+        var wallet = createWallet();
+        var balance = 220L;
 
         var account = wallet.create(balance);
 
@@ -189,6 +301,27 @@ public class WalletTest {
         assertThat(operations.get(0),
                    equalTo(format("Created account '%s' with balance '%s'",
                                   account.getId(),
-                                  balance)));
+                                  BigDecimal.valueOf(balance, Wallet.DEFAULT_SCALE))));
+    }
+
+    @Test
+    public void shouldRecordTransfersInOperations() {
+        var wallet = createWallet();
+
+        var first = wallet.create(100L);
+        var second = wallet.create(0L);
+
+        wallet.transfer(first.getId(), second.getId(), 5L);
+        wallet.transfer(List.of(new TransferOrder(second.getId(), first.getId(), 1L)));
+
+        assertThat(wallet.getOperations().subList(2, 4),
+                   equalTo(List.of(format("Transfered '%s' from account '%s' to account '%s'",
+                                          BigDecimal.valueOf(5L, Wallet.DEFAULT_SCALE),
+                                          first.getId(),
+                                          second.getId()),
+                                   format("Transfered '%s' from account '%s' to account '%s'",
+                                          BigDecimal.valueOf(1L, Wallet.DEFAULT_SCALE),
+                                          second.getId(),
+                                          first.getId()))));
     }
 }
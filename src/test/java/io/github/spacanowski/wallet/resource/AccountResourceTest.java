@@ -3,52 +3,103 @@ package io.github.spacanowski.wallet.resource;
 import static java.lang.String.format;
 import static javax.ws.rs.client.Entity.entity;
 import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
+import static javax.ws.rs.core.Response.Status.ACCEPTED;
 import static javax.ws.rs.core.Response.Status.BAD_REQUEST;
+import static javax.ws.rs.core.Response.Status.CONFLICT;
 import static javax.ws.rs.core.Response.Status.CREATED;
 import static javax.ws.rs.core.Response.Status.NOT_FOUND;
+import static javax.ws.rs.core.Response.Status.NOT_MODIFIED;
 import static javax.ws.rs.core.Response.Status.NO_CONTENT;
 import static javax.ws.rs.core.Response.Status.OK;
+import static javax.ws.rs.core.Response.Status.SERVICE_UNAVAILABLE;
 import static org.hamcrest.Matchers.equalTo;
 import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import io.dropwizard.testing.junit5.DropwizardExtensionsSupport;
 import io.dropwizard.testing.junit5.ResourceExtension;
 import io.github.spacanowski.wallet.exception.AccountNotFoundException;
+import io.github.spacanowski.wallet.exception.HoldNotFoundException;
 import io.github.spacanowski.wallet.exception.InsufficientResourcesException;
+import io.github.spacanowski.wallet.exception.ScheduledTransferNotFoundException;
+import io.github.spacanowski.wallet.exception.TransactionConflictException;
+import io.github.spacanowski.wallet.exception.WalletUnavailableException;
+import io.github.spacanowski.wallet.model.data.AuditQuery;
+import io.github.spacanowski.wallet.model.data.BalanceSnapshot;
+import io.github.spacanowski.wallet.model.data.Operation;
+import io.github.spacanowski.wallet.model.data.TransferOutcome;
+import io.github.spacanowski.wallet.model.input.BatchTransfer;
 import io.github.spacanowski.wallet.model.input.CreateAccount;
+import io.github.spacanowski.wallet.model.input.CreateHold;
+import io.github.spacanowski.wallet.model.input.ScheduleTransfer;
 import io.github.spacanowski.wallet.model.input.Transfer;
 import io.github.spacanowski.wallet.model.output.AccountOutput;
+import io.github.spacanowski.wallet.model.output.AuditEntryOutput;
+import io.github.spacanowski.wallet.model.output.AuditOutput;
+import io.github.spacanowski.wallet.model.output.BatchTransferItemOutput;
+import io.github.spacanowski.wallet.model.output.BatchTransferOutput;
+import io.github.spacanowski.wallet.model.output.HoldOutput;
+import io.github.spacanowski.wallet.model.output.ScheduledTransferOutput;
+import io.github.spacanowski.wallet.model.output.TransactionOutput;
 import io.github.spacanowski.wallet.model.output.TransferOutput;
 import io.github.spacanowski.wallet.resource.providers.AccountNotFoundExceptionMapper;
+import io.github.spacanowski.wallet.resource.providers.HoldNotFoundExceptionMapper;
 import io.github.spacanowski.wallet.resource.providers.IllegalArgumentExceptionMapper;
+import io.github.spacanowski.wallet.resource.providers.RejectedExecutionExceptionMapper;
+import io.github.spacanowski.wallet.resource.providers.ScheduledTransferNotFoundExceptionMapper;
+import io.github.spacanowski.wallet.resource.providers.TransactionConflictExceptionMapper;
 import io.github.spacanowski.wallet.resource.providers.UnsufficientResourcesExceptionMapper;
+import io.github.spacanowski.wallet.resource.providers.WalletUnavailableExceptionMapper;
 import io.github.spacanowski.wallet.service.AccountService;
+import io.github.spacanowski.wallet.service.TransferExecutor;
 
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.time.Instant;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
+import javax.ws.rs.core.GenericType;
+import javax.ws.rs.core.HttpHeaders;
+
+import org.glassfish.jersey.test.grizzly.GrizzlyTestContainerFactory;
 import org.junit.ClassRule;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 
 @ExtendWith(DropwizardExtensionsSupport.class)
 public class AccountResourceTest {
 
     private static final AccountService accountService = mock(AccountService.class);
 
+    // Transfers go through the asynchronous path, requests run inline in the integration test
+    private static final TransferExecutor transferExecutor = new TransferExecutor(2, 1, 16, 5, TimeUnit.SECONDS);
+
     @ClassRule
     public static final ResourceExtension resource = ResourceExtension
                                                             .builder()
-                                                            .addResource(new AccountResource(accountService))
+                                                            // In memory container does not support suspended responses
+                                                            .setTestContainerFactory(new GrizzlyTestContainerFactory())
+                                                            .addResource(new AccountResource(accountService, transferExecutor))
                                                             .addProvider(new IllegalArgumentExceptionMapper())
                                                             .addProvider(new AccountNotFoundExceptionMapper())
+                                                            .addProvider(new HoldNotFoundExceptionMapper())
+                                                            .addProvider(new ScheduledTransferNotFoundExceptionMapper())
                                                             .addProvider(new UnsufficientResourcesExceptionMapper())
+                                                            .addProvider(new RejectedExecutionExceptionMapper())
+                                                            .addProvider(new TransactionConflictExceptionMapper())
+                                                            .addProvider(new WalletUnavailableExceptionMapper())
                                                             .build();
 
     @AfterEach
@@ -64,8 +115,8 @@ public class AccountResourceTest {
         var createAccount = new CreateAccount();
         createAccount.setBalance(balance);
 
-        when(accountService.createAccount(eq(createAccount)))
-        .thenReturn(new AccountOutput(accountId, balance));
+        when(accountService.createAccount(eq(createAccount), isNull()))
+        .thenReturn(new AccountOutput(accountId, balance, balance));
 
         var response = resource.target("/accounts")
                                .request()
@@ -78,7 +129,7 @@ public class AccountResourceTest {
         assertThat(result.getId(), equalTo(accountId));
         assertThat(result.getBalance(), equalTo(balance));
 
-        verify(accountService).createAccount(createAccount);
+        verify(accountService).createAccount(createAccount, null);
     }
 
     @Test
@@ -89,8 +140,8 @@ public class AccountResourceTest {
         var createAccount = new CreateAccount();
         createAccount.setBalance(balance);
 
-        when(accountService.createAccount(eq(createAccount)))
-        .thenReturn(new AccountOutput(accountId, balance));
+        when(accountService.createAccount(eq(createAccount), isNull()))
+        .thenReturn(new AccountOutput(accountId, balance, balance));
 
         var response = resource.target("/accounts")
                                .request()
@@ -103,7 +154,22 @@ public class AccountResourceTest {
         assertThat(result.getId(), equalTo(accountId));
         assertThat(result.getBalance(), equalTo(balance));
 
-        verify(accountService).createAccount(createAccount);
+        verify(accountService).createAccount(createAccount, null);
+    }
+
+    @Test
+    public void shouldNotCreateAccountOnceWalletStoppedTakingChanges() {
+        var createAccount = new CreateAccount();
+        createAccount.setBalance(BigDecimal.ONE);
+
+        when(accountService.createAccount(eq(createAccount), isNull()))
+        .thenThrow(new WalletUnavailableException(false, new IOException()));
+
+        var response = resource.target("/accounts")
+                               .request()
+                               .post(entity(createAccount, APPLICATION_JSON));
+
+        assertThat(response.getStatus(), equalTo(SERVICE_UNAVAILABLE.getStatusCode()));
     }
 
     @Test
@@ -125,28 +191,52 @@ public class AccountResourceTest {
         var accountId = "1-1-1";
         var balance = BigDecimal.valueOf(1.1);
 
-        when(accountService.getAccount(eq(accountId)))
-        .thenReturn(new AccountOutput(accountId, balance));
+        var snapshot = new BalanceSnapshot(accountId, 110L, 3);
+
+        when(accountService.getBalance(eq(accountId)))
+        .thenReturn(snapshot);
+        when(accountService.getAccount(snapshot))
+        .thenReturn(new AccountOutput(accountId, balance, balance));
 
         var response = resource.target("/accounts/" + accountId)
                                .request()
                                .get();
 
         assertThat(response.getStatus(), equalTo(OK.getStatusCode()));
+        assertThat(response.getHeaderString(HttpHeaders.ETAG), equalTo("\"3-110\""));
 
         var result = response.readEntity(AccountOutput.class);
 
         assertThat(result.getId(), equalTo(accountId));
         assertThat(result.getBalance(), equalTo(balance));
 
-        verify(accountService).getAccount(accountId);
+        verify(accountService).getBalance(accountId);
+    }
+
+    @Test
+    public void shouldReturnNotModifiedForUnchangedAccount() {
+        var accountId = "1-1-1";
+        var snapshot = new BalanceSnapshot(accountId, 110L, 3);
+
+        when(accountService.getBalance(eq(accountId)))
+        .thenReturn(snapshot);
+
+        var response = resource.target("/accounts/" + accountId)
+                               .request()
+                               .header(HttpHeaders.IF_NONE_MATCH, "\"3-110\"")
+                               .get();
+
+        assertThat(response.getStatus(), equalTo(NOT_MODIFIED.getStatusCode()));
+        assertThat(response.getHeaderString(HttpHeaders.ETAG), equalTo("\"3-110\""));
+
+        verify(accountService, never()).getAccount(any(BalanceSnapshot.class));
     }
 
     @Test
     public void shouldReturnNotFound() {
         var accountId = "1-1-1";
 
-        when(accountService.getAccount(eq(accountId)))
+        when(accountService.getBalance(eq(accountId)))
         .thenThrow(AccountNotFoundException.class);
 
         var response = resource.target("/accounts/" + accountId)
@@ -167,8 +257,9 @@ public class AccountResourceTest {
         var transfer = new Transfer();
         transfer.setSum(BigDecimal.valueOf(1.1));
 
-        when(accountService.transferResources(eq(fromId), eq(toId), eq(transfer)))
-        .thenReturn(new TransferOutput(new AccountOutput(fromId, fromBalance), new AccountOutput(toId, toBalance)));
+        when(accountService.transferResources(eq(fromId), eq(toId), eq(transfer), isNull()))
+        .thenReturn(new TransferOutput(new AccountOutput(fromId, fromBalance, fromBalance),
+                                       new AccountOutput(toId, toBalance, toBalance)));
 
         var response = resource.target(format("/accounts/%s/transfer/%s", fromId, toId))
                                .request()
@@ -185,6 +276,29 @@ public class AccountResourceTest {
         assertThat(result.getTo().getBalance(), equalTo(toBalance));
     }
 
+    @Test
+    public void shouldPassIdempotencyKeyOfTransfer() {
+        var fromId = "1-1-1";
+        var toId = "2-2-2";
+        var key = "transfer-1";
+
+        var transfer = new Transfer();
+        transfer.setSum(BigDecimal.valueOf(1.1));
+
+        when(accountService.transferResources(eq(fromId), eq(toId), eq(transfer), eq(key)))
+        .thenReturn(new TransferOutput(new AccountOutput(fromId, BigDecimal.ZERO, BigDecimal.ZERO),
+                                       new AccountOutput(toId, BigDecimal.ONE, BigDecimal.ONE)));
+
+        var response = resource.target(format("/accounts/%s/transfer/%s", fromId, toId))
+                               .request()
+                               .header(AccountResource.IDEMPOTENCY_KEY_HEADER, key)
+                               .put(entity(transfer, APPLICATION_JSON));
+
+        assertThat(response.getStatus(), equalTo(OK.getStatusCode()));
+
+        verify(accountService).transferResources(fromId, toId, transfer, key);
+    }
+
     @Test
     public void shouldNotTransferIfResourcesAreInsufficient() {
         var fromId = "1-1-1";
@@ -193,7 +307,7 @@ public class AccountResourceTest {
         var transfer = new Transfer();
         transfer.setSum(BigDecimal.valueOf(1.1));
 
-        when(accountService.transferResources(eq(fromId), eq(toId), eq(transfer)))
+        when(accountService.transferResources(eq(fromId), eq(toId), eq(transfer), isNull()))
         .thenThrow(InsufficientResourcesException.class);
 
         var response = resource.target(format("/accounts/%s/transfer/%s", fromId, toId))
@@ -240,7 +354,7 @@ public class AccountResourceTest {
         var transfer = new Transfer();
         transfer.setSum(BigDecimal.valueOf(1.1));
 
-        when(accountService.transferResources(eq(fromId), eq(fromId), eq(transfer)))
+        when(accountService.transferResources(eq(fromId), eq(fromId), eq(transfer), isNull()))
         .thenThrow(IllegalArgumentException.class);
 
         var response = resource.target(format("/accounts/%s/transfer/%s", fromId, fromId))
@@ -250,6 +364,91 @@ public class AccountResourceTest {
         assertThat(response.getStatus(), equalTo(BAD_REQUEST.getStatusCode()));
     }
 
+    @Test
+    public void shouldTransferBatch() {
+        var transfer = new BatchTransfer();
+        transfer.setFrom("1-1-1");
+        transfer.setTo("2-2-2");
+        transfer.setSum(BigDecimal.valueOf(1.1));
+
+        var item = new BatchTransferItemOutput("1-1-1", "2-2-2", TransferOutcome.Status.COMPLETED, null);
+
+        when(accountService.transferResources(eq(List.of(transfer))))
+        .thenReturn(new BatchTransferOutput(1, 0, List.of(item)));
+
+        var response = resource.target("/accounts/transfers/batch")
+                               .request()
+                               .post(entity(List.of(transfer), APPLICATION_JSON));
+
+        assertThat(response.getStatus(), equalTo(OK.getStatusCode()));
+
+        var result = response.readEntity(BatchTransferOutput.class);
+
+        assertThat(result.getCompleted(), equalTo(1));
+        assertThat(result.getResults(), equalTo(List.of(item)));
+    }
+
+    @Test
+    public void shouldApplyTransaction() {
+        var leg = new BatchTransfer();
+        leg.setFrom("1-1-1");
+        leg.setTo("2-2-2");
+        leg.setSum(BigDecimal.valueOf(1.1));
+
+        var accounts = List.of(new AccountOutput("1-1-1", BigDecimal.ZERO, BigDecimal.ZERO),
+                               new AccountOutput("2-2-2", BigDecimal.valueOf(1.1), BigDecimal.valueOf(1.1)));
+
+        when(accountService.transact(eq(List.of(leg)), isNull()))
+        .thenReturn(new TransactionOutput(accounts));
+
+        var response = resource.target("/accounts/transactions")
+                               .request()
+                               .post(entity(List.of(leg), APPLICATION_JSON));
+
+        assertThat(response.getStatus(), equalTo(OK.getStatusCode()));
+        assertThat(response.readEntity(TransactionOutput.class).getAccounts(), equalTo(accounts));
+    }
+
+    @Test
+    public void shouldReturnConflictForTransactionOnChangingAccounts() {
+        var leg = new BatchTransfer();
+        leg.setFrom("1-1-1");
+        leg.setTo("2-2-2");
+        leg.setSum(BigDecimal.valueOf(1.1));
+
+        when(accountService.transact(eq(List.of(leg)), isNull()))
+        .thenThrow(new TransactionConflictException(16));
+
+        var response = resource.target("/accounts/transactions")
+                               .request()
+                               .post(entity(List.of(leg), APPLICATION_JSON));
+
+        assertThat(response.getStatus(), equalTo(CONFLICT.getStatusCode()));
+    }
+
+    @Test
+    public void shouldNotTransferEmptyBatch() {
+        var response = resource.target("/accounts/transfers/batch")
+                               .request()
+                               .post(entity(List.of(), APPLICATION_JSON));
+
+        assertThat(response.getStatus(), equalTo(422)); // 422 Unprocessable Entity
+    }
+
+    @Test
+    public void shouldNotTransferBatchWithNegativeSum() {
+        var transfer = new BatchTransfer();
+        transfer.setFrom("1-1-1");
+        transfer.setTo("2-2-2");
+        transfer.setSum(BigDecimal.valueOf(-1.1));
+
+        var response = resource.target("/accounts/transfers/batch")
+                               .request()
+                               .post(entity(List.of(transfer), APPLICATION_JSON));
+
+        assertThat(response.getStatus(), equalTo(422)); // 422 Unprocessable Entity
+    }
+
     @Test
     public void shouldDeleteAccount() {
         var id = "1-1-1";
@@ -261,17 +460,218 @@ public class AccountResourceTest {
         assertThat(response.getStatus(), equalTo(NO_CONTENT.getStatusCode()));
     }
 
+    @Test
+    public void shouldHoldResources() {
+        var hold = new CreateHold();
+        hold.setTo("2-2-2");
+        hold.setSum(BigDecimal.valueOf(1.1));
+        hold.setTtlSeconds(60);
+
+        var output = new HoldOutput("h-1", "1-1-1", "2-2-2", BigDecimal.valueOf(1.1), 1_000L);
+
+        when(accountService.holdResources(eq("1-1-1"), eq(hold), isNull()))
+        .thenReturn(output);
+
+        var response = resource.target("/accounts/1-1-1/holds")
+                               .request()
+                               .post(entity(hold, APPLICATION_JSON));
+
+        assertThat(response.getStatus(), equalTo(CREATED.getStatusCode()));
+        assertThat(response.getLocation().getPath(), equalTo("/accounts/holds/h-1"));
+        assertThat(response.readEntity(HoldOutput.class), equalTo(output));
+    }
+
+    @Test
+    public void shouldNotHoldResourcesBeyondMaximumTtl() {
+        var hold = new CreateHold();
+        hold.setTo("2-2-2");
+        hold.setSum(BigDecimal.ONE);
+        hold.setTtlSeconds(CreateHold.MAX_TTL_SECONDS + 1);
+
+        var response = resource.target("/accounts/1-1-1/holds")
+                               .request()
+                               .post(entity(hold, APPLICATION_JSON));
+
+        assertThat(response.getStatus(), equalTo(422));
+
+        verify(accountService, never()).holdResources(any(), any(), any());
+    }
+
+    @Test
+    public void shouldCaptureHold() {
+        var capture = new Transfer();
+        capture.setSum(BigDecimal.ONE);
+
+        var output = new TransferOutput(new AccountOutput("1-1-1", BigDecimal.ZERO, BigDecimal.ZERO),
+                                        new AccountOutput("2-2-2", BigDecimal.ONE, BigDecimal.ONE));
+
+        when(accountService.captureHold(eq("h-1"), eq(capture)))
+        .thenReturn(output);
+
+        var response = resource.target("/accounts/holds/h-1/capture")
+                               .request()
+                               .post(entity(capture, APPLICATION_JSON));
+
+        assertThat(response.getStatus(), equalTo(OK.getStatusCode()));
+        assertThat(response.readEntity(TransferOutput.class), equalTo(output));
+    }
+
+    @Test
+    public void shouldReturnNotFoundForReleasedHold() {
+        when(accountService.releaseHold(eq("h-1")))
+        .thenThrow(new HoldNotFoundException("h-1"));
+
+        var response = resource.target("/accounts/holds/h-1")
+                               .request()
+                               .delete();
+
+        assertThat(response.getStatus(), equalTo(NOT_FOUND.getStatusCode()));
+    }
+
+    @Test
+    public void shouldAcceptScheduledTransfer() {
+        var transfer = new ScheduleTransfer();
+        transfer.setSum(BigDecimal.ONE);
+        transfer.setExecuteAt(2_000L);
+
+        var output = ScheduledTransferOutput.builder()
+                                            .id("t-1")
+                                            .from("1-1-1")
+                                            .to("2-2-2")
+                                            .sum(BigDecimal.ONE)
+                                            .executeAt(2_000L)
+                                            .status(TransferOutcome.Status.PENDING)
+                                            .build();
+
+        when(accountService.scheduleTransfer(eq("1-1-1"), eq("2-2-2"), eq(transfer), isNull()))
+        .thenReturn(output);
+
+        var response = resource.target("/accounts/1-1-1/transfer/2-2-2/scheduled")
+                               .request()
+                               .post(entity(transfer, APPLICATION_JSON));
+
+        assertThat(response.getStatus(), equalTo(ACCEPTED.getStatusCode()));
+        assertThat(response.getLocation().getPath(), equalTo("/accounts/transfers/scheduled/t-1"));
+        assertThat(response.readEntity(ScheduledTransferOutput.class), equalTo(output));
+    }
+
+    @Test
+    public void shouldGetScheduledTransfer() {
+        var output = ScheduledTransferOutput.builder()
+                                            .id("t-1")
+                                            .status(TransferOutcome.Status.INSUFFICIENT_RESOURCES)
+                                            .error("Insufficient resources")
+                                            .build();
+
+        when(accountService.getScheduledTransfer(eq("t-1")))
+        .thenReturn(output);
+
+        var response = resource.target("/accounts/transfers/scheduled/t-1")
+                               .request()
+                               .get();
+
+        assertThat(response.getStatus(), equalTo(OK.getStatusCode()));
+        assertThat(response.readEntity(ScheduledTransferOutput.class), equalTo(output));
+    }
+
+    @Test
+    public void shouldReturnNotFoundForCancelledScheduledTransfer() {
+        doThrow(new ScheduledTransferNotFoundException("t-1"))
+        .when(accountService).cancelScheduledTransfer(eq("t-1"));
+
+        var response = resource.target("/accounts/transfers/scheduled/t-1")
+                               .request()
+                               .delete();
+
+        assertThat(response.getStatus(), equalTo(NOT_FOUND.getStatusCode()));
+    }
+
+    @Test
+    public void shouldStripeAccount() {
+        var id = "1-1-1";
+
+        var response = resource.target(format("/accounts/%s/striped", id))
+                               .request()
+                               .put(entity("", APPLICATION_JSON));
+
+        assertThat(response.getStatus(), equalTo(NO_CONTENT.getStatusCode()));
+
+        verify(accountService).stripeAccount(id);
+    }
+
     @Test
     public void shouldGetOperations() {
-        var auditLog = "Created account '1' with balance '2'";
+        var auditLog = new AuditEntryOutput(5L, "Created account '1' with balance '2'");
 
-        when(accountService.getAuditData())
-        .thenReturn(List.of(auditLog));
+        when(accountService.getAuditData(any()))
+        .thenReturn(new AuditOutput(List.of(auditLog), 7L, 7L));
 
         var response = resource.target("/accounts/audits")
+                               .queryParam("cursor", 3)
+                               .queryParam("account", "1")
+                               .queryParam("type", "CREATE")
+                               .queryParam("from", "2020-01-01T00:00:00Z")
                                .request()
                                .get();
 
         assertThat(response.getStatus(), equalTo(OK.getStatusCode()));
+        assertThat(response.getHeaderString(AccountResource.NEXT_CURSOR_HEADER), equalTo("7"));
+        assertThat(response.readEntity(new GenericType<List<AuditEntryOutput>>() {}), equalTo(List.of(auditLog)));
+
+        var query = ArgumentCaptor.forClass(AuditQuery.class);
+        verify(accountService).getAuditData(query.capture());
+
+        assertThat(query.getValue().getCursor(), equalTo(3L));
+        assertThat(query.getValue().getLimit(), equalTo(AuditQuery.DEFAULT_LIMIT));
+        assertThat(query.getValue().getAccount(), equalTo("1"));
+        assertThat(query.getValue().getType(), equalTo(Operation.Type.CREATE));
+        assertThat(query.getValue().getFrom(), equalTo(Instant.parse("2020-01-01T00:00:00Z")));
+    }
+
+    @Test
+    public void shouldStreamOperationsPageByPage() {
+        when(accountService.getAuditData(any()))
+        .thenReturn(new AuditOutput(List.of(new AuditEntryOutput(0L, "first"), new AuditEntryOutput(1L, "second")), 2L, 5L),
+                    new AuditOutput(List.of(new AuditEntryOutput(2L, "third")), 3L, 6L));
+
+        var response = resource.target("/accounts/audits")
+                               .queryParam("limit", 2)
+                               .queryParam("stream", true)
+                               .request()
+                               .get();
+
+        assertThat(response.getStatus(), equalTo(OK.getStatusCode()));
+        assertThat(response.readEntity(new GenericType<List<AuditEntryOutput>>() {}),
+                   equalTo(List.of(new AuditEntryOutput(0L, "first"),
+                                   new AuditEntryOutput(1L, "second"),
+                                   new AuditEntryOutput(2L, "third"))));
+
+        var query = ArgumentCaptor.forClass(AuditQuery.class);
+        verify(accountService, times(2)).getAuditData(query.capture());
+
+        assertThat(query.getAllValues().get(1).getCursor(), equalTo(2L));
+        // Records written after the stream started are left out
+        assertThat(query.getAllValues().get(1).getUntil(), equalTo(5L));
+    }
+
+    @Test
+    public void shouldNotGetOperationsFromMalformedInstant() {
+        var response = resource.target("/accounts/audits")
+                               .queryParam("from", "yesterday")
+                               .request()
+                               .get();
+
+        assertThat(response.getStatus(), equalTo(BAD_REQUEST.getStatusCode()));
+        verify(accountService, never()).getAuditData(any());
+    }
+
+    @Test
+    public void shouldNotGetTooLargeAuditPage() {
+        var response = resource.target("/accounts/audits")
+                               .queryParam("limit", 10_001)
+                               .request()
+                               .get();
+
+        assertThat(response.getStatus(), equalTo(BAD_REQUEST.getStatusCode()));
     }
 }
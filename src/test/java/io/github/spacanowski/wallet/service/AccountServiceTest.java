@@ -1,29 +1,55 @@
 package io.github.spacanowski.wallet.service;
 
+import static org.hamcrest.Matchers.comparesEqualTo;
 import static org.hamcrest.Matchers.equalTo;
 import static org.junit.Assert.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import io.github.spacanowski.wallet.datastore.Wallet;
 import io.github.spacanowski.wallet.exception.AccountNotFoundException;
+import io.github.spacanowski.wallet.exception.ScheduledTransferNotFoundException;
 import io.github.spacanowski.wallet.model.data.Account;
+import io.github.spacanowski.wallet.model.data.BalanceSnapshot;
+import io.github.spacanowski.wallet.model.data.Hold;
+import io.github.spacanowski.wallet.model.data.TransferOrder;
+import io.github.spacanowski.wallet.model.data.TransferOutcome;
+import io.github.spacanowski.wallet.model.data.TransferResult;
+import io.github.spacanowski.wallet.model.input.BatchTransfer;
 import io.github.spacanowski.wallet.model.input.CreateAccount;
+import io.github.spacanowski.wallet.model.input.CreateHold;
+import io.github.spacanowski.wallet.model.input.ScheduleTransfer;
 import io.github.spacanowski.wallet.model.input.Transfer;
 
 import java.math.BigDecimal;
+import java.util.List;
 
 import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 public class AccountServiceTest {
 
     private static final Wallet wallet = mock(Wallet.class);
 
-    private static final AccountService accountService = new AccountService(wallet);
+    // Not started, due transfers only run when a test asks for it
+    private static final TransferScheduler scheduler = new TransferScheduler(wallet);
+
+    private static final AccountService accountService = new AccountService(wallet, new IdempotencyCache(), scheduler);
+
+    @BeforeEach
+    public void setUp() {
+        when(wallet.getScale())
+        .thenReturn(2);
+    }
 
     @AfterEach
     public void tearDown(){
@@ -40,15 +66,15 @@ public class AccountServiceTest {
 
         var account = new Account();
         account.setId(accountId);
-        account.setBalance(balance);
+        account.setBalance(110L);
 
-        when(wallet.create(eq(balance)))
+        when(wallet.create(eq(110L)))
         .thenReturn(account);
 
         var result = accountService.createAccount(createAccount);
 
         assertThat(result.getId(), equalTo(accountId));
-        assertThat(result.getBalance(), equalTo(balance));
+        assertThat(result.getBalance(), comparesEqualTo(balance));
     }
 
     @Test
@@ -56,27 +82,20 @@ public class AccountServiceTest {
         var accountId = "1-1-1";
         var balance = BigDecimal.valueOf(1.1);
 
-        var createAccount = new CreateAccount();
-        createAccount.setBalance(balance);
-
-        var account = new Account();
-        account.setId(accountId);
-        account.setBalance(balance);
-
-        when(wallet.get(eq(accountId)))
-        .thenReturn(account);
+        when(wallet.balance(eq(accountId)))
+        .thenReturn(new BalanceSnapshot(accountId, 110L, 3));
 
         var result = accountService.getAccount(accountId);
 
         assertThat(result.getId(), equalTo(accountId));
-        assertThat(result.getBalance(), equalTo(balance));
+        assertThat(result.getBalance(), comparesEqualTo(balance));
     }
 
     @Test
     public void shouldThrowNotFoundExceptionForNonExitingAccount() {
         var accountId = "1-1-1";
 
-        when(wallet.get(eq(accountId)))
+        when(wallet.balance(eq(accountId)))
         .thenReturn(null);
 
         assertThrows(AccountNotFoundException.class,
@@ -84,37 +103,226 @@ public class AccountServiceTest {
     }
 
     @Test
-    public void shouldTransferBetweenAccounts() {
-        var fromInitialBalance = BigDecimal.valueOf(2.2);
-        var from = new Account();
-        var fromId = "1-1-1";
-        from.setId(fromId);
-        from.setBalance(fromInitialBalance);
+    public void shouldApplyTransaction() {
+        var buyerToSeller = new BatchTransfer();
+        buyerToSeller.setFrom("1-1-1");
+        buyerToSeller.setTo("2-2-2");
+        buyerToSeller.setSum(BigDecimal.valueOf(0.9));
 
-        var toInitialBalance = BigDecimal.valueOf(0.0);
+        var buyerToFee = new BatchTransfer();
+        buyerToFee.setFrom("1-1-1");
+        buyerToFee.setTo("3-3-3");
+        buyerToFee.setSum(BigDecimal.valueOf(0.1));
 
-        var to = new Account();
-        var toId = "2-2-2";
-        to.setId(toId);
-        to.setBalance(toInitialBalance);
+        var legs = List.of(new TransferOrder("1-1-1", "2-2-2", 90L), new TransferOrder("1-1-1", "3-3-3", 10L));
+
+        when(wallet.transact(eq(legs)))
+        .thenReturn(List.of(account("1-1-1", 0L), account("2-2-2", 90L), account("3-3-3", 10L)));
+
+        var result = accountService.transact(List.of(buyerToSeller, buyerToFee));
+
+        assertThat(result.getAccounts().size(), equalTo(3));
+        assertThat(result.getAccounts().get(1).getId(), equalTo("2-2-2"));
+        assertThat(result.getAccounts().get(1).getBalance(), comparesEqualTo(BigDecimal.valueOf(0.9)));
+    }
+
+    @Test
+    public void shouldHoldResourcesUntilExpiry() {
+        var hold = new CreateHold();
+        hold.setTo("2-2-2");
+        hold.setSum(BigDecimal.valueOf(1.1));
+        hold.setTtlSeconds(60);
+
+        when(wallet.hold(eq("1-1-1"), eq("2-2-2"), eq(110L), anyLong()))
+        .thenAnswer(invocation -> new Hold("h-1", "1-1-1", "2-2-2", 110L, invocation.getArgument(3)));
+
+        var before = System.currentTimeMillis();
+        var result = accountService.holdResources("1-1-1", hold);
+
+        assertThat(result.getId(), equalTo("h-1"));
+        assertThat(result.getSum(), comparesEqualTo(BigDecimal.valueOf(1.1)));
+        assertThat(result.getExpiresAt() >= before + 60_000, equalTo(true));
+        assertThat(result.getExpiresAt() <= System.currentTimeMillis() + 60_000, equalTo(true));
+    }
+
+    @Test
+    public void shouldNotHoldResourcesForSameAccount() {
+        var hold = new CreateHold();
+        hold.setTo("1-1-1");
+        hold.setSum(BigDecimal.ONE);
+
+        assertThrows(IllegalArgumentException.class,
+                     () -> accountService.holdResources("1-1-1", hold));
+
+        verify(wallet, never()).hold(any(), any(), anyLong(), anyLong());
+    }
+
+    @Test
+    public void shouldCaptureHold() {
+        when(wallet.capture(eq("h-1"), eq(90L)))
+        .thenReturn(transferResult("1-1-1", 20L, "2-2-2", 90L));
+
+        var capture = new Transfer();
+        capture.setSum(BigDecimal.valueOf(0.9));
+
+        var result = accountService.captureHold("h-1", capture);
+
+        assertThat(result.getFrom().getBalance(), comparesEqualTo(BigDecimal.valueOf(0.2)));
+        assertThat(result.getTo().getBalance(), comparesEqualTo(BigDecimal.valueOf(0.9)));
+    }
+
+    @Test
+    public void shouldReportAvailableBalanceOfReleasedAccount() {
+        var account = account("1-1-1", 110L);
+        account.setHeld(10L);
+
+        when(wallet.release(eq("h-1")))
+        .thenReturn(account);
+
+        var result = accountService.releaseHold("h-1");
+
+        assertThat(result.getBalance(), comparesEqualTo(BigDecimal.valueOf(1.1)));
+        assertThat(result.getAvailable(), comparesEqualTo(BigDecimal.ONE));
+    }
+
+    @Test
+    public void shouldScheduleTransfer() {
+        when(wallet.balance(any()))
+        .thenAnswer(invocation -> new BalanceSnapshot(invocation.getArgument(0), 100L, 0));
+
+        var transfer = new ScheduleTransfer();
+        transfer.setSum(BigDecimal.valueOf(0.3));
+        transfer.setExecuteAt(System.currentTimeMillis() + 60_000);
+
+        var result = accountService.scheduleTransfer("1-1-1", "2-2-2", transfer, null);
+
+        assertThat(result.getStatus(), equalTo(TransferOutcome.Status.PENDING));
+        assertThat(result.getSum(), comparesEqualTo(BigDecimal.valueOf(0.3)));
+        assertThat(accountService.getScheduledTransfer(result.getId()), equalTo(result));
+
+        accountService.cancelScheduledTransfer(result.getId());
+
+        assertThrows(ScheduledTransferNotFoundException.class,
+                     () -> accountService.getScheduledTransfer(result.getId()));
+        assertThrows(ScheduledTransferNotFoundException.class,
+                     () -> accountService.cancelScheduledTransfer(result.getId()));
+    }
+
+    @Test
+    public void shouldNotScheduleTransferFromMissingAccount() {
+        when(wallet.balance(eq("2-2-2")))
+        .thenReturn(new BalanceSnapshot("2-2-2", 0L, 0));
+
+        var transfer = new ScheduleTransfer();
+        transfer.setSum(BigDecimal.ONE);
+
+        assertThrows(AccountNotFoundException.class,
+                     () -> accountService.scheduleTransfer("1-1-1", "2-2-2", transfer, null));
+        assertThrows(IllegalArgumentException.class,
+                     () -> accountService.scheduleTransfer("2-2-2", "2-2-2", transfer, null));
+    }
+
+    @Test
+    public void shouldNotApplyTransactionWithLegToSameAccount() {
+        var leg = new BatchTransfer();
+        leg.setFrom("1-1-1");
+        leg.setTo("1-1-1");
+        leg.setSum(BigDecimal.ONE);
+
+        assertThrows(IllegalArgumentException.class,
+                     () -> accountService.transact(List.of(leg)));
+
+        verify(wallet, never()).transact(any());
+    }
+
+    @Test
+    public void shouldThrowNotFoundExceptionWhenStripingNonExistingAccount() {
+        var accountId = "1-1-1";
+
+        when(wallet.stripe(eq(accountId)))
+        .thenReturn(false);
+
+        assertThrows(AccountNotFoundException.class,
+                     () -> accountService.stripeAccount(accountId));
+    }
 
-        when(wallet.get(eq(from.getId())))
-        .thenReturn(from);
+    @Test
+    public void shouldTransferBetweenAccounts() {
+        var fromId = "1-1-1";
+        var toId = "2-2-2";
 
-        when(wallet.get(eq(to.getId())))
-        .thenReturn(to);
+        when(wallet.transfer(eq(fromId), eq(toId), eq(110L)))
+        .thenReturn(transferResult(fromId, 110L, toId, 330L));
 
         var transferSum = BigDecimal.valueOf(1.1);
         var transfer = new Transfer();
         transfer.setSum(transferSum);
 
-        var result = accountService.transferResources(from.getId(), to.getId(), transfer);
+        var result = accountService.transferResources(fromId, toId, transfer);
 
         assertThat(result.getFrom().getId(), equalTo(fromId));
-        assertThat(result.getFrom().getBalance(), equalTo(fromInitialBalance));
+        assertThat(result.getFrom().getBalance(), comparesEqualTo(BigDecimal.valueOf(1.1)));
 
         assertThat(result.getTo().getId(), equalTo(toId));
-        assertThat(result.getTo().getBalance(), equalTo(toInitialBalance));
+        assertThat(result.getTo().getBalance(), comparesEqualTo(BigDecimal.valueOf(3.3)));
+
+        // Balances come with the transfer, accounts are not looked up again
+        verify(wallet, never()).get(any());
+    }
+
+    @Test
+    public void shouldTransferOnceForIdempotencyKey() {
+        var fromId = "1-1-1";
+        var toId = "2-2-2";
+
+        when(wallet.transfer(eq(fromId), eq(toId), eq(110L)))
+        .thenReturn(transferResult(fromId, 0L, toId, 220L));
+
+        var transfer = new Transfer();
+        transfer.setSum(BigDecimal.valueOf(1.1));
+
+        var first = accountService.transferResources(fromId, toId, transfer, "transfer-once");
+        var retried = accountService.transferResources(fromId, toId, transfer, "transfer-once");
+
+        assertThat(retried, equalTo(first));
+
+        verify(wallet, times(1)).transfer(fromId, toId, 110L);
+    }
+
+    @Test
+    public void shouldNotReuseIdempotencyKeyForDifferentTransfer() {
+        when(wallet.transfer(eq("1-1-1"), eq("2-2-2"), eq(110L)))
+        .thenReturn(transferResult("1-1-1", 0L, "2-2-2", 110L));
+
+        var transfer = new Transfer();
+        transfer.setSum(BigDecimal.valueOf(1.1));
+
+        accountService.transferResources("1-1-1", "2-2-2", transfer, "transfer-different");
+
+        transfer.setSum(BigDecimal.valueOf(2.2));
+
+        assertThrows(IllegalArgumentException.class,
+                     () -> accountService.transferResources("1-1-1", "2-2-2", transfer, "transfer-different"));
+    }
+
+    @Test
+    public void shouldCreateAccountOnceForIdempotencyKey() {
+        var createAccount = new CreateAccount();
+        createAccount.setBalance(BigDecimal.valueOf(1.1));
+
+        var account = new Account();
+        account.setId("1-1-1");
+        account.setBalance(110L);
+
+        when(wallet.create(eq(110L)))
+        .thenReturn(account);
+
+        var first = accountService.createAccount(createAccount, "create-once");
+        var retried = accountService.createAccount(createAccount, "create-once");
+
+        assertThat(retried.getId(), equalTo(first.getId()));
+
+        verify(wallet, times(1)).create(110L);
     }
 
     @Test
@@ -127,4 +335,65 @@ public class AccountServiceTest {
         assertThrows(IllegalArgumentException.class,
                      () -> accountService.transferResources(fromId, fromId, transfer));
     }
+
+    @Test
+    public void shouldNotCreateAccountWithBalanceExceedingScale() {
+        var createAccount = new CreateAccount();
+        createAccount.setBalance(BigDecimal.valueOf(1.111));
+
+        assertThrows(IllegalArgumentException.class,
+                     () -> accountService.createAccount(createAccount));
+    }
+
+    @Test
+    public void shouldNotTransferSumExceedingScale() {
+        var transfer = new Transfer();
+        transfer.setSum(BigDecimal.valueOf(0.001));
+
+        assertThrows(IllegalArgumentException.class,
+                     () -> accountService.transferResources("1-1-1", "2-2-2", transfer));
+    }
+
+    @Test
+    public void shouldTransferBatch() {
+        var valid = batchTransfer("1-1-1", "2-2-2", BigDecimal.valueOf(1.1));
+        var sameAccount = batchTransfer("1-1-1", "1-1-1", BigDecimal.valueOf(1.1));
+        var missing = batchTransfer("2-2-2", "3-3-3", BigDecimal.valueOf(2.2));
+
+        when(wallet.transfer(eq(List.of(new TransferOrder("1-1-1", "2-2-2", 110L),
+                                        new TransferOrder("2-2-2", "3-3-3", 220L)))))
+        .thenReturn(List.of(TransferOutcome.COMPLETED,
+                            TransferOutcome.failed(new AccountNotFoundException("3-3-3"))));
+
+        var result = accountService.transferResources(List.of(valid, sameAccount, missing));
+
+        assertThat(result.getCompleted(), equalTo(1));
+        assertThat(result.getFailed(), equalTo(2));
+
+        assertThat(result.getResults().get(0).getStatus(), equalTo(TransferOutcome.Status.COMPLETED));
+        assertThat(result.getResults().get(1).getStatus(), equalTo(TransferOutcome.Status.INVALID));
+        assertThat(result.getResults().get(2).getStatus(), equalTo(TransferOutcome.Status.ACCOUNT_NOT_FOUND));
+        assertThat(result.getResults().get(2).getTo(), equalTo("3-3-3"));
+    }
+
+    private BatchTransfer batchTransfer(String from, String to, BigDecimal sum) {
+        var transfer = new BatchTransfer();
+        transfer.setFrom(from);
+        transfer.setTo(to);
+        transfer.setSum(sum);
+
+        return transfer;
+    }
+
+    private TransferResult transferResult(String fromId, long fromBalance, String toId, long toBalance) {
+        return new TransferResult(account(fromId, fromBalance), account(toId, toBalance));
+    }
+
+    private Account account(String id, long balance) {
+        var account = new Account();
+        account.setId(id);
+        account.setBalance(balance);
+
+        return account;
+    }
 }
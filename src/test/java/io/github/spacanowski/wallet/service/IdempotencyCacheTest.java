@@ -0,0 +1,103 @@
+package io.github.spacanowski.wallet.service;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import io.github.spacanowski.wallet.exception.WalletUnavailableException;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+public class IdempotencyCacheTest {
+
+    @Test
+    public void shouldReplayStoredResult() {
+        var cache = new IdempotencyCache();
+        var runs = new AtomicInteger();
+
+        assertThat(cache.execute("key", "request", runs::incrementAndGet), equalTo(1));
+        assertThat(cache.execute("key", "request", runs::incrementAndGet), equalTo(1));
+        assertThat(runs.get(), equalTo(1));
+    }
+
+    @Test
+    public void shouldNotReplayResultForDifferentRequest() {
+        var cache = new IdempotencyCache();
+
+        cache.execute("key", "request", () -> 1);
+
+        assertThrows(IllegalArgumentException.class, () -> cache.execute("key", "other", () -> 2));
+    }
+
+    @Test
+    public void shouldRetryFailedRequest() {
+        var cache = new IdempotencyCache();
+        var runs = new AtomicInteger();
+
+        assertThrows(IllegalStateException.class, () -> cache.execute("key", "request", () -> {
+            runs.incrementAndGet();
+            throw new IllegalStateException();
+        }));
+
+        assertThat(cache.execute("key", "request", runs::incrementAndGet), equalTo(2));
+    }
+
+    @Test
+    public void shouldReplayFailureOfChangeAppliedButNotDurable() {
+        var cache = new IdempotencyCache();
+        var runs = new AtomicInteger();
+
+        var failure = assertThrows(WalletUnavailableException.class, () -> cache.execute("key", "request", () -> {
+            runs.incrementAndGet();
+            throw new WalletUnavailableException(true, new IOException());
+        }));
+
+        assertThat(assertThrows(WalletUnavailableException.class,
+                                () -> cache.execute("key", "request", runs::incrementAndGet)),
+                   equalTo(failure));
+        assertThat(runs.get(), equalTo(1));
+    }
+
+    @Test
+    public void shouldNotEvictRunningRequest() throws Exception {
+        var cache = new IdempotencyCache(1, 1, TimeUnit.HOURS);
+        var runs = new AtomicInteger();
+        var running = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+
+        var first = CompletableFuture.supplyAsync(() -> cache.execute("key", "request", () -> {
+            running.countDown();
+            await(release);
+            return runs.incrementAndGet();
+        }));
+
+        running.await();
+
+        // Fills the cache well past its size while the first request is still running
+        IntStream.range(0, 1_000)
+                 .forEach(i -> cache.execute("other-" + i, "request", () -> i));
+
+        var duplicate = CompletableFuture.supplyAsync(() -> cache.execute("key", "request", runs::incrementAndGet));
+
+        release.countDown();
+
+        assertThat(first.get(10, TimeUnit.SECONDS), equalTo(1));
+        assertThat(duplicate.get(10, TimeUnit.SECONDS), equalTo(1));
+        assertThat(runs.get(), equalTo(1));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
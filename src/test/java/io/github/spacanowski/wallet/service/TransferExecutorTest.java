@@ -0,0 +1,158 @@
+package io.github.spacanowski.wallet.service;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+public class TransferExecutorTest {
+
+    @Test
+    public void shouldRunOnCallingThreadWithoutPartitions() throws Exception {
+        var executor = new TransferExecutor();
+
+        var thread = executor.submit("1-1-1", () -> Thread.currentThread().getName())
+                             .toCompletableFuture()
+                             .get();
+
+        assertThat(executor.isAsync(), equalTo(false));
+        assertThat(thread, equalTo(Thread.currentThread().getName()));
+    }
+
+    @Test
+    public void shouldRunOnPartitionThread() throws Exception {
+        var executor = new TransferExecutor(2, 1, 4, 1, TimeUnit.SECONDS);
+
+        try {
+            var thread = executor.submit("1-1-1", () -> Thread.currentThread().getName())
+                                 .toCompletableFuture()
+                                 .get();
+
+            assertThat(thread, startsWith("transfer-"));
+        } finally {
+            executor.stop();
+        }
+    }
+
+    @Test
+    public void shouldRejectTransfersOnceQueueIsFull() throws Exception {
+        var executor = new TransferExecutor(1, 1, 1, 1, TimeUnit.SECONDS);
+        var running = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+
+        try {
+            var blocked = executor.submit("hot", () -> {
+                running.countDown();
+                await(release);
+                return 1;
+            });
+
+            running.await();
+
+            var queued = executor.submit("hot", () -> 2);
+
+            assertThat(executor.getQueueDepth(), equalTo(1L));
+
+            var rejected = executor.submit("hot", () -> 3).toCompletableFuture();
+
+            var error = assertThrows(ExecutionException.class, rejected::get);
+
+            assertThat(error.getCause(), instanceOf(RejectedExecutionException.class));
+
+            release.countDown();
+
+            assertThat(blocked.toCompletableFuture().get(), equalTo(1));
+            assertThat(queued.toCompletableFuture().get(), equalTo(2));
+        } finally {
+            release.countDown();
+            executor.stop();
+        }
+    }
+
+    @Test
+    public void shouldNotRunTransferTimedOutInQueue() throws Exception {
+        var executor = new TransferExecutor(1, 1, 1, 50, TimeUnit.MILLISECONDS);
+        var running = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var applied = new AtomicBoolean();
+
+        try {
+            var blocked = executor.submit("hot", () -> {
+                running.countDown();
+                await(release);
+                return 1;
+            });
+
+            running.await();
+
+            var queued = executor.submit("hot", () -> applied.getAndSet(true)).toCompletableFuture();
+
+            // Partition stays full until the queued transfer is past its timeout
+            Thread.sleep(100);
+
+            release.countDown();
+
+            var error = assertThrows(ExecutionException.class, queued::get);
+
+            assertThat(error.getCause(), instanceOf(RejectedExecutionException.class));
+            assertThat(blocked.toCompletableFuture().get(), equalTo(1));
+            assertThat(applied.get(), equalTo(false));
+        } finally {
+            release.countDown();
+            executor.stop();
+        }
+    }
+
+    @Test
+    public void shouldCancelOnlyTransferNotRunYet() throws Exception {
+        var executor = new TransferExecutor(1, 1, 1, 1, TimeUnit.SECONDS);
+        var running = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var applied = new AtomicBoolean();
+
+        try {
+            var blocked = executor.submit("hot", () -> {
+                running.countDown();
+                await(release);
+                return 1;
+            }).toCompletableFuture();
+
+            running.await();
+
+            var queued = executor.submit("hot", () -> applied.getAndSet(true)).toCompletableFuture();
+
+            assertThat(queued.cancel(false), equalTo(true));
+            assertThat(executor.getQueueDepth(), equalTo(0L));
+            assertThat(blocked.cancel(false), equalTo(false));
+
+            release.countDown();
+
+            assertThat(blocked.get(), equalTo(1));
+            assertThat(queued.isCancelled(), equalTo(true));
+
+            executor.stop();
+
+            assertThat(applied.get(), equalTo(false));
+        } finally {
+            release.countDown();
+            executor.stop();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
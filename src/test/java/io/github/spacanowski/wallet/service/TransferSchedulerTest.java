@@ -0,0 +1,191 @@
+package io.github.spacanowski.wallet.service;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import io.github.spacanowski.wallet.datastore.DurableWallet;
+import io.github.spacanowski.wallet.datastore.LockingWallet;
+import io.github.spacanowski.wallet.datastore.WriteAheadLog;
+import io.github.spacanowski.wallet.model.data.TransferOrder;
+import io.github.spacanowski.wallet.model.data.TransferOutcome;
+
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+public class TransferSchedulerTest {
+
+    @Test
+    public void shouldRunTransfersOnceDue() {
+        var wallet = new LockingWallet();
+        var scheduler = new TransferScheduler(wallet);
+        var from = wallet.create(100L).getId();
+        var to = wallet.create(0L).getId();
+        var now = System.currentTimeMillis();
+
+        var transfer = scheduler.schedule(new TransferOrder(from, to, 30L), now + 1_000);
+
+        assertThat(scheduler.runDue(now), equalTo(0));
+        assertThat(scheduler.get(transfer.getId()).getOutcome().getStatus(), equalTo(TransferOutcome.Status.PENDING));
+        assertThat(wallet.get(from).getBalance(), equalTo(100L));
+
+        assertThat(scheduler.runDue(now + 1_000 + TransferScheduler.DEFAULT_TICK_MILLIS), equalTo(1));
+        assertThat(scheduler.get(transfer.getId()).getOutcome().getStatus(), equalTo(TransferOutcome.Status.COMPLETED));
+        assertThat(scheduler.getPendingCount(), equalTo(0L));
+        assertThat(wallet.get(from).getBalance(), equalTo(70L));
+        assertThat(wallet.get(to).getBalance(), equalTo(30L));
+    }
+
+    @Test
+    public void shouldNotRunCancelledTransfers() {
+        var wallet = new LockingWallet();
+        var scheduler = new TransferScheduler(wallet);
+        var from = wallet.create(100L).getId();
+        var to = wallet.create(0L).getId();
+        var now = System.currentTimeMillis();
+
+        var transfer = scheduler.schedule(new TransferOrder(from, to, 30L), now);
+
+        assertThat(scheduler.cancel(transfer.getId()), equalTo(true));
+        assertThat(scheduler.cancel(transfer.getId()), equalTo(false));
+        assertThat(scheduler.runDue(now + 1_000), equalTo(0));
+        assertThat(scheduler.get(transfer.getId()), nullValue());
+        assertThat(wallet.get(from).getBalance(), equalTo(100L));
+    }
+
+    @Test
+    public void shouldRejectSchedulingOnDurableWallet() throws Exception {
+        var wallet = DurableWallet.recover(new LockingWallet(),
+                                           Files.createTempDirectory("wallet"),
+                                           WriteAheadLog.SyncPolicy.PER_OPERATION,
+                                           1,
+                                           1024 * 1024,
+                                           0,
+                                           TimeUnit.MILLISECONDS);
+        var scheduler = new TransferScheduler(wallet);
+        var from = wallet.create(100L).getId();
+        var to = wallet.create(0L).getId();
+        var now = System.currentTimeMillis();
+
+        // Not journaled, a restart would drop the transfer already accepted
+        assertThrows(IllegalArgumentException.class,
+                     () -> scheduler.schedule(new TransferOrder(from, to, 30L), now + 1_000));
+        assertThat(scheduler.getPendingCount(), equalTo(0L));
+
+        wallet.stop();
+    }
+
+    @Test
+    public void shouldRecordOutcomeOfFailedTransfers() {
+        var wallet = new LockingWallet();
+        var scheduler = new TransferScheduler(wallet);
+        var from = wallet.create(10L).getId();
+        var to = wallet.create(0L).getId();
+        var now = System.currentTimeMillis();
+
+        var first = scheduler.schedule(new TransferOrder(from, to, 10L), now);
+        var second = scheduler.schedule(new TransferOrder(from, to, 10L), now + 1);
+
+        scheduler.runDue(now + 1_000);
+
+        // Transfers of one sender run in order of their execution time
+        assertThat(scheduler.get(first.getId()).getOutcome().getStatus(), equalTo(TransferOutcome.Status.COMPLETED));
+        assertThat(scheduler.get(second.getId()).getOutcome().getStatus(),
+                   equalTo(TransferOutcome.Status.INSUFFICIENT_RESOURCES));
+    }
+
+    @Test
+    public void shouldReportOutcomeUnknownWhenWalletFailsInBatch() {
+        var wallet = spy(new LockingWallet());
+        var scheduler = new TransferScheduler(wallet);
+        var from = wallet.create(100L).getId();
+        var to = wallet.create(0L).getId();
+        var now = System.currentTimeMillis();
+
+        doThrow(new IllegalStateException("Wallet failed")).when(wallet).transfer(anyList());
+
+        var transfer = scheduler.schedule(new TransferOrder(from, to, 10L), now);
+
+        scheduler.runDue(now + 1_000);
+
+        // Not reported failed, a client retrying it might pay twice
+        assertThat(scheduler.get(transfer.getId()).getOutcome().getStatus(), equalTo(TransferOutcome.Status.UNKNOWN));
+    }
+
+    @Test
+    public void shouldTakeDueTransfersOffWheelInChunks() {
+        var wallet = spy(new LockingWallet());
+        var scheduler = new TransferScheduler(wallet, 10, 2, 3, 1_000, 1, TimeUnit.HOURS);
+        var from = wallet.create(100L).getId();
+        var to = wallet.create(0L).getId();
+        var now = System.currentTimeMillis();
+
+        for (int i = 0; i < 20; i++) {
+            scheduler.schedule(new TransferOrder(from, to, 1L), now);
+        }
+
+        assertThat(scheduler.runDue(now + 1_000), equalTo(20));
+        assertThat(scheduler.getPendingCount(), equalTo(0L));
+        assertThat(wallet.get(to).getBalance(), equalTo(20L));
+
+        // A single sender fills one partition, so each chunk of six is two batches of three
+        verify(wallet, times(7)).transfer(anyList());
+    }
+
+    @Test
+    public void shouldRunBurstOfDueTransfersInParallelBatches() throws Exception {
+        var wallet = spy(new LockingWallet());
+        var scheduler = new TransferScheduler(wallet, 10, 4, 500, 1_000_000, 1, TimeUnit.HOURS);
+        var accounts = IntStream.range(0, 1_000)
+                                .mapToObj(i -> wallet.create(1_000L).getId())
+                                .toArray(String[]::new);
+        var now = System.currentTimeMillis();
+        var ids = new ArrayList<String>();
+
+        for (int i = 0; i < 100_000; i++) {
+            var order = new TransferOrder(accounts[i % accounts.length], accounts[(i + 1) % accounts.length], 1L);
+
+            ids.add(scheduler.schedule(order, now + i % 50).getId());
+        }
+
+        scheduler.start();
+
+        try {
+            var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+
+            while (scheduler.getPendingCount() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+        } finally {
+            scheduler.stop();
+        }
+
+        assertThat(scheduler.getPendingCount(), equalTo(0L));
+
+        for (var id : ids) {
+            assertThat(scheduler.get(id).getOutcome().getStatus(), equalTo(TransferOutcome.Status.COMPLETED));
+        }
+
+        for (var account : accounts) {
+            assertThat(wallet.get(account).getBalance(), equalTo(1_000L));
+        }
+
+        // Applied as batches only, never one transfer at a time
+        verify(wallet, never()).transfer(anyString(), anyString(), anyLong());
+        verify(wallet, atMost(ids.size() / 100)).transfer(anyList());
+    }
+}